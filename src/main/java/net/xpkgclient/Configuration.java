@@ -24,6 +24,7 @@ import net.xpkgclient.packagemanager.DependencyTree;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.util.prefs.Preferences;
 
 /**
@@ -33,6 +34,17 @@ import java.util.prefs.Preferences;
 public final class Configuration {
 
     private static final String NO_XP_INSTALLATION = "NO_XP_INSTALLATION";
+    private static final String NO_ARCHIVE_STORE = "NO_ARCHIVE_STORE";
+
+    private static final String DEFAULT_REGISTRY_URL = "http://localhost:5020";
+    private static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 30_000;
+    private static final int DEFAULT_PREFETCH_DEPTH = 8;
+    private static final int DEFAULT_PREFETCH_CONCURRENCY = 4;
+    private static final boolean DEFAULT_USE_METADATA_BUNDLE = false;
+    private static final boolean DEFAULT_STREAMING_EXTRACTION = false;
+    private static final long DEFAULT_ARCHIVE_STORE_MAX_SIZE = 10L * 1024 * 1024 * 1024;
+    private static final boolean DEFAULT_LINKED_INSTALLS = false;
 
     private static final Preferences prefs = Preferences.userRoot().node("xpkg-client-root");
 
@@ -54,6 +66,106 @@ public final class Configuration {
     @Getter
     private File tmpDir;
 
+    /**
+     * The base URL of the package registry, without a trailing slash.
+     *
+     * @param registryUrl Set the base URL of the package registry.
+     * @return The base URL of the package registry.
+     */
+    @Getter
+    @Setter
+    private String registryUrl = DEFAULT_REGISTRY_URL;
+
+    /**
+     * The maximum time to wait to connect to a server. Only read when the first request is made.
+     *
+     * @param connectTimeout Set the maximum time to wait to connect to a server.
+     * @return The maximum time to wait to connect to a server.
+     */
+    @Getter
+    @Setter
+    private Duration connectTimeout = Duration.ofMillis(DEFAULT_CONNECT_TIMEOUT_MILLIS);
+
+    /**
+     * The maximum time to wait for a server to respond to a request.
+     *
+     * @param requestTimeout Set the maximum time to wait for a server to respond to a request.
+     * @return The maximum time to wait for a server to respond to a request.
+     */
+    @Getter
+    @Setter
+    private Duration requestTimeout = Duration.ofMillis(DEFAULT_REQUEST_TIMEOUT_MILLIS);
+
+    /**
+     * The maximum number of levels of dependencies to fetch the data of ahead of time when resolving a package.
+     *
+     * @param prefetchDepth Set the maximum number of levels of dependencies to prefetch.
+     * @return The maximum number of levels of dependencies to prefetch.
+     */
+    @Getter
+    @Setter
+    private int prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+
+    /**
+     * The maximum number of requests to make at once when fetching the data of dependencies ahead of time.
+     *
+     * @param prefetchConcurrency Set the maximum number of prefetch requests to make at once.
+     * @return The maximum number of prefetch requests to make at once.
+     */
+    @Getter
+    @Setter
+    private int prefetchConcurrency = DEFAULT_PREFETCH_CONCURRENCY;
+
+    /**
+     * True if the bundle of the data of all package versions should be downloaded, so that dependencies can be resolved without a request for each version.
+     *
+     * @param useMetadataBundle Set if the metadata bundle should be downloaded.
+     * @return True if the metadata bundle should be downloaded.
+     */
+    @Getter
+    @Setter
+    private boolean useMetadataBundle = DEFAULT_USE_METADATA_BUNDLE;
+
+    /**
+     * True if packages should be extracted while they are downloaded, rather than after the download has finished. Off unless it is chosen, since it has not been measured to make installs faster, and packages which can not be extracted as they are downloaded are extracted a second time once the download has finished.
+     *
+     * @param streamingExtraction Set if packages should be extracted while they are downloaded.
+     * @return True if packages should be extracted while they are downloaded.
+     */
+    @Getter
+    @Setter
+    private boolean streamingExtraction = DEFAULT_STREAMING_EXTRACTION;
+
+    /**
+     * The directory where downloaded package archives are kept, so that they are not downloaded again. The directory is shared by every X-Plane installation. Archives are not kept unless a directory is chosen, and not keeping them is saved too.
+     *
+     * @param archiveStorePath Set the directory where downloaded package archives are kept, or null to not keep them.
+     * @return The directory where downloaded package archives are kept, or null if they are not kept.
+     */
+    @Getter
+    @Setter
+    private File archiveStorePath = null;
+
+    /**
+     * The maximum total size of the downloaded package archives which are kept, in bytes. The least recently used archives are removed when the archives are larger than this.
+     *
+     * @param archiveStoreMaxSize Set the maximum total size of the kept archives, or 0 to not keep them.
+     * @return The maximum total size of the kept archives.
+     */
+    @Getter
+    @Setter
+    private long archiveStoreMaxSize = DEFAULT_ARCHIVE_STORE_MAX_SIZE;
+
+    /**
+     * True if the extracted contents of packages should be kept in the archive store, and hard linked into X-Plane installations rather than extracted again. Linked files share their contents with the store, so a linked file which is changed in place is changed for every installation, which is why this is off unless it is chosen. Packages which write to their own files, such as preferences, liveries or navigation data, should not be installed this way. Kept contents whose files changed size or last modified time are extracted again instead of being linked, but a change which keeps both is shared with every installation.
+     *
+     * @param linkedInstalls Set if packages should be linked from the archive store.
+     * @return True if packages should be linked from the archive store.
+     */
+    @Getter
+    @Setter
+    private boolean linkedInstalls = DEFAULT_LINKED_INSTALLS;
+
     /**
      * The dependency tree for the current configuration.
      *
@@ -67,6 +179,16 @@ public final class Configuration {
      */
     public static void save() {
         prefs.put("xp-config", xpPath.getAbsolutePath());
+        prefs.put("registry-url", registryUrl);
+        prefs.putLong("connect-timeout", connectTimeout.toMillis());
+        prefs.putLong("request-timeout", requestTimeout.toMillis());
+        prefs.putInt("prefetch-depth", prefetchDepth);
+        prefs.putInt("prefetch-concurrency", prefetchConcurrency);
+        prefs.putBoolean("use-metadata-bundle", useMetadataBundle);
+        prefs.putBoolean("streaming-extraction", streamingExtraction);
+        prefs.put("archive-store-path", archiveStorePath == null ? NO_ARCHIVE_STORE : archiveStorePath.getAbsolutePath());
+        prefs.putLong("archive-store-max-size", archiveStoreMaxSize);
+        prefs.putBoolean("linked-installs", linkedInstalls);
     }
 
     /**
@@ -77,6 +199,18 @@ public final class Configuration {
         String xpPathStr = prefs.get("xp-config", NO_XP_INSTALLATION);
         xpPath = new File(xpPathStr);
 
+        registryUrl = prefs.get("registry-url", DEFAULT_REGISTRY_URL);
+        connectTimeout = Duration.ofMillis(prefs.getLong("connect-timeout", DEFAULT_CONNECT_TIMEOUT_MILLIS));
+        requestTimeout = Duration.ofMillis(prefs.getLong("request-timeout", DEFAULT_REQUEST_TIMEOUT_MILLIS));
+        prefetchDepth = prefs.getInt("prefetch-depth", DEFAULT_PREFETCH_DEPTH);
+        prefetchConcurrency = prefs.getInt("prefetch-concurrency", DEFAULT_PREFETCH_CONCURRENCY);
+        useMetadataBundle = prefs.getBoolean("use-metadata-bundle", DEFAULT_USE_METADATA_BUNDLE);
+        streamingExtraction = prefs.getBoolean("streaming-extraction", DEFAULT_STREAMING_EXTRACTION);
+        String archiveStorePathStr = prefs.get("archive-store-path", NO_ARCHIVE_STORE);
+        archiveStorePath = archiveStorePathStr.equals(NO_ARCHIVE_STORE) ? null : new File(archiveStorePathStr);
+        archiveStoreMaxSize = prefs.getLong("archive-store-max-size", DEFAULT_ARCHIVE_STORE_MAX_SIZE);
+        linkedInstalls = prefs.getBoolean("linked-installs", DEFAULT_LINKED_INSTALLS);
+
         tmpDir = Files.createTempDirectory("xpkg-temp-").toFile();
         tmpDir.deleteOnExit();
 
@@ -29,6 +29,7 @@ import net.xpkgclient.Properties;
 import net.xpkgclient.packagemanager.Installer;
 import net.xpkgclient.packagemanager.Package;
 import net.xpkgclient.packagemanager.Remote;
+import net.xpkgclient.packagemanager.TaskExecutors;
 import net.xpkgclient.versioning.Version;
 import org.jetbrains.annotations.NotNull;
 
@@ -36,6 +37,7 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -141,35 +143,50 @@ public final class MainController {
         setTablePlaceholder("Downloading package information...");
 
         setAllButtonsEnabled(false);
-        packageTable.getItems().clear();
 
-        new Thread(() -> {
-            try {
-                Remote.getAllPackages(packages -> {
-                    packageTable.getItems().setAll(packages);
-
-                    setTablePlaceholder("No packages found");
-
-                    String downloadedPackages = packages.size() + " packages downloaded";
-                    if (hasGottenPackages)
-                        setStatus(downloadedPackages);
-                    else
-                        setStatus("Initialized! X-Pkg Client v" + Properties.getVersion() + " [" + downloadedPackages + "]");
-
-                    // We need to duplicate this across the try/catch because if we don't the finally block will run before the status is set, meaning that this if statement becomes useless
-                    hasGottenPackages = true;
-                    setAllButtonsEnabled(true);
-                });
-            } catch (Throwable e) {
+        // On the first refresh, the packages saved from the last time are decoded in the background, and shown while they are downloaded again, which starts once they are loaded so that only the changes since then are requested
+        boolean firstRefresh = !hasGottenPackages;
+        CompletableFuture<Void> loaded = TaskExecutors.run(() -> {
+            if (firstRefresh && Remote.loadSavedSnapshot()) {
+                List<Package> savedPackages = Remote.getPackages();
                 Platform.runLater(() -> {
-                    e.printStackTrace();
-                    setStatus("Could not get packages");
-                    setTablePlaceholder("Could not get packages");
-                    hasGottenPackages = true;
-                    setAllButtonsEnabled(true);
+                    packageTable.getItems().setAll(savedPackages);
+                    setStatus("Showing " + savedPackages.size() + " saved packages, checking for updates...");
                 });
+            } else if (Remote.getPackages().isEmpty()) {
+                Platform.runLater(() -> packageTable.getItems().clear());
             }
-        }).start();
+            if (firstRefresh && Configuration.isUseMetadataBundle())
+                Remote.loadSavedMetadataBundle();
+        }, TaskExecutors.IO);
+
+        loaded.exceptionally(e -> null).thenCompose(v -> Remote.fetchAllPackages()).whenComplete((packages, e) -> Platform.runLater(() -> {
+            if (e != null) {
+                e.printStackTrace();
+                setStatus("Could not get packages");
+                setTablePlaceholder("Could not get packages");
+            } else {
+                packageTable.getItems().setAll(packages);
+
+                setTablePlaceholder("No packages found");
+
+                String downloadedPackages = packages.size() + " packages downloaded";
+                if (hasGottenPackages)
+                    setStatus(downloadedPackages);
+                else
+                    setStatus("Initialized! X-Pkg Client v" + Properties.getVersion() + " [" + downloadedPackages + "]");
+            }
+
+            hasGottenPackages = true;
+            setAllButtonsEnabled(true);
+        }));
+
+        // The bundle is optional, so if it can not be downloaded, the failure is only logged and versions are requested one at a time
+        if (Configuration.isUseMetadataBundle())
+            Remote.fetchMetadataBundle().exceptionally(e -> {
+                e.printStackTrace();
+                return null;
+            });
     }
 
     /**
@@ -199,17 +216,15 @@ public final class MainController {
      * Install the currently displayed package.
      */
     private synchronized void installCurrentPackage() {
-        new Thread(() -> {
-            CompletableFuture<Void> installationFuture;
-            installationFuture = Installer.installPackage(currentPkg, packageDisplaySelector.getValue());
-
-            try {
-                installationFuture.get();
-                Platform.runLater(() -> setStatus("Installed package " + currentPkg.getPackageId()));
-            } catch (Throwable e) {
-                throw new RuntimeException(e);
+        Package pkg = currentPkg;
+        Installer.installPackage(pkg, packageDisplaySelector.getValue()).whenComplete((v, e) -> Platform.runLater(() -> {
+            if (e == null) {
+                setStatus("Installed package " + pkg.getPackageId());
+            } else {
+                e.printStackTrace();
+                setStatus("Could not install package " + pkg.getPackageId());
             }
-        }).start();
+        }));
     }
 
     /**
@@ -0,0 +1,533 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.experimental.UtilityClass;
+import net.xpkgclient.Configuration;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A store of downloaded package archives, kept in {@link Configuration#getArchiveStorePath()} and named by their SHA-256 hash, so that an archive is never downloaded again while it is kept, no matter which package version or X-Plane installation it is installed for. The last modified time of each archive is the last time it was used, so that the least recently used archives can be removed once the store is larger than {@link Configuration#getArchiveStoreMaxSize()}, even if several clients share the store. The extracted contents of an archive can be kept next to it, so that they can be linked into an X-Plane installation with {@link PackageLinker} instead of extracting the archive again, and are removed along with it. Safe to use from multiple threads and processes.
+ */
+@UtilityClass
+public class ArchiveStore {
+
+    /**
+     * Archives used more recently than this are never removed when the store is too large, since they may be about to be extracted.
+     */
+    public static final Duration EVICTION_GRACE_PERIOD = Duration.ofMinutes(10);
+
+    /**
+     * Unfinished downloads which have not been written to for this long are removed, since they are unlikely to be continued.
+     */
+    public static final Duration STALE_DOWNLOAD_AGE = Duration.ofDays(1);
+
+    private static final String ARCHIVE_EXTENSION = ".xpkg";
+    private static final String DOWNLOAD_EXTENSION = ".part";
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final String CONTENTS_DIR = "contents";
+    private static final String MANIFEST_FILE = "manifest.json";
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    // Only one compaction runs at once, and more requests while it is running are satisfied by it
+    private final AtomicReference<CompletableFuture<Void>> compaction = new AtomicReference<>();
+
+    /**
+     * Check if archives should be kept.
+     *
+     * @return True if a directory is configured for the store, and its maximum size is more than zero.
+     */
+    public boolean isEnabled() {
+        return Configuration.getArchiveStorePath() != null && Configuration.getArchiveStoreMaxSize() > 0;
+    }
+
+    /**
+     * Get a kept archive, and mark it as used.
+     *
+     * @param hash The SHA-256 hash of the archive, as a hex string.
+     * @return The archive, or null if the store is not enabled, the archive is not kept, or the hash is not a SHA-256 hash.
+     */
+    public File get(String hash) {
+        Path archive = getArchivePath(hash);
+        if (archive == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        try {
+            Files.setLastModifiedTime(archive, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+
+            // The archive does not exist, or was removed by another client
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return archive.toFile();
+    }
+
+    /**
+     * Get a new location in the store to download an archive to, so that it can be moved into the store without copying it once it has been checked. Neither the file nor its parent directory is created.
+     *
+     * @param packageId The id of the package which is downloaded, to make the location easier to recognize.
+     * @return A new location to download to, or null if the store is not enabled.
+     */
+    public Path newDownloadPath(String packageId) {
+        if (!isEnabled())
+            return null;
+        return Configuration.getArchiveStorePath().toPath().resolve("tmp").resolve(packageId.replaceAll("[^a-zA-Z0-9._-]", "_") + "-" + UUID.randomUUID() + DOWNLOAD_EXTENSION);
+    }
+
+    /**
+     * Get the location in the store to download an archive to, which is always the same for the same name, so that an interrupted download can be continued. Neither the file nor its parent directory is created.
+     *
+     * @param name The name of what is downloaded, such as the id and version of a package.
+     * @return The location to download to, or null if the store is not enabled.
+     */
+    public Path getDownloadPath(String name) {
+        if (!isEnabled())
+            return null;
+        return Configuration.getArchiveStorePath().toPath().resolve("tmp").resolve(name.replaceAll("[^a-zA-Z0-9._-]", "_") + DOWNLOAD_EXTENSION);
+    }
+
+    /**
+     * Keep an archive, by moving it into the store, and then remove the least recently used archives in the background if the store is too large. The hash of the archive must already have been checked.
+     *
+     * @param hash    The SHA-256 hash of the archive, as a hex string.
+     * @param archive The archive to keep, which is moved.
+     * @return The kept archive.
+     * @throws IOException              Exception thrown if the archive could not be moved into the store.
+     * @throws IllegalArgumentException Exception thrown if the store is not enabled, or the hash is not a SHA-256 hash.
+     */
+    public File put(String hash, @NotNull Path archive) throws IOException {
+        Path dest = getArchivePath(hash);
+        if (dest == null)
+            throw new IllegalArgumentException("Can not keep an archive with the hash %s".formatted(hash));
+
+        Files.createDirectories(dest.getParent());
+        try {
+            Files.move(archive, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+
+            // The archive is on another file system, so it is copied next to where it is kept first, so that other clients never see a partial archive
+            Path tmpFile = newDownloadPath("copy");
+            Files.createDirectories(tmpFile.getParent());
+            try {
+                Files.copy(archive, tmpFile);
+                Files.move(tmpFile, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.delete(archive);
+            } finally {
+                Files.deleteIfExists(tmpFile);
+            }
+        }
+        Files.setLastModifiedTime(dest, FileTime.from(Instant.now()));
+
+        compact();
+        return dest.toFile();
+    }
+
+    /**
+     * Get the kept extracted contents of an archive, and mark the archive as used. The size and last modified time of each file is checked against the manifest written when the contents were kept, since a file changed in place through an installation it is linked into changes the kept file too. Contents which do not match are removed, so that the archive is extracted again instead. A change which keeps both the size and the last modified time of a file is not noticed.
+     *
+     * @param hash The SHA-256 hash of the archive, as a hex string.
+     * @return The directory the archive was extracted to, or null if the store is not enabled, the archive is not kept, or its extracted contents are not kept or were changed.
+     */
+    public Path getExtracted(String hash) {
+        Path archive = getArchivePath(hash);
+        if (archive == null)
+            return null;
+
+        Path extracted = getExtractedPath(archive);
+        if (!Files.isDirectory(extracted))
+            return null;
+        try {
+            if (!matchesManifest(extracted)) {
+                PackageExtractor.deleteRecursively(extracted);
+                return null;
+            }
+            Files.setLastModifiedTime(archive, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            return null;
+        }
+        return extracted.resolve(CONTENTS_DIR);
+    }
+
+    /**
+     * Keep the extracted contents of a kept archive, by linking the files of a directory it was extracted to into the store. A manifest of their sizes and last modified times is kept with them, so that {@link ArchiveStore#getExtracted(String)} can tell if they were changed through an installation they are linked into. The permissions of the files are left alone, since they are shared with the installation, and packages may write to their own files. Nothing happens if the contents are already kept, or the archive is not kept.
+     *
+     * @param hash The SHA-256 hash of the archive, as a hex string.
+     * @param dir  The directory the archive was extracted to, which must not be changed afterwards, since its files are shared with the store if they can be linked.
+     * @return The number of files linked and copied into the store, or null if nothing was kept.
+     * @throws IOException Exception thrown if the files could not be linked or copied into the store.
+     */
+    public PackageLinker.LinkStats putExtracted(String hash, @NotNull Path dir) throws IOException {
+        Path archive = getArchivePath(hash);
+        if (archive == null || !Files.exists(archive))
+            return null;
+        Path extracted = getExtractedPath(archive);
+        if (Files.exists(extracted))
+            return null;
+
+        // The contents are linked next to where they are kept first, so that other clients never see partial contents
+        Path tmpDir = newDownloadPath("extracted");
+        try {
+            PackageLinker.LinkStats stats = PackageLinker.link(dir, tmpDir.resolve(CONTENTS_DIR));
+            writeManifest(tmpDir);
+            Files.createDirectories(extracted.getParent());
+            Files.move(tmpDir, extracted, StandardCopyOption.ATOMIC_MOVE);
+            return stats;
+        } catch (FileSystemException e) {
+
+            // Another client may have kept the same contents first
+            if (Files.exists(extracted))
+                return null;
+            throw e;
+        } finally {
+            PackageExtractor.deleteRecursively(tmpDir);
+        }
+    }
+
+    /**
+     * Write the manifest of the extracted contents of an archive.
+     *
+     * @param extracted The directory which holds the extracted contents, and which the manifest is written to.
+     * @throws IOException Exception thrown if the contents could not be read, or the manifest could not be written.
+     */
+    private void writeManifest(@NotNull Path extracted) throws IOException {
+        Path contents = extracted.resolve(CONTENTS_DIR);
+        JSONObject manifest = new JSONObject();
+        try (Stream<Path> files = Files.walk(contents)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                manifest.put(contents.relativize(file).toString(), new JSONObject().put("size", attributes.size()).put("modified", attributes.lastModifiedTime().toMillis()));
+            }
+        }
+        Files.writeString(extracted.resolve(MANIFEST_FILE), manifest.toString(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Check that the extracted contents of an archive are the same as when they were kept.
+     *
+     * @param extracted The directory which holds the extracted contents and their manifest.
+     * @return True if the contents have exactly the files in the manifest, with the same sizes and last modified times, or false if they do not, or there is no manifest.
+     * @throws IOException Exception thrown if the contents could not be read.
+     */
+    private boolean matchesManifest(@NotNull Path extracted) throws IOException {
+        Path manifestFile = extracted.resolve(MANIFEST_FILE);
+        if (!Files.isRegularFile(manifestFile))
+            return false;
+
+        JSONObject manifest;
+        try {
+            manifest = new JSONObject(Files.readString(manifestFile, StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            return false;
+        }
+
+        Path contents = extracted.resolve(CONTENTS_DIR);
+        try (Stream<Path> files = Files.walk(contents)) {
+            List<Path> regularFiles = files.filter(Files::isRegularFile).toList();
+            if (regularFiles.size() != manifest.length())
+                return false;
+
+            for (Path file : regularFiles) {
+                JSONObject entry = manifest.optJSONObject(contents.relativize(file).toString());
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (entry == null || entry.optLong("size", -1) != attributes.size() || entry.optLong("modified", -1) != attributes.lastModifiedTime().toMillis())
+                    return false;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return true;
+    }
+
+    /**
+     * Remove an archive and its extracted contents from the store, such as if it turned out to be damaged.
+     *
+     * @param hash The SHA-256 hash of the archive, as a hex string.
+     * @throws IOException Exception thrown if the archive could not be removed.
+     */
+    public void remove(String hash) throws IOException {
+        Path archive = getArchivePath(hash);
+        if (archive == null)
+            return;
+        PackageExtractor.deleteRecursively(getExtractedPath(archive));
+        Files.deleteIfExists(archive);
+    }
+
+    /**
+     * Compact the store in the background on {@link TaskExecutors#IO}. Unfinished downloads older than {@link ArchiveStore#STALE_DOWNLOAD_AGE}, and extracted contents without an archive are removed, and then the least recently used archives and their extracted contents are removed until the store is no larger than {@link Configuration#getArchiveStoreMaxSize()}. Archives used within the last {@link ArchiveStore#EVICTION_GRACE_PERIOD} are never removed, so the store may stay larger than its maximum size for a while.
+     *
+     * @return A future which completes once the store has been compacted. If a compaction is already running, its future is returned instead of starting another.
+     */
+    public CompletableFuture<Void> compact() {
+        while (true) {
+            CompletableFuture<Void> running = compaction.get();
+            if (running != null && !running.isDone())
+                return running;
+
+            CompletableFuture<Void> next = new CompletableFuture<>();
+            if (!compaction.compareAndSet(running, next))
+                continue;
+
+            TaskExecutors.run(() -> {
+                try {
+                    compactNow();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, TaskExecutors.IO).whenComplete((v, e) -> {
+                if (e == null)
+                    next.complete(null);
+                else
+                    next.completeExceptionally(e);
+            });
+            return next;
+        }
+    }
+
+    /**
+     * Get the total size of the archives and extracted contents in the store.
+     *
+     * @return The total size of all kept archives and their extracted contents in bytes, or 0 if the store is not enabled. Extracted files are counted even if they are linked into an X-Plane installation.
+     * @throws IOException Exception thrown if the store could not be read.
+     */
+    public long getSize() throws IOException {
+        long size = 0;
+        for (StoredArchive archive : listArchives())
+            size += archive.size;
+        return size;
+    }
+
+    /**
+     * Get the number of times an archive was found in the store.
+     *
+     * @return The number of archives found since the program started, or since the counters were last reset.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Get the number of times an archive was not found in the store.
+     *
+     * @return The number of archives not found since the program started, or since the counters were last reset.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Reset the hit and miss counters.
+     */
+    public void resetCounters() {
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    /**
+     * Compact the store on this thread.
+     *
+     * @throws IOException Exception thrown if the store could not be read.
+     * @see ArchiveStore#compact()
+     */
+    private void compactNow() throws IOException {
+        if (!isEnabled())
+            return;
+
+        Instant now = Instant.now();
+        Path downloadDir = Configuration.getArchiveStorePath().toPath().resolve("tmp");
+        if (Files.isDirectory(downloadDir)) {
+            try (Stream<Path> downloads = Files.list(downloadDir)) {
+                for (Path download : downloads.toList()) {
+                    if (isDownloadPath(download))
+                        deleteIfOlder(download, now.minus(STALE_DOWNLOAD_AGE));
+                }
+            }
+        }
+
+        // Extracted contents are kept only after their archive, and removed before it, so contents without an archive were left by a client which stopped
+        Path extractedDir = Configuration.getArchiveStorePath().toPath().resolve("extracted");
+        if (Files.isDirectory(extractedDir)) {
+            try (Stream<Path> extracted = Files.list(extractedDir)) {
+                for (Path dir : extracted.toList()) {
+                    Path archive = getArchivePath(dir.getFileName().toString());
+                    if (archive != null && !Files.exists(archive))
+                        deleteIfOlder(dir, now.minus(EVICTION_GRACE_PERIOD));
+                }
+            }
+        }
+
+        // Archives are removed oldest first, until the store is small enough, or the oldest archive left has been used too recently to remove
+        List<StoredArchive> archives = listArchives();
+        archives.sort(Comparator.comparing(archive -> archive.lastUsed));
+        long size = 0;
+        for (StoredArchive archive : archives)
+            size += archive.size;
+
+        Instant graceStart = now.minus(EVICTION_GRACE_PERIOD);
+        for (StoredArchive archive : archives) {
+            if (size <= Configuration.getArchiveStoreMaxSize() || archive.lastUsed.isAfter(graceStart))
+                break;
+
+            try {
+                PackageExtractor.deleteRecursively(getExtractedPath(archive.path));
+                Files.deleteIfExists(archive.path);
+                size -= archive.size;
+            } catch (IOException ignored) {
+
+                // The archive may be open by another client on a system which does not allow open files to be removed, so it is removed next time instead
+            }
+        }
+    }
+
+    /**
+     * Check if a file in the directory of unfinished downloads was created by the store, either as a download or as the record kept next to one by {@link DownloadProgress}.
+     *
+     * @param path The file to check.
+     * @return True if the file was created by the store, and may be removed by it.
+     */
+    private boolean isDownloadPath(@NotNull Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(DOWNLOAD_EXTENSION) || name.endsWith(DOWNLOAD_EXTENSION + ".progress") || name.startsWith("progress-") && name.endsWith(".tmp");
+    }
+
+    /**
+     * List the archives in the store. Anything else in the directories of archives is left alone, since the store may be in a directory chosen by the user, and only files the store created itself may be removed.
+     *
+     * @return The archives in the store, with the size of their extracted contents included in their size.
+     * @throws IOException Exception thrown if the store could not be read.
+     */
+    private List<StoredArchive> listArchives() throws IOException {
+        List<StoredArchive> archives = new ArrayList<>();
+        if (!isEnabled() || !Files.isDirectory(Configuration.getArchiveStorePath().toPath()))
+            return archives;
+
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(Configuration.getArchiveStorePath().toPath(), path -> path.getFileName().toString().length() == 2 && Files.isDirectory(path))) {
+            for (Path shard : shards) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(shard)) {
+                    for (Path file : files) {
+                        String name = file.getFileName().toString();
+                        String hash = name.endsWith(ARCHIVE_EXTENSION) ? name.substring(0, name.length() - ARCHIVE_EXTENSION.length()) : "";
+                        if (!HASH.matcher(hash).matches() || !hash.startsWith(shard.getFileName().toString()) || !Files.isRegularFile(file))
+                            continue;
+
+                        try {
+                            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                            archives.add(new StoredArchive(file, attributes.size() + getTreeSize(getExtractedPath(file)), attributes.lastModifiedTime().toInstant()));
+                        } catch (NoSuchFileException ignored) {
+                        }
+                    }
+                }
+            }
+        }
+        return archives;
+    }
+
+    /**
+     * Get the total size of the files in a directory.
+     *
+     * @param dir The directory.
+     * @return The total size of every file in the directory, or 0 if it does not exist.
+     * @throws IOException Exception thrown if the directory could not be read.
+     */
+    private long getTreeSize(Path dir) throws IOException {
+        if (!Files.isDirectory(dir))
+            return 0;
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Delete a file, or a directory and everything in it, if it was last modified before a time.
+     *
+     * @param file   The file or directory to delete.
+     * @param cutoff The time before which the file must have been last modified to be deleted.
+     */
+    private void deleteIfOlder(Path file, Instant cutoff) {
+        try {
+            if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff))
+                PackageExtractor.deleteRecursively(file);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Get the location of the extracted contents of an archive in the store.
+     *
+     * @param archive The location of the archive in the store.
+     * @return The directory the archive is extracted to, whether it exists or not.
+     */
+    private Path getExtractedPath(@NotNull Path archive) {
+        String name = archive.getFileName().toString();
+        return Configuration.getArchiveStorePath().toPath().resolve("extracted").resolve(name.substring(0, name.length() - ARCHIVE_EXTENSION.length()));
+    }
+
+    /**
+     * Get the location of an archive in the store.
+     *
+     * @param hash The SHA-256 hash of the archive, as a hex string.
+     * @return The location of the archive, whether it exists or not, or null if the store is not enabled or the hash is not a SHA-256 hash.
+     */
+    private Path getArchivePath(String hash) {
+        if (!isEnabled() || hash == null)
+            return null;
+
+        String normalizedHash = hash.toLowerCase(Locale.ROOT);
+        if (!HASH.matcher(normalizedHash).matches())
+            return null;
+        return Configuration.getArchiveStorePath().toPath().resolve(normalizedHash.substring(0, 2)).resolve(normalizedHash + ARCHIVE_EXTENSION);
+    }
+
+    /**
+     * An archive in the store.
+     *
+     * @param path     The location of the archive.
+     * @param size     The size of the archive in bytes.
+     * @param lastUsed The last time the archive was used.
+     */
+    private record StoredArchive(Path path, long size, Instant lastUsed) {
+    }
+}
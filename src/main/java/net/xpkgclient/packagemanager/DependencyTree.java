@@ -17,12 +17,14 @@ package net.xpkgclient.packagemanager;
 
 import lombok.Getter;
 import lombok.SneakyThrows;
+import net.xpkgclient.Configuration;
 import net.xpkgclient.packagemanager.actions.InstallAction;
 import net.xpkgclient.packagemanager.actions.InstallerAction;
 import net.xpkgclient.packagemanager.actions.SetupDependencyAction;
 import net.xpkgclient.packagemanager.actions.VersionChangeAction;
 import net.xpkgclient.versioning.Version;
 import net.xpkgclient.versioning.VersionSelect;
+import net.xpkgclient.versioning.VersionSelectCache;
 import org.jgrapht.graph.DirectedAcyclicGraph;
 
 import java.io.File;
@@ -55,6 +57,9 @@ public final class DependencyTree implements Cloneable {
     // A map of all the package nodes
     private HashMap<String, PackageNode> treeNodes = new HashMap<>();
 
+    // Fetches version data ahead of resolution, only set on the temporary trees used to resolve a package
+    private VersionDataPrefetcher prefetcher;
+
     /**
      * Create a dependency tree at the file location. Load if it exists, or create if it doesn't.
      *
@@ -181,11 +186,21 @@ public final class DependencyTree implements Cloneable {
             return Optional.of(actions);
         }
 
-        DependencyTree tempTree = clone();
-        PackageNode newNode = tempTree.addPackageNode(packageId, packageVersion);
-        tempTree.userInstalledPackages.add(newNode);
+        // Fetch the data that will most likely be needed while resolving, and stop once resolving is done
+        VersionDataPrefetcher prefetcher = new VersionDataPrefetcher(Configuration.getPrefetchDepth(), Configuration.getPrefetchConcurrency(), treeNodes.keySet());
+        prefetcher.start(packageId, packageVersion);
+
+        Optional<List<InstallerAction>> actionsOpt;
+        try {
+            DependencyTree tempTree = clone();
+            tempTree.prefetcher = prefetcher;
+            PackageNode newNode = tempTree.addPackageNode(packageId, packageVersion);
+            tempTree.userInstalledPackages.add(newNode);
 
-        Optional<List<InstallerAction>> actionsOpt = tempTree.getActions(packageId, packageVersion, new LinkedList<>(), true);
+            actionsOpt = tempTree.getActions(packageId, packageVersion, new LinkedList<>(), true);
+        } finally {
+            prefetcher.cancel();
+        }
         if (actionsOpt.isEmpty())
             return Optional.empty();
 
@@ -212,12 +227,12 @@ public final class DependencyTree implements Cloneable {
      * @return An optional, which is present if the package can be installed at the specified version, otherwise it's empty.
      */
     Optional<List<InstallerAction>> getActions(String packageId, Version packageVersion, List<InstallerAction> actions, boolean manualInstall) {
-        Remote.VersionData data = Remote.getVersionData(packageId, packageVersion);
+        Remote.VersionData data = prefetcher == null ? Remote.getVersionData(packageId, packageVersion) : prefetcher.getVersionData(packageId, packageVersion);
 
         // The unresolved incompatibilities of the package, indexed by package id, with a value of the version selection
         HashMap<String, VersionSelect> unresolvedIncompatibilities = new HashMap<>();
         for (String[] incompatibility : data.incompatibilities()) {
-            unresolvedIncompatibilities.put(incompatibility[0], new VersionSelect(incompatibility[1]));
+            unresolvedIncompatibilities.put(incompatibility[0], VersionSelectCache.get(incompatibility[1]));
         }
 
         for (Map.Entry<String, VersionSelect> incompatibility : unresolvedIncompatibilities.entrySet()) {
@@ -238,29 +253,33 @@ public final class DependencyTree implements Cloneable {
                 List<VersionSelect> dependencySelections = new ArrayList<>(dependencies.get(incompatibilityId).stream().map(PackageDependency::selection).toList());
                 VersionSelect dependencySelection = VersionSelect.intersection(dependencySelections.toArray(VersionSelect[]::new));
 
+                // The versions that the dependents allow, which are not incompatible
+                VersionSelect allowedSelection = dependencySelection.difference(incompatibilitySelection);
+                if (allowedSelection.isEmpty())
+                    return Optional.empty();
+
                 Package incompatiblePkg = Remote.getPackage(incompatibilityId);
-                List<Version> versions = new ArrayList<>(List.of(incompatiblePkg.getVersions()));
-                Collections.reverse(versions);
+                Version[] versions = incompatiblePkg.getVersions();
+                BitSet candidates = incompatiblePkg.getVersionMask(allowedSelection);
 
+                // Try the allowed versions from newest to oldest
                 boolean incompatibilityResolved = false;
-                for (Version version : versions) {
-                    if (dependencySelection.containsVersion(version) && !incompatibilitySelection.containsVersion(version)) {
-                        try {
-                            changeVersion(incompatibilityId, version);
+                for (int i = candidates.length() - 1; i >= 0; i = candidates.previousSetBit(i - 1)) {
+                    Version version = versions[i];
+                    try {
+                        changeVersion(incompatibilityId, version);
 
-                            Optional<List<InstallerAction>> incompatibilityActions = getActions(incompatibilityId, version, actions, false);
+                        Optional<List<InstallerAction>> incompatibilityActions = getActions(incompatibilityId, version, actions, false);
 
-                            if (incompatibilityActions.isEmpty()) {
-                                incompatibilityResolved = true;
+                        if (incompatibilityActions.isEmpty()) {
+                            incompatibilityResolved = true;
 
-                                actions.set(actions.size() - 1, new VersionChangeAction(incompatibilityId, currentIncompatibilityVersion, version, false));
-                                break;
-                            }
-
-                        } catch (PackageNotInstalledException e) {
-                            throw new AssertionError("Incompatibility not installed (couldn't change version), but we're trying to resolve an installed incompatibility", e);
+                            actions.set(actions.size() - 1, new VersionChangeAction(incompatibilityId, currentIncompatibilityVersion, version, false));
+                            break;
                         }
 
+                    } catch (PackageNotInstalledException e) {
+                        throw new AssertionError("Incompatibility not installed (couldn't change version), but we're trying to resolve an installed incompatibility", e);
                     }
                 }
 
@@ -273,7 +292,7 @@ public final class DependencyTree implements Cloneable {
         // The unresolved dependencies, indexed similarly to unresolvedIncompatibilities
         HashMap<String, VersionSelect> unresolvedDependencies = new HashMap<>();
         for (String[] dependency : data.dependencies()) {
-            unresolvedDependencies.put(dependency[0], new VersionSelect(dependency[1]));
+            unresolvedDependencies.put(dependency[0], VersionSelectCache.get(dependency[1]));
         }
 
         for (Map.Entry<String, VersionSelect> dependency : unresolvedDependencies.entrySet()) {
@@ -301,30 +320,30 @@ public final class DependencyTree implements Cloneable {
             if (dependencyPkg == null)
                 throw new RuntimeException("Dependency does not exist " + dependencyId);
 
-            List<Version> availDepVersions = new java.util.ArrayList<>(Arrays.stream(dependencyPkg.getVersions()).toList());
-            Collections.reverse(availDepVersions);
+            Version[] availDepVersions = dependencyPkg.getVersions();
+            BitSet candidates = dependencyPkg.getVersionMask(dependencySelection);
 
+            // Try the matching versions from newest to oldest
             boolean depInstalled = false;
-            for (Version depTestVersion : availDepVersions) {
-                if (dependencySelection.containsVersion(depTestVersion)) {
+            for (int i = candidates.length() - 1; i >= 0; i = candidates.previousSetBit(i - 1)) {
+                Version depTestVersion = availDepVersions[i];
 
-                    PackageNode dependentNode = treeNodes.get(packageId);
-                    PackageNode dependencyNode = addPackageNode(dependencyId, depTestVersion);
-                    PackageDependency dependencyEdge = addPackageDependency(dependentNode, dependencyNode, dependency.getValue());
+                PackageNode dependentNode = treeNodes.get(packageId);
+                PackageNode dependencyNode = addPackageNode(dependencyId, depTestVersion);
+                PackageDependency dependencyEdge = addPackageDependency(dependentNode, dependencyNode, dependency.getValue());
 
-                    addAutoInstalledPackage(dependencyNode);
-                    Optional<List<InstallerAction>> dependencyActions = getActions(dependencyId, depTestVersion, actions, false);
-                    actions.add(new SetupDependencyAction(packageId, dependencyId, dependency.getValue()));
+                addAutoInstalledPackage(dependencyNode);
+                Optional<List<InstallerAction>> dependencyActions = getActions(dependencyId, depTestVersion, actions, false);
+                actions.add(new SetupDependencyAction(packageId, dependencyId, dependency.getValue()));
 
-                    if (dependencyActions.isPresent()) {
-                        depInstalled = true;
-                        break;
-                    }
-
-                    graph.removeEdge(dependencyEdge);
-                    graph.removeVertex(dependencyNode);
-                    autoInstalledPackages.remove(dependencyNode);
+                if (dependencyActions.isPresent()) {
+                    depInstalled = true;
+                    break;
                 }
+
+                graph.removeEdge(dependencyEdge);
+                graph.removeVertex(dependencyNode);
+                autoInstalledPackages.remove(dependencyNode);
             }
 
             if (!depInstalled) {
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The record kept next to a partially downloaded package, so that the download can be continued from where it stopped instead of starting over. The number of bytes already downloaded is the size of the partial file itself, and this record holds what is needed to check that the rest of the file the server sends belongs to the same file.
+ *
+ * @param url       The location the package was downloaded from.
+ * @param hash      The expected SHA-256 hash of the whole package.
+ * @param validator The strong {@code ETag}, or if the server did not send one, the {@code Last-Modified} date of the file, which is sent in the {@code If-Range} header when the download is continued, so that the server sends the whole file again if it changed.
+ * @param length    The total size of the file in bytes, or -1 if the server did not say.
+ */
+public record DownloadProgress(String url, String hash, String validator, long length) {
+
+    /**
+     * Create the record for a response to a download request.
+     *
+     * @param url     The location the package is downloaded from.
+     * @param hash    The expected SHA-256 hash of the whole package.
+     * @param status  The status code of the response, which must be 200 or 206.
+     * @param headers The headers of the response.
+     * @return The record for the response, or null if the server did not send anything to check a continued download with.
+     */
+    public static DownloadProgress fromResponse(String url, String hash, int status, @NotNull HttpHeaders headers) {
+        String validator = headers.firstValue("ETag").filter(etag -> !etag.startsWith("W/")).or(() -> headers.firstValue("Last-Modified")).orElse(null);
+        if (validator == null)
+            return null;
+
+        long length = headers.firstValueAsLong("Content-Length").orElse(-1);
+        if (status == 206) {
+            String contentRange = headers.firstValue("Content-Range").orElse("");
+            try {
+                length = Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1).trim());
+            } catch (NumberFormatException e) {
+                length = -1;
+            }
+        }
+        return new DownloadProgress(url, hash, validator, length);
+    }
+
+    /**
+     * Get the file the record of a partial download is kept in.
+     *
+     * @param downloadFile The partially downloaded file.
+     * @return The file the record is kept in, next to the partial download.
+     */
+    public static File getFile(@NotNull File downloadFile) {
+        return new File(downloadFile.getParentFile(), downloadFile.getName() + ".progress");
+    }
+
+    /**
+     * Read the record of a partial download.
+     *
+     * @param downloadFile The partially downloaded file.
+     * @return The record of the download, or null if there is none, or it could not be read.
+     */
+    public static DownloadProgress read(@NotNull File downloadFile) {
+        File file = getFile(downloadFile);
+        if (!file.exists())
+            return null;
+
+        try {
+            JSONObject obj = new JSONObject(Files.readString(file.toPath(), StandardCharsets.UTF_8));
+            return new DownloadProgress(obj.getString("url"), obj.getString("hash"), obj.getString("validator"), obj.getLong("length"));
+        } catch (IOException | JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write this record next to a partial download. The record is written to a temporary file first, so that a partially written record is never read.
+     *
+     * @param downloadFile The partially downloaded file.
+     * @throws IOException Exception thrown if the record could not be written.
+     */
+    public void write(@NotNull File downloadFile) throws IOException {
+        JSONObject obj = new JSONObject();
+        obj.put("url", url);
+        obj.put("hash", hash);
+        obj.put("validator", validator);
+        obj.put("length", length);
+
+        File file = getFile(downloadFile);
+        Path tmpFile = Files.createTempFile(file.getParentFile().toPath(), "progress-", ".tmp");
+        try {
+            Files.writeString(tmpFile, obj.toString(), StandardCharsets.UTF_8);
+            Files.move(tmpFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Delete the record of a partial download, if there is one.
+     *
+     * @param downloadFile The partially downloaded file.
+     */
+    public static void delete(@NotNull File downloadFile) {
+        //noinspection ResultOfMethodCallIgnored
+        getFile(downloadFile).delete();
+    }
+
+    /**
+     * Get the number of bytes of a partial download which can be kept when it is continued.
+     *
+     * @param downloadFile The partially downloaded file.
+     * @param url          The location the package is downloaded from now.
+     * @param hash         The expected SHA-256 hash of the package now.
+     * @return The size of the partial download, or 0 if it should be started over, such as if the record is for another file, or the download was already complete.
+     */
+    public long getResumeOffset(@NotNull File downloadFile, String url, String hash) {
+        if (!this.url.equals(url) || !this.hash.equalsIgnoreCase(hash))
+            return 0;
+
+        long downloaded = downloadFile.length();
+        if (length >= 0 && downloaded >= length)
+            return 0;
+        return downloaded;
+    }
+}
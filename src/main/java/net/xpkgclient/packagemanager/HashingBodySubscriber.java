@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import org.apache.commons.codec.binary.Hex;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+
+/**
+ * Writes the body of a response to a file, and computes the SHA-256 hash of the body as it arrives, so that a downloaded file never has to be read again just to check it. The body is collected in a large direct buffer before it is written, so that the file is written in a few large writes rather than one for each small buffer the client receives. The download fails as soon as more bytes arrive than the server said it would send, or when it is cancelled. The file can be read while it is being downloaded with {@link HashingBodySubscriber#openStream()}. A download which was interrupted can be continued with {@link HashingBodySubscriber#resumeFrom(long)}.
+ */
+public final class HashingBodySubscriber implements HttpResponse.BodySubscriber<String> {
+
+    /**
+     * The size of the buffer the body is collected in before it is written.
+     */
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    // Direct buffers are slow to allocate, and their memory is only freed when they are garbage collected, so they are reused by later downloads
+    private static final Queue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+    private final Path file;
+
+    private volatile MessageDigest digest;
+    private volatile long expectedLength = -1;
+    private volatile long startOffset;
+    private MessageDigest resumeDigest;
+    private long resumeOffset;
+    private volatile Flow.Subscription subscription;
+    private volatile Throwable failure;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private long received;
+    private long written;
+
+    /**
+     * Create a new subscriber which writes to a file. The file is created, or replaced, once the response starts.
+     *
+     * @param file The file to write the body to.
+     */
+    @SneakyThrows(NoSuchAlgorithmException.class)
+    public HashingBodySubscriber(@NotNull Path file) {
+        this.file = file;
+        digest = MessageDigest.getInstance("SHA-256");
+    }
+
+    /**
+     * Prepare to continue an interrupted download, by hashing the part of the file which was already downloaded, since the state of a hash can not be saved. The request must ask for the rest of the file with a {@code Range} header. If the server sends the rest of the file, it is written after the part already downloaded, and if it sends the whole file instead, such as if the file changed, the download starts over. Must be called before the request is sent.
+     *
+     * @param offset The number of bytes at the start of the file which were already downloaded.
+     * @throws IOException Exception thrown if the file could not be read, or is shorter than {@code offset}.
+     */
+    @SneakyThrows(NoSuchAlgorithmException.class)
+    public void resumeFrom(long offset) throws IOException {
+        MessageDigest partialDigest = MessageDigest.getInstance("SHA-256");
+        ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < offset) {
+                readBuffer.clear().limit((int) Math.min(readBuffer.capacity(), offset - position));
+                int read = readChannel.read(readBuffer, position);
+                if (read < 0)
+                    throw new IOException("Can not resume the download of %s from %d bytes, since it only has %d".formatted(file, offset, position));
+
+                partialDigest.update(readBuffer.flip());
+                position += read;
+            }
+        }
+
+        synchronized (this) {
+            resumeDigest = partialDigest;
+            resumeOffset = offset;
+        }
+    }
+
+    /**
+     * Get the number of bytes of the file which were downloaded before this download started.
+     *
+     * @return The number of bytes the download was resumed from, or 0 if the download started from the beginning of the file. Only set once the response has started.
+     */
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Get a body handler which uses this subscriber if the response is successful, and discards the body otherwise. The length of the body is taken from the {@code Content-Length} header of the response, if it has one. A partial response continues the download from where {@link HashingBodySubscriber#resumeFrom(long)} left off, and the download fails if the part sent does not start there. The handler can only be used for one request.
+     *
+     * @return A body handler which uses this subscriber, and completes with the hash of the body, or null if the response is not successful.
+     */
+    public HttpResponse.BodyHandler<String> handler() {
+        return responseInfo -> {
+            int status = responseInfo.statusCode();
+            if (status < 200 || status >= 300) {
+
+                // Readers of the file would otherwise wait forever, since this subscriber never receives the body
+                fail(new IOException("Server responded with status %d for %s".formatted(status, file)));
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+
+            long contentLength = responseInfo.headers().firstValueAsLong("Content-Length").orElse(-1);
+            synchronized (this) {
+                if (status == 206) {
+                    long rangeStart = getRangeStart(responseInfo.headers().firstValue("Content-Range").orElse(""));
+                    if (resumeOffset == 0 || rangeStart != resumeOffset) {
+                        fail(new IOException("Server sent %s from byte %d, but it was requested from byte %d".formatted(file, rangeStart, resumeOffset)));
+                        return HttpResponse.BodySubscribers.replacing(null);
+                    }
+                    startOffset = resumeOffset;
+                    digest = resumeDigest;
+                }
+                expectedLength = contentLength >= 0 ? startOffset + contentLength : -1;
+            }
+            return this;
+        };
+    }
+
+    /**
+     * Stop the download. The file is closed, but not deleted, and the hash completes exceptionally with a {@link CancellationException}.
+     */
+    public void cancel() {
+        Flow.Subscription currentSubscription = subscription;
+        if (currentSubscription != null)
+            currentSubscription.cancel();
+        fail(new CancellationException("Download of %s cancelled after %d bytes".formatted(file, received)));
+    }
+
+    /**
+     * Open a stream which reads the file as it is downloaded. Reading blocks until more of the file has been written, and the stream ends when the download completes. If the download fails, reading fails once everything written before the failure has been read. This does not check the hash of the file, so anything read must not be trusted until the download completes successfully.
+     *
+     * @return A new stream which reads the file from the start.
+     */
+    public InputStream openStream() {
+        return new FollowingInputStream();
+    }
+
+    /**
+     * Wait until more of the file has been written, or the download has finished.
+     *
+     * @param position The number of bytes that have already been read.
+     * @return The number of bytes of the file that have been written, which is only at most {@code position} if the download has finished.
+     * @throws InterruptedException Exception thrown if the thread was interrupted while waiting.
+     */
+    private synchronized long awaitWritten(long position) throws InterruptedException {
+        while (written <= position && !result.isDone())
+            wait();
+        return written;
+    }
+
+    @Override
+    public synchronized void onSubscribe(@NotNull Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (result.isDone()) {
+            subscription.cancel();
+            return;
+        }
+
+        try {
+            if (startOffset == 0) {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            } else {
+
+                // Anything after the part which was hashed is discarded, since it may have been written after the last time the part was checked
+                channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                channel.truncate(startOffset);
+                channel.position(startOffset);
+                received = startOffset;
+                written = startOffset;
+            }
+        } catch (IOException e) {
+            subscription.cancel();
+            fail(e);
+            return;
+        }
+
+        buffer = freeBuffers.poll();
+        if (buffer == null)
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        subscription.request(1);
+    }
+
+    @Override
+    public synchronized void onNext(@NotNull List<ByteBuffer> items) {
+        if (result.isDone())
+            return;
+
+        try {
+            for (ByteBuffer item : items) {
+                received += item.remaining();
+                if (expectedLength >= 0 && received > expectedLength)
+                    throw new IOException("Download of %s is longer than the expected %d bytes".formatted(file, expectedLength));
+
+                digest.update(item.duplicate());
+                while (item.hasRemaining()) {
+                    if (!buffer.hasRemaining())
+                        flush();
+
+                    int length = Math.min(item.remaining(), buffer.remaining());
+                    buffer.put(buffer.position(), item, item.position(), length);
+                    buffer.position(buffer.position() + length);
+                    item.position(item.position() + length);
+                }
+            }
+        } catch (IOException e) {
+            subscription.cancel();
+            fail(e);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        fail(throwable);
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        if (result.isDone())
+            return;
+
+        try {
+            flush();
+            if (expectedLength >= 0 && received != expectedLength)
+                throw new IOException("Download of %s ended after %d of %d bytes".formatted(file, received, expectedLength));
+            channel.close();
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        release();
+        result.complete(Hex.encodeHexString(digest.digest()));
+        notifyAll();
+    }
+
+    @Override
+    public CompletionStage<String> getBody() {
+        return result;
+    }
+
+    /**
+     * Get the first byte of a partial response.
+     *
+     * @param contentRange The {@code Content-Range} header of the response, such as {@code bytes 100-199/200}.
+     * @return The first byte of the file in the response, or -1 if the header could not be parsed.
+     */
+    private static long getRangeStart(@NotNull String contentRange) {
+        String range = contentRange.trim();
+        if (!range.startsWith("bytes ") || range.indexOf('-') < 0)
+            return -1;
+
+        try {
+            return Long.parseLong(range.substring("bytes ".length(), range.indexOf('-')).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Write everything in the buffer to the file.
+     *
+     * @throws IOException Exception thrown if the file could not be written.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            written += channel.write(buffer);
+        buffer.clear();
+        notifyAll();
+    }
+
+    /**
+     * Stop writing, write what has already been received, close the file, and complete the hash exceptionally, unless it is already complete.
+     *
+     * @param e The reason the download failed.
+     */
+    private synchronized void fail(Throwable e) {
+        if (result.isDone())
+            return;
+
+        if (channel != null) {
+
+            // Everything received so far is written, so that as much as possible of an interrupted download can be kept
+            try {
+                if (channel.isOpen())
+                    flush();
+            } catch (IOException ignored) {
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+        release();
+        failure = e;
+        result.completeExceptionally(e);
+        notifyAll();
+    }
+
+    /**
+     * Return the buffer so that it can be used by another download.
+     */
+    private void release() {
+        if (buffer == null)
+            return;
+        buffer.clear();
+        freeBuffers.offer(buffer);
+        buffer = null;
+    }
+
+    /**
+     * A stream which reads the file as it is written, see {@link HashingBodySubscriber#openStream()}.
+     */
+    private final class FollowingInputStream extends InputStream {
+
+        private FileChannel readChannel;
+        private long position;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+
+            long available;
+            try {
+                available = awaitWritten(position);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the download of %s".formatted(file));
+            }
+
+            if (available <= position) {
+                if (failure != null)
+                    throw new IOException("Download of %s failed".formatted(file), failure);
+                return -1;
+            }
+
+            if (readChannel == null)
+                readChannel = FileChannel.open(file, StandardOpenOption.READ);
+            int read = readChannel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, available - position)), position);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (readChannel != null)
+                readChannel.close();
+        }
+    }
+}
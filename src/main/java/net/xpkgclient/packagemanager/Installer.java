@@ -15,50 +15,46 @@
 
 package net.xpkgclient.packagemanager;
 
+import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
 import net.arkinsolomon.sakurainterpreter.InterpreterOptions;
 import net.arkinsolomon.sakurainterpreter.SakuraInterpreter;
 import net.xpkgclient.Configuration;
 import net.xpkgclient.packagemanager.actions.InstallerAction;
 import net.xpkgclient.versioning.Version;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 @UtilityClass
 public class Installer {
 
+    // Installations change the dependency tree, so they are run one at a time, in the order they were requested
+    private final ExecutorService installQueue = TaskExecutors.newPool("xpkg-install", 1);
+
     /**
-     * Install a package at a specified version. Only use for fresh installations, do not use for updates.
+     * Install a package at a specified version. Only use for fresh installations, do not use for updates. Installations are queued, and run one at a time.
      *
      * @param pkg            The package to install.
      * @param packageVersion The version of the package to install.
-     * @return A future which completes when the package is installed.
+     * @return A future which completes when the package is installed, or completes exceptionally with the error that caused the installation to fail. Cancelling it interrupts the installation.
      */
     public CompletableFuture<Void> installPackage(Package pkg, Version packageVersion) {
         DependencyTree dependencyTree = Configuration.getDependencyTree();
-        CompletableFuture<Void> future = new CompletableFuture<>();
-
-        Thread t = new Thread(() -> {
+        return TaskExecutors.submit(() -> {
             Optional<List<InstallerAction>> actions = dependencyTree.getActions(pkg.getPackageId(), packageVersion);
-
-            if (actions.isEmpty()) {
-                future.completeExceptionally(new UnablePackageInstallException(pkg.getPackageId(), packageVersion));
-                return;
-            }
+            if (actions.isEmpty())
+                throw new UnablePackageInstallException(pkg.getPackageId(), packageVersion);
 
             for (InstallerAction action : actions.get()) {
                 System.out.println(action);
                 action.perform();
             }
-
-            future.complete(null);
-        });
-
-        t.start();
-
-        return future;
+            return null;
+        }, installQueue);
     }
 
     /**
@@ -67,56 +63,57 @@ public class Installer {
      * @param pkg                The package to install.
      * @param version            The version of the package to install.
      * @param packageVersionData The data for a package version.
-     * @return A future which completes when the installation script is done running.
+     * @return A future which completes when the installation script is done running, or completes exceptionally if the package could not be downloaded or the script failed.
      */
     public CompletableFuture<Void> runInstallScript(Package pkg, Version version, Remote.VersionData packageVersionData) {
-        CompletableFuture<Void> future = new CompletableFuture<>();
-
-        Remote.downloadPackage(pkg, version, packageVersionData, (err, loc) -> {
-            if (err != null)
-                throw new RuntimeException(err);
-
-            InterpreterOptions options = new InterpreterOptions("xpkg");
+        return Remote.fetchPackage(pkg, version, packageVersionData).thenAcceptAsync(loc -> executeInstallScript(pkg, loc), TaskExecutors.IO);
+    }
 
-            File[] xpChildren = Configuration.getXpPath().listFiles();
-            assert xpChildren != null;
-            List<File> readableFiles = new ArrayList<>(Arrays.stream(xpChildren).filter(file -> file.isDirectory() && !file.getName().equals("xpkg")).toList());
+    /**
+     * Execute the installation script of a downloaded package.
+     *
+     * @param pkg The package to install.
+     * @param loc The location of the root of the downloaded package.
+     */
+    @SneakyThrows
+    private void executeInstallScript(@NotNull Package pkg, File loc) {
+        InterpreterOptions options = new InterpreterOptions("xpkg");
 
-            File[] resources = loc.listFiles();
-            assert resources != null;
-            readableFiles.addAll(Arrays.stream(resources).filter(File::isDirectory).toList());
-            options.allowRead(readableFiles);
+        File[] xpChildren = Configuration.getXpPath().listFiles();
+        assert xpChildren != null;
+        List<File> readableFiles = new ArrayList<>(Arrays.stream(xpChildren).filter(file -> file.isDirectory() && !file.getName().equals("xpkg")).toList());
 
-            File tmpFile = new File(Configuration.getTmpDir(), UUID.randomUUID().toString());
-            options.allowRead(tmpFile);
-            options.allowWrite(tmpFile);
+        File[] resources = loc.listFiles();
+        assert resources != null;
+        readableFiles.addAll(Arrays.stream(resources).filter(File::isDirectory).toList());
+        options.allowRead(readableFiles);
 
-            options.setRoot(Configuration.getXpPath());
+        File tmpFile = new File(Configuration.getTmpDir(), UUID.randomUUID().toString());
+        options.allowRead(tmpFile);
+        options.allowWrite(tmpFile);
 
-            options.defineEnvVar("tmp", tmpFile);
-            options.defineEnvVar("default", new File(loc, pkg.getPackageId()));
+        options.setRoot(Configuration.getXpPath());
 
-            options.defineEnvVar("packageName", pkg.getPackageName());
-            options.defineEnvVar("packageId", pkg.getPackageId());
+        options.defineEnvVar("tmp", tmpFile);
+        options.defineEnvVar("default", new File(loc, pkg.getPackageId()));
 
-            switch (pkg.getPackageType()) {
-                case AIRCRAFT -> {
-                    File aircraftFile = new File(Configuration.getXpPath(), "Aircraft");
-                    options.allowWrite(aircraftFile);
-                    options.disallowWrite(new File(aircraftFile, "Laminar Research"));
-                }
-                case OTHER, EXECUTABLE -> {
+        options.defineEnvVar("packageName", pkg.getPackageName());
+        options.defineEnvVar("packageId", pkg.getPackageId());
 
-                }
+        switch (pkg.getPackageType()) {
+            case AIRCRAFT -> {
+                File aircraftFile = new File(Configuration.getXpPath(), "Aircraft");
+                options.allowWrite(aircraftFile);
+                options.disallowWrite(new File(aircraftFile, "Laminar Research"));
             }
+            case OTHER, EXECUTABLE -> {
 
-            SakuraInterpreter interpreter = new SakuraInterpreter(options);
-            interpreter.executeFile(new File(loc, "install.ska"));
-            future.complete(null);
-            // FileUtils.deleteDirectory(loc.getParentFile());
-        });
+            }
+        }
 
-        return future;
+        SakuraInterpreter interpreter = new SakuraInterpreter(options);
+        interpreter.executeFile(new File(loc, "install.ska"));
+        // FileUtils.deleteDirectory(loc.getParentFile());
     }
 
     /**
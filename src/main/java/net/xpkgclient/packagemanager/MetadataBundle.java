@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import net.xpkgclient.Configuration;
+import net.xpkgclient.versioning.Version;
+import net.xpkgclient.versioning.VersionSelect;
+import net.xpkgclient.versioning.VersionSelectCache;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The data of every version of every package in a registry, in a single file which is memory-mapped rather than read, so that dependencies can be resolved without making any requests. Package ids, locations, hashes and selection strings are stored once in a string table, and every selection string is stored with its compiled ranges, so no selection needs to be parsed while resolving. Strings and selections are only decoded the first time they are used. Safe to use from multiple threads.
+ * <p>
+ * All numbers are big-endian. The file starts with a header of nine ints: the magic number, the format version, the number of package ids, strings, selections and versions, and the positions of the string data, the ranges and the version records. The header is followed by the end offset of each string in the string data, the selection table, which is the string index, the index of the first range and the number of ranges (-1 if the selection is invalid) of each selection, and the version index, which is the package id string index, the version number and the record offset of each version, sorted by package and then by version. The package ids are the first strings of the string table, sorted. Each version record is the string index of the location and the hash, followed by the number of dependencies, each dependency as a package id string index and a selection index, and then the incompatibilities in the same way.
+ */
+public final class MetadataBundle {
+
+    // "XPKM"
+    static final int MAGIC = 0x58504b4d;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 9 * Integer.BYTES;
+
+    private static final int SELECTION_ENTRY_SIZE = 3 * Integer.BYTES;
+    private static final int INDEX_ENTRY_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int RANGE_SIZE = 2 * Long.BYTES;
+    private static final String BUNDLE_EXTENSION = ".bin";
+    private static final String ETAG_EXTENSION = ".etag";
+
+    // Only ever read with absolute gets, so it can be shared between threads
+    private final ByteBuffer buffer;
+
+    private final int stringCount;
+    private final int selectionCount;
+    private final int versionCount;
+
+    private final int stringOffsetsPos;
+    private final int selectionTablePos;
+    private final int indexPos;
+    private final int stringDataPos;
+    private final int rangesPos;
+    private final int recordsPos;
+
+    // The index of each package id in the string table
+    private final Map<String, Integer> packageIndices;
+
+    private final AtomicReferenceArray<String> strings;
+    private final AtomicReferenceArray<VersionSelect> selections;
+
+    /**
+     * Read the header of a bundle.
+     *
+     * @param buffer The bundle.
+     * @throws IOException Exception thrown if the buffer does not contain a bundle written by this version of the client.
+     */
+    private MetadataBundle(@NotNull ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION)
+                throw new IOException("Not a metadata bundle");
+
+            int packageCount = buffer.getInt(8);
+            stringCount = buffer.getInt(12);
+            selectionCount = buffer.getInt(16);
+            versionCount = buffer.getInt(20);
+            stringDataPos = buffer.getInt(24);
+            rangesPos = buffer.getInt(28);
+            recordsPos = buffer.getInt(32);
+
+            stringOffsetsPos = HEADER_SIZE;
+            selectionTablePos = stringOffsetsPos + stringCount * Integer.BYTES;
+            indexPos = selectionTablePos + selectionCount * SELECTION_ENTRY_SIZE;
+            if (packageCount < 0 || packageCount > stringCount || selectionCount < 0 || versionCount < 0 || indexPos + (long) versionCount * INDEX_ENTRY_SIZE != stringDataPos || stringDataPos > rangesPos || rangesPos > recordsPos || recordsPos > buffer.limit())
+                throw new IOException("Corrupt metadata bundle header");
+
+            strings = new AtomicReferenceArray<>(stringCount);
+            selections = new AtomicReferenceArray<>(selectionCount);
+            packageIndices = new HashMap<>(packageCount * 4 / 3 + 1);
+            for (int i = 0; i < packageCount; ++i)
+                packageIndices.put(getString(i), i);
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("Corrupt metadata bundle", e);
+        }
+    }
+
+    /**
+     * Get the directory that bundles are stored in for the configured X-Plane installation. Each bundle is stored in a file of its own, since the file of a bundle is mapped while it is in use, and on some systems a mapped file can not be replaced or deleted.
+     *
+     * @return The directory that bundles are stored in, or null if there is no X-Plane installation configured.
+     */
+    public static File getBundleDir() {
+        File xpPath = Configuration.getXpPath();
+        if (xpPath == null || !Configuration.hasConfiguredXPInstallation())
+            return null;
+        return Path.of(xpPath.getAbsolutePath(), "xpkg", "cache", "bundles").toFile();
+    }
+
+    /**
+     * Get a new file to store a bundle in, whose name sorts after the names of the bundles stored before it.
+     *
+     * @param dir The directory that bundles are stored in.
+     * @return A new file in the directory, which is not created.
+     */
+    public static File newBundleFile(@NotNull File dir) {
+        return new File(dir, "bundle-%013d-%s%s".formatted(System.currentTimeMillis(), UUID.randomUUID(), BUNDLE_EXTENSION));
+    }
+
+    /**
+     * Find the most recently stored bundle.
+     *
+     * @param dir The directory that bundles are stored in.
+     * @return The file of the most recently stored bundle, or null if no bundle is stored.
+     */
+    public static File findLatestBundleFile(@NotNull File dir) {
+        File[] bundleFiles = dir.listFiles((parent, name) -> name.startsWith("bundle-") && name.endsWith(BUNDLE_EXTENSION));
+        if (bundleFiles == null || bundleFiles.length == 0)
+            return null;
+        return Arrays.stream(bundleFiles).max(Comparator.comparing(File::getName)).orElseThrow();
+    }
+
+    /**
+     * Get the file that the {@code ETag} a bundle was sent with is stored in, so that the bundle is only sent again if it changed.
+     *
+     * @param bundleFile The file of the bundle.
+     * @return The file that the {@code ETag} of the bundle is stored in, next to the bundle.
+     */
+    public static File getEtagFile(@NotNull File bundleFile) {
+        String name = bundleFile.getName();
+        return new File(bundleFile.getParentFile(), name.substring(0, name.length() - BUNDLE_EXTENSION.length()) + ETAG_EXTENSION);
+    }
+
+    /**
+     * Delete every stored bundle except one. Bundles which can not be deleted, such as if they are still mapped on a system which does not allow mapped files to be deleted, are deleted the next time instead.
+     *
+     * @param dir  The directory that bundles are stored in.
+     * @param keep The file of the bundle to keep.
+     */
+    public static void deleteBundleFilesExcept(@NotNull File dir, @NotNull File keep) {
+        File[] files = dir.listFiles((parent, name) -> name.startsWith("bundle-") && (name.endsWith(BUNDLE_EXTENSION) || name.endsWith(ETAG_EXTENSION)));
+        if (files == null)
+            return;
+
+        File keepEtag = getEtagFile(keep);
+        for (File file : files) {
+            if (file.equals(keep) || file.equals(keepEtag))
+                continue;
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Memory-map a bundle from a file. The file must not be changed or replaced while the bundle is in use.
+     *
+     * @param file The file that contains the bundle.
+     * @return The bundle in the file.
+     * @throws IOException Exception thrown if the file could not be mapped, or if it is not a bundle written by this version of the client.
+     */
+    public static MetadataBundle open(@NotNull File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Metadata bundle is too large: " + file);
+            return new MetadataBundle(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read a bundle from a buffer, which must not be changed while the bundle is in use.
+     *
+     * @param buffer The buffer that contains the bundle, from position zero.
+     * @return The bundle in the buffer.
+     * @throws IOException Exception thrown if the buffer does not contain a bundle written by this version of the client.
+     */
+    public static MetadataBundle wrap(@NotNull ByteBuffer buffer) throws IOException {
+        return new MetadataBundle(buffer.duplicate());
+    }
+
+    /**
+     * Get the number of package versions in the bundle.
+     *
+     * @return The number of package versions in the bundle.
+     */
+    public int getVersionCount() {
+        return versionCount;
+    }
+
+    /**
+     * Get the number of packages in the bundle, including packages which are only depended on, or are only incompatible.
+     *
+     * @return The number of packages in the bundle.
+     */
+    public int getPackageCount() {
+        return packageIndices.size();
+    }
+
+    /**
+     * Get the size of the bundle.
+     *
+     * @return The size of the bundle in bytes.
+     */
+    public int getSize() {
+        return buffer.limit();
+    }
+
+    /**
+     * Get the data for a version of a package. The compiled selections of the dependencies and incompatibilities are added to the {@link VersionSelectCache}, so that the resolver does not parse them.
+     *
+     * @param packageId The id of the package.
+     * @param version   The version of the package.
+     * @return The data for the version, or null if the version is not in the bundle.
+     * @throws RuntimeException Exception thrown if the bundle is corrupt.
+     */
+    public Remote.VersionData getVersionData(String packageId, @NotNull Version version) {
+        Integer packageIndex = packageIndices.get(packageId);
+        if (packageIndex == null)
+            return null;
+
+        int entry = findVersion(packageIndex, version.getVersionNum());
+        if (entry < 0)
+            return null;
+
+        try {
+            int pos = recordsPos + buffer.getInt(indexPos + entry * INDEX_ENTRY_SIZE + Integer.BYTES + Long.BYTES);
+            String loc = getString(buffer.getInt(pos));
+            String hash = getString(buffer.getInt(pos + 4));
+            pos += 8;
+
+            String[][] dependencies = new String[buffer.getInt(pos)][];
+            pos = readSelections(pos + 4, dependencies);
+            String[][] incompatibilities = new String[buffer.getInt(pos)][];
+            readSelections(pos + 4, incompatibilities);
+            return new Remote.VersionData(loc, hash, dependencies, incompatibilities);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new RuntimeException("Corrupt metadata bundle entry for %s@%s".formatted(packageId, version), e);
+        }
+    }
+
+    /**
+     * Find a version in the version index.
+     *
+     * @param packageIndex The index of the package id in the string table.
+     * @param versionNum   The version number of the version.
+     * @return The index of the version in the version index, or -1 if it is not in the bundle.
+     */
+    private int findVersion(int packageIndex, long versionNum) {
+        int low = 0;
+        int high = versionCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entryPos = indexPos + mid * INDEX_ENTRY_SIZE;
+            int cmp = Integer.compare(buffer.getInt(entryPos), packageIndex);
+            if (cmp == 0)
+                cmp = Long.compare(buffer.getLong(entryPos + Integer.BYTES), versionNum);
+
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Read the dependencies or incompatibilities of a version, and cache their compiled selections.
+     *
+     * @param pos   The position of the first pair.
+     * @param pairs The array to fill with the package id and the selection string of each pair.
+     * @return The position after the last pair.
+     */
+    private int readSelections(int pos, String[] @NotNull [] pairs) {
+        for (int i = 0; i < pairs.length; ++i, pos += 8) {
+            int selectionIndex = buffer.getInt(pos + 4);
+            String selectionStr = getString(buffer.getInt(selectionTablePos + selectionIndex * SELECTION_ENTRY_SIZE));
+            VersionSelect selection = getSelection(selectionIndex);
+            if (selection != null)
+                VersionSelectCache.putIfAbsent(selectionStr, selection);
+            pairs[i] = new String[]{getString(buffer.getInt(pos)), selectionStr};
+        }
+        return pos;
+    }
+
+    /**
+     * Get a string from the string table, and decode it if it has not been decoded yet.
+     *
+     * @param index The index of the string.
+     * @return The string at the index.
+     */
+    private String getString(int index) {
+        String str = strings.get(index);
+        if (str != null)
+            return str;
+
+        int start = index == 0 ? 0 : buffer.getInt(stringOffsetsPos + (index - 1) * Integer.BYTES);
+        int end = buffer.getInt(stringOffsetsPos + index * Integer.BYTES);
+        if (start > end || stringDataPos + end > rangesPos)
+            throw new IndexOutOfBoundsException("String %d is outside of the string data".formatted(index));
+
+        byte[] bytes = new byte[end - start];
+        buffer.get(stringDataPos + start, bytes);
+        str = new String(bytes, StandardCharsets.UTF_8);
+        strings.compareAndSet(index, null, str);
+        return strings.get(index);
+    }
+
+    /**
+     * Get a compiled selection from the selection table, and create it from its ranges if it has not been created yet.
+     *
+     * @param index The index of the selection.
+     * @return The selection at the index, or null if the selection string is not valid.
+     */
+    private VersionSelect getSelection(int index) {
+        VersionSelect selection = selections.get(index);
+        if (selection != null)
+            return selection;
+
+        int entryPos = selectionTablePos + index * SELECTION_ENTRY_SIZE;
+        int firstRange = buffer.getInt(entryPos + 4);
+        int rangeCount = buffer.getInt(entryPos + 8);
+        if (rangeCount < 0)
+            return null;
+
+        long[] mins = new long[rangeCount];
+        long[] maxes = new long[rangeCount];
+        for (int i = 0; i < rangeCount; ++i) {
+            int rangePos = rangesPos + (firstRange + i) * RANGE_SIZE;
+            if (rangePos + RANGE_SIZE > recordsPos)
+                throw new IndexOutOfBoundsException("Range %d is outside of the ranges".formatted(firstRange + i));
+            mins[i] = buffer.getLong(rangePos);
+            maxes[i] = buffer.getLong(rangePos + Long.BYTES);
+        }
+
+        selections.compareAndSet(index, null, VersionSelect.fromRanges(mins, maxes));
+        return selections.get(index);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import net.xpkgclient.versioning.Version;
+import net.xpkgclient.versioning.VersionRange;
+import net.xpkgclient.versioning.VersionSelect;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Builds a metadata bundle, which holds the data for many package versions in the layout read by {@link MetadataBundle}. Used by the registry to generate bundles, and to generate bundles locally from a registry for testing.
+ */
+public final class MetadataBundleWriter {
+
+    private final Map<String, Map<Version, Remote.VersionData>> versions = new HashMap<>();
+
+    /**
+     * Add the data for a version of a package to the bundle.
+     *
+     * @param packageId The id of the package.
+     * @param version   The version of the package.
+     * @param data      The data of the version.
+     * @return This writer, so that calls can be chained.
+     * @throws IllegalArgumentException Exception thrown if the data for the version has already been added.
+     */
+    public MetadataBundleWriter add(String packageId, Version version, Remote.VersionData data) {
+        if (versions.computeIfAbsent(packageId, k -> new HashMap<>()).putIfAbsent(version, data) != null)
+            throw new IllegalArgumentException("The data for %s@%s has already been added".formatted(packageId, version));
+        return this;
+    }
+
+    /**
+     * Write the bundle. The stream is not closed.
+     *
+     * @param out The stream to write the bundle to.
+     * @throws IOException Exception thrown if the bundle could not be written.
+     */
+    public void write(@NotNull OutputStream out) throws IOException {
+
+        // Package ids come first in the string table, sorted, so that the reader knows which strings are package ids
+        TreeSet<String> packageIds = new TreeSet<>(versions.keySet());
+        for (Map<Version, Remote.VersionData> packageVersions : versions.values()) {
+            for (Remote.VersionData data : packageVersions.values()) {
+                for (String[] dependency : data.dependencies())
+                    packageIds.add(dependency[0]);
+                for (String[] incompatibility : data.incompatibilities())
+                    packageIds.add(incompatibility[0]);
+            }
+        }
+
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (String packageId : packageIds)
+            strings.put(packageId, strings.size());
+        Map<String, Integer> selections = new LinkedHashMap<>();
+
+        // The version index, sorted by package, and then by version
+        List<String> sortedPackageIds = new ArrayList<>(versions.keySet());
+        sortedPackageIds.sort(Comparator.comparing(strings::get));
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        int versionCount = 0;
+        for (String packageId : sortedPackageIds) {
+            Map<Version, Remote.VersionData> packageVersions = versions.get(packageId);
+            List<Version> sortedVersions = new ArrayList<>(packageVersions.keySet());
+            Collections.sort(sortedVersions);
+
+            for (Version version : sortedVersions) {
+                Remote.VersionData data = packageVersions.get(version);
+                index.writeInt(strings.get(packageId));
+                index.writeLong(version.getVersionNum());
+                index.writeInt(records.size());
+                ++versionCount;
+
+                records.writeInt(intern(strings, data.loc()));
+                records.writeInt(intern(strings, data.hash()));
+                writeSelections(records, data.dependencies(), strings, selections);
+                writeSelections(records, data.incompatibilities(), strings, selections);
+            }
+        }
+
+        // Every distinct selection string is compiled once, and its ranges are stored with it
+        ByteArrayOutputStream selectionBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream rangeBytes = new ByteArrayOutputStream();
+        DataOutputStream selectionTable = new DataOutputStream(selectionBytes);
+        DataOutputStream ranges = new DataOutputStream(rangeBytes);
+        for (String selectionStr : selections.keySet()) {
+            VersionSelect selection;
+            try {
+                selection = new VersionSelect(selectionStr);
+            } catch (RuntimeException e) {
+                selection = null;
+            }
+
+            // Invalid selections are left for the resolver to parse, so that it fails the same way it would without a bundle
+            selectionTable.writeInt(intern(strings, selectionStr));
+            selectionTable.writeInt(ranges.size() / 16);
+            if (selection == null || !selection.isValid()) {
+                selectionTable.writeInt(-1);
+                continue;
+            }
+
+            VersionRange[] selectionRanges = selection.getRanges();
+            selectionTable.writeInt(selectionRanges.length);
+            for (VersionRange range : selectionRanges) {
+                ranges.writeLong(range.getMinVersionNum());
+                ranges.writeLong(range.getMaxVersionNum());
+            }
+        }
+
+        ByteArrayOutputStream stringDataBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream stringOffsetBytes = new ByteArrayOutputStream();
+        DataOutputStream stringOffsets = new DataOutputStream(stringOffsetBytes);
+        for (String str : strings.keySet()) {
+            stringDataBytes.write(str.getBytes(StandardCharsets.UTF_8));
+            stringOffsets.writeInt(stringDataBytes.size());
+        }
+
+        long stringDataPos = MetadataBundle.HEADER_SIZE + stringOffsetBytes.size() + selectionBytes.size() + indexBytes.size();
+        long rangesPos = stringDataPos + stringDataBytes.size();
+        long recordsPos = rangesPos + rangeBytes.size();
+        if (recordsPos + recordBytes.size() > Integer.MAX_VALUE)
+            throw new IOException("Metadata bundle is too large");
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MetadataBundle.MAGIC);
+        dataOut.writeInt(MetadataBundle.FORMAT_VERSION);
+        dataOut.writeInt(packageIds.size());
+        dataOut.writeInt(strings.size());
+        dataOut.writeInt(selections.size());
+        dataOut.writeInt(versionCount);
+        dataOut.writeInt((int) stringDataPos);
+        dataOut.writeInt((int) rangesPos);
+        dataOut.writeInt((int) recordsPos);
+        stringOffsetBytes.writeTo(dataOut);
+        selectionBytes.writeTo(dataOut);
+        indexBytes.writeTo(dataOut);
+        stringDataBytes.writeTo(dataOut);
+        rangeBytes.writeTo(dataOut);
+        recordBytes.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    /**
+     * Write the package ids and selections of the dependencies or incompatibilities of a version.
+     *
+     * @param out        The stream to write to.
+     * @param pairs      The dependencies or incompatibilities, where each is the package id and the selection string.
+     * @param strings    The string table, indexed by string, with a value of the index of the string.
+     * @param selections The selection table, indexed by selection string, with a value of the index of the selection.
+     * @throws IOException Exception thrown if the pairs could not be written.
+     */
+    private static void writeSelections(@NotNull DataOutputStream out, String[] @NotNull [] pairs, Map<String, Integer> strings, Map<String, Integer> selections) throws IOException {
+        out.writeInt(pairs.length);
+        for (String[] pair : pairs) {
+            out.writeInt(strings.get(pair[0]));
+            out.writeInt(intern(selections, pair[1]));
+        }
+    }
+
+    /**
+     * Get the index of a string in a table, and add it to the end of the table if it is not in it yet.
+     *
+     * @param table The table, indexed by string, with a value of the index of the string.
+     * @param str   The string to get the index of.
+     * @return The index of {@code str} in the table.
+     */
+    private static int intern(@NotNull Map<String, Integer> table, String str) {
+        return table.computeIfAbsent(str, k -> table.size());
+    }
+}
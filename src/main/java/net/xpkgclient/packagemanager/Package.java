@@ -18,12 +18,11 @@ package net.xpkgclient.packagemanager;
 import lombok.Getter;
 import net.xpkgclient.versioning.InvalidVersionException;
 import net.xpkgclient.versioning.Version;
+import net.xpkgclient.versioning.VersionSelect;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
+import java.util.BitSet;
 
 /**
  * An instance of this class represents a single package.
@@ -95,13 +94,16 @@ public final class Package {
     private final PackageType packageType;
 
     /**
-     * All the (published) versions that a package has.
+     * All the (published) versions that a package has, sorted from oldest to newest.
      *
-     * @return All the (published) versions that a package has.
+     * @return All the (published) versions that a package has, sorted from oldest to newest. Original array, do not modify.
      */
     @Getter
     Version[] versions;
 
+    // The version numbers of the versions, in the same order, so that version selections can be matched against them
+    private final long[] versionNums;
+
     /**
      * @param packageId      The package identifier.
      * @param packageName    The name of the package.
@@ -121,17 +123,27 @@ public final class Package {
 
         this.versions = Arrays.stream(versionStrings).map(versionStr -> {
             try {
-                return new Version(versionStr);
+                return Version.parse(versionStr);
             } catch (InvalidVersionException e) {
                 throw new RuntimeException(e);
             }
-        }).toArray(Version[]::new);
+        }).sorted().toArray(Version[]::new);
+
+        versionNums = new long[versions.length];
+        for (int i = 0; i < versions.length; ++i)
+            versionNums[i] = versions[i].getVersionNum();
 
-        List<Version> sortedVersions = new ArrayList<>(List.of(this.versions));
-        sortedVersions.sort(Comparator.comparingInt(Version::getMajor)
-                .thenComparingInt(Version::getMinor)
-                .thenComparingInt(Version::getPatch));
-        latestVersion = sortedVersions.get(versionStrings.length - 1);
+        latestVersion = versions[versions.length - 1];
         latestVersionStr = latestVersion.toString();
     }
+
+    /**
+     * Get the versions of this package which are within a version selection, as a mask over the indices of {@link Package#getVersions()}. Masks of different selections for the same package can be combined with {@link BitSet#and(BitSet)} and {@link BitSet#andNot(BitSet)}, and the newest version in a mask is at index {@code mask.length() - 1}.
+     *
+     * @param selection The version selection to match the versions of this package against.
+     * @return A new mask where the bit at each index is set if the version at the same index is within {@code selection}.
+     */
+    public BitSet getVersionMask(@NotNull VersionSelect selection) {
+        return selection.getMask(versionNums);
+    }
 }
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.*;
+
+/**
+ * Extracts downloaded packages into staging directories, and moves them into place once they are complete.
+ */
+@UtilityClass
+public class PackageExtractor {
+
+    /**
+     * The size of the buffer each task extracts entries with.
+     */
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    // About how many bytes could be written in the time it takes to create a file, so that thousands of small entries are split between tasks too
+    private static final long FILE_COST = 16 * 1024;
+
+    /**
+     * Extract a zip file as it is read, using the local header in front of each entry rather than the central directory at the end of the file, so that entries can be extracted before the whole file has been downloaded. The checksum of each entry is checked as it is extracted. Not every zip file can be read this way, such as zip files with stored entries whose sizes are only written after their data, or with data in front of the first entry.
+     *
+     * @param in  The stream of the zip file, which is closed once the last entry has been extracted.
+     * @param dir The directory to extract the zip file to.
+     * @return True if at least one entry was extracted. If false, or if an {@link IOException} is thrown, some entries may have been written, and the zip file should be extracted with {@link PackageExtractor#extract(File, Path)} instead once it is complete.
+     * @throws IOException       Exception thrown if the stream could not be read, is not a zip file that can be read as a stream, or a file could not be written.
+     * @throws SecurityException Exception thrown if an entry would be written outside of {@code dir}.
+     */
+    public boolean extractStream(@NotNull InputStream in, @NotNull Path dir) throws IOException {
+        boolean extracted = false;
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(in, 64 * 1024))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                Path target = resolveEntry(dir, entry.getName());
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    Files.copy(zip, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                extracted = true;
+            }
+        }
+        return extracted;
+    }
+
+    /**
+     * Extract a complete zip file, using its central directory, with an entry being extracted on each processor at once.
+     *
+     * @param zipFile The zip file to extract.
+     * @param dir     The directory to extract the zip file to.
+     * @throws IOException       Exception thrown if the zip file could not be read, the checksum or size of an entry does not match its data, or a file could not be written.
+     * @throws SecurityException Exception thrown if an entry would be written outside of {@code dir}, in which case nothing is written.
+     * @see PackageExtractor#extract(File, Path, ExecutorService, int)
+     */
+    public void extract(@NotNull File zipFile, @NotNull Path dir) throws IOException {
+        extract(zipFile, dir, TaskExecutors.CPU, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Extract a complete zip file, using its central directory. The entries are split into groups of about the same total compressed size, largest entries first, and each group is extracted by a separate task, so that one large entry does not leave the other tasks waiting. Each entry is written to a file which is first set to the size of the entry, and its checksum is checked once it has been written. Must not be called from a task on {@code executor}, since it waits for the tasks it submits to it.
+     *
+     * @param zipFile     The zip file to extract.
+     * @param dir         The directory to extract the zip file to.
+     * @param executor    The executor to extract the entries on.
+     * @param parallelism The maximum number of entries to extract at once.
+     * @throws IOException       Exception thrown if the zip file could not be read, the checksum or size of an entry does not match its data, or a file could not be written.
+     * @throws SecurityException Exception thrown if an entry would be written outside of {@code dir}, in which case nothing is written.
+     */
+    public void extract(@NotNull File zipFile, @NotNull Path dir, @NotNull ExecutorService executor, int parallelism) throws IOException {
+        try (ZipFile zip = new ZipFile(zipFile)) {
+
+            // Every entry is checked before anything is written, and directories are created here so that tasks never race to create the same parent
+            Map<ZipEntry, Path> targets = new LinkedHashMap<>();
+            for (ZipEntry entry : Collections.list(zip.entries()))
+                targets.put(entry, resolveEntry(dir, entry.getName()));
+            Files.createDirectories(dir);
+            List<ZipEntry> files = new ArrayList<>();
+            for (Map.Entry<ZipEntry, Path> target : targets.entrySet()) {
+                if (target.getKey().isDirectory()) {
+                    Files.createDirectories(target.getValue());
+                } else {
+                    Files.createDirectories(target.getValue().getParent());
+                    files.add(target.getKey());
+                }
+            }
+
+            // The zip file can only be closed once every task has stopped, so when one task fails, the others stop before their next entry, and are waited for
+            AtomicBoolean failed = new AtomicBoolean();
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            for (List<ZipEntry> group : partition(files, parallelism)) {
+                tasks.add(TaskExecutors.submit(() -> {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    for (ZipEntry entry : group) {
+                        if (failed.get())
+                            break;
+                        try {
+                            extractEntry(zip, entry, targets.get(entry), buffer);
+                        } catch (Throwable e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                    }
+                    return null;
+                }, executor));
+            }
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).handle((v, e) -> null).join();
+
+            for (CompletableFuture<Void> task : tasks) {
+                Throwable e = task.handle((v, taskError) -> taskError).join();
+                if (e instanceof IOException ioException)
+                    throw ioException;
+                if (e instanceof RuntimeException runtimeException)
+                    throw runtimeException;
+                if (e instanceof Error error)
+                    throw error;
+                if (e != null)
+                    throw new IOException("Could not extract %s".formatted(zipFile), e);
+            }
+        }
+    }
+
+    /**
+     * Split entries into groups of about the same total cost to extract, by adding each entry, largest first, to the group with the lowest total so far. The cost of an entry is its compressed size, and a fixed cost for creating its file.
+     *
+     * @param entries     The entries to split.
+     * @param groupCount The maximum number of groups.
+     * @return The groups, none of which are empty.
+     */
+    List<List<ZipEntry>> partition(@NotNull List<ZipEntry> entries, int groupCount) {
+        List<ZipEntry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingLong(PackageExtractor::cost).reversed());
+
+        int count = Math.max(1, Math.min(groupCount, sorted.size()));
+        List<List<ZipEntry>> groups = new ArrayList<>(count);
+        long[] totals = new long[count];
+        for (int i = 0; i < count; ++i)
+            groups.add(new ArrayList<>());
+
+        for (ZipEntry entry : sorted) {
+            int smallest = 0;
+            for (int i = 1; i < count; ++i) {
+                if (totals[i] < totals[smallest])
+                    smallest = i;
+            }
+            groups.get(smallest).add(entry);
+            totals[smallest] += cost(entry);
+        }
+        groups.removeIf(List::isEmpty);
+        return groups;
+    }
+
+    /**
+     * Get the cost of extracting an entry, used to split entries into groups.
+     *
+     * @param entry The entry.
+     * @return The compressed size of the entry, and a fixed cost for creating its file.
+     */
+    private long cost(@NotNull ZipEntry entry) {
+        return Math.max(entry.getCompressedSize(), 0) + FILE_COST;
+    }
+
+    /**
+     * Extract a single entry of a zip file, and check its size and checksum.
+     *
+     * @param zip    The zip file.
+     * @param entry  The entry to extract.
+     * @param target The file to extract the entry to.
+     * @param buffer The buffer to copy the entry with.
+     * @throws IOException Exception thrown if the entry could not be read, its size or checksum does not match its data, or the file could not be written.
+     */
+    private void extractEntry(@NotNull ZipFile zip, @NotNull ZipEntry entry, @NotNull Path target, byte @NotNull [] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = entry.getSize();
+        long written = 0;
+        try (InputStream in = zip.getInputStream(entry); RandomAccessFile out = new RandomAccessFile(target.toFile(), "rw")) {
+
+            // Setting the length first lets the file system find space for the whole file at once, rather than growing it with each write
+            out.setLength(Math.max(size, 0));
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                if (Thread.interrupted())
+                    throw new InterruptedIOException("Extraction of %s cancelled".formatted(entry.getName()));
+
+                crc.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                written += read;
+            }
+            if (size < 0)
+                out.setLength(written);
+        }
+
+        if (size >= 0 && written != size)
+            throw new ZipException("The zip entry %s has %d bytes, but should have %d".formatted(entry.getName(), written, size));
+        if (entry.getCrc() >= 0 && crc.getValue() != entry.getCrc())
+            throw new ZipException("The checksum of the zip entry %s does not match its data".formatted(entry.getName()));
+        if (entry.getLastModifiedTime() != null)
+            Files.setLastModifiedTime(target, entry.getLastModifiedTime());
+    }
+
+    /**
+     * Get the location to extract an entry of a zip file to.
+     *
+     * @param dir  The directory the zip file is being extracted to.
+     * @param name The name of the entry.
+     * @return The location to extract the entry to.
+     * @throws SecurityException Exception thrown if the entry would be written outside of {@code dir}, such as if its name is absolute, or has {@code ..} in it.
+     */
+    public Path resolveEntry(@NotNull Path dir, String name) {
+        Path normalizedDir = dir.normalize();
+        Path target = normalizedDir.resolve(name).normalize();
+        if (!target.startsWith(normalizedDir))
+            throw new SecurityException("The zip entry %s is outside of the directory it is extracted to".formatted(name));
+        return target;
+    }
+
+    /**
+     * Move a completely extracted package into place, replacing anything already there.
+     *
+     * @param stagingDir The directory the package was extracted to.
+     * @param dest       The location the package should be moved to, which must be on the same file system as {@code stagingDir}.
+     * @throws IOException Exception thrown if the existing package could not be removed, or the new package could not be moved.
+     */
+    public void promote(@NotNull Path stagingDir, @NotNull Path dest) throws IOException {
+        deleteRecursively(dest);
+        Files.move(stagingDir, dest, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Delete a file, or a directory and everything in it. Nothing happens if it does not exist.
+     *
+     * @param path The file or directory to delete.
+     * @throws IOException Exception thrown if something could not be deleted.
+     */
+    public void deleteRecursively(@NotNull Path path) throws IOException {
+        if (!Files.exists(path))
+            return;
+
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path child : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(child);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * This class parses the package index returned from the registry. The index is read one package at a time, and each package is constructed on an executor as soon as it has been read, so only a few packages are ever held as JSON at once, rather than the whole index.
+ */
+@UtilityClass
+public class PackageIndexParser {
+
+    /**
+     * The maximum number of packages which have been read but not constructed yet. Reading waits once this many are waiting to be constructed, since the index is read faster than packages are constructed, and the JSON of every package in the index would be held otherwise.
+     */
+    public static final int MAX_PENDING_PACKAGES = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Parse all the packages in a full package index.
+     *
+     * @param reader   The reader to read the index from, which is not closed.
+     * @param executor The executor to construct the packages on.
+     * @return The packages in the index, in the same order as the index.
+     * @throws JSONException Exception thrown if the index is not valid JSON, if the index is not a full index, or if a package in the index is not valid.
+     */
+    public List<Package> parse(@NotNull Reader reader, @NotNull Executor executor) throws JSONException {
+        PackageIndex index = parseIndex(reader, executor);
+        if (index.delta())
+            throw new JSONException("Expected a full package index, but got a delta");
+        return index.packages();
+    }
+
+    /**
+     * Parse a package index, which is either a full index with the packages in {@code data}, or a delta from an earlier index with the added or changed packages in {@code updated} and the ids of the removed packages in {@code removed}.
+     *
+     * @param reader   The reader to read the index from, which is not closed.
+     * @param executor The executor to construct the packages on.
+     * @return The parsed index.
+     * @throws JSONException Exception thrown if the index is not valid JSON, if the index has no package data, or if a package in the index is not valid.
+     */
+    public PackageIndex parseIndex(@NotNull Reader reader, @NotNull Executor executor) throws JSONException {
+        JSONTokener tokener = new JSONTokener(reader);
+        List<CompletableFuture<Package>> packages = null;
+        List<String> removed = new ArrayList<>();
+        String syncToken = null;
+        boolean delta = false;
+
+        if (tokener.nextClean() != '{')
+            throw tokener.syntaxError("Package index must begin with '{'");
+
+        char c = tokener.nextClean();
+        if (c != '}') {
+            tokener.back();
+            while (true) {
+                Object key = tokener.nextValue();
+                if (!(key instanceof String))
+                    throw tokener.syntaxError("Expected a string key");
+                if (tokener.nextClean() != ':')
+                    throw tokener.syntaxError("Expected ':' after a key");
+
+                // Only the package arrays are read element by element, anything else is small and can just be read whole
+                switch ((String) key) {
+                    case "data" -> packages = parsePackageArray(tokener, executor);
+                    case "updated" -> {
+                        packages = parsePackageArray(tokener, executor);
+                        delta = true;
+                    }
+                    case "removed" -> {
+                        if (!(tokener.nextValue() instanceof JSONArray removedArr))
+                            throw tokener.syntaxError("Removed packages must be an array");
+                        for (int i = 0; i < removedArr.length(); ++i)
+                            removed.add(removedArr.getString(i));
+                        delta = true;
+                    }
+                    case "syncToken" -> {
+                        Object value = tokener.nextValue();
+                        syncToken = value == JSONObject.NULL ? null : value.toString();
+                    }
+                    default -> tokener.nextValue();
+                }
+
+                c = tokener.nextClean();
+                if (c == '}')
+                    break;
+                if (c != ',')
+                    throw tokener.syntaxError("Expected ',' or '}'");
+            }
+        }
+
+        if (packages == null && !delta)
+            throw new JSONException("Package index does not contain any package data");
+
+        List<Package> result = new ArrayList<>(packages == null ? 0 : packages.size());
+        if (packages != null) {
+            try {
+                for (CompletableFuture<Package> pkg : packages)
+                    result.add(pkg.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof JSONException jsonException)
+                    throw jsonException;
+                throw e;
+            }
+        }
+        return new PackageIndex(result, removed, syncToken, delta);
+    }
+
+    /**
+     * Read the array of packages, and start constructing each package as soon as it has been read. Reading waits while {@link PackageIndexParser#MAX_PENDING_PACKAGES} packages are waiting to be constructed.
+     *
+     * @param tokener  The tokener positioned at the start of the array.
+     * @param executor The executor to construct the packages on.
+     * @return The packages which are being constructed, in the same order as the array.
+     * @throws JSONException Exception thrown if the array is not valid JSON.
+     */
+    private List<CompletableFuture<Package>> parsePackageArray(JSONTokener tokener, Executor executor) throws JSONException {
+        if (tokener.nextClean() != '[')
+            throw tokener.syntaxError("Package data must be an array");
+
+        List<CompletableFuture<Package>> packages = new ArrayList<>();
+        Semaphore pending = new Semaphore(MAX_PENDING_PACKAGES);
+        if (tokener.nextClean() == ']')
+            return packages;
+        tokener.back();
+
+        while (true) {
+            Object value = tokener.nextValue();
+            if (!(value instanceof JSONObject pkgObj))
+                throw tokener.syntaxError("Expected a package object");
+
+            pending.acquireUninterruptibly();
+            CompletableFuture<Package> pkg;
+            try {
+                pkg = CompletableFuture.supplyAsync(() -> toPackage(pkgObj), executor);
+            } catch (RuntimeException e) {
+                pending.release();
+                throw e;
+            }
+            pkg.whenComplete((constructed, e) -> pending.release());
+            packages.add(pkg);
+
+            char c = tokener.nextClean();
+            if (c == ']')
+                return packages;
+            if (c != ',')
+                throw tokener.syntaxError("Expected ',' or ']'");
+        }
+    }
+
+    /**
+     * Construct a package from its JSON representation in the index.
+     *
+     * @param pkg The JSON object of a single package.
+     * @return The package that {@code pkg} represents.
+     * @throws JSONException Exception thrown if a field is missing or has the wrong type, or if the package type is unknown.
+     */
+    Package toPackage(@NotNull JSONObject pkg) throws JSONException {
+        String packageId = pkg.getString("packageId");
+        String packageName = pkg.getString("packageName");
+        String packageTypeStr = pkg.getString("packageType");
+        String authorName = pkg.getString("authorName");
+        String authorId = pkg.getString("authorId");
+        String description = pkg.getString("description");
+
+        JSONArray vJsonArr = pkg.getJSONArray("versions");
+        String[] versions = new String[vJsonArr.length()];
+        for (int i = 0; i < vJsonArr.length(); ++i)
+            versions[i] = vJsonArr.getString(i);
+
+        PackageType packageType = switch (packageTypeStr) {
+            case "aircraft" -> PackageType.AIRCRAFT;
+            case "executable" -> PackageType.EXECUTABLE;
+            case "other" -> PackageType.OTHER;
+            default -> throw new JSONException("Unexpected package type: \"%s\"".formatted(packageTypeStr));
+        };
+
+        return new Package(packageId, packageName, packageType, versions, description, authorName, authorId);
+    }
+
+    /**
+     * A parsed package index.
+     *
+     * @param packages  All the packages if this is a full index, or the added and changed packages if this is a delta, in the same order as the index.
+     * @param removed   The ids of the packages which have been removed, which is always empty if this is a full index.
+     * @param syncToken The token to send to the registry to get the changes since this index, or null if the registry does not support deltas.
+     * @param delta     True if this index only contains the changes since an earlier index.
+     */
+    public record PackageIndex(List<Package> packages, List<String> removed, String syncToken, boolean delta) {
+    }
+}
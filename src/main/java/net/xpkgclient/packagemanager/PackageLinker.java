@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates copies of extracted packages by hard linking their files, so that a package which has already been extracted once can be installed again without reading or writing its contents. Files which can not be linked, such as if the copy is on another file system, or the file system does not support hard links, are copied instead. Linked files share their contents with the original, so changing a linked file in place changes every copy of it.
+ */
+@UtilityClass
+public class PackageLinker {
+
+    private final AtomicLong totalLinkedFiles = new AtomicLong();
+    private final AtomicLong totalCopiedFiles = new AtomicLong();
+    private final AtomicLong totalLinkedBytes = new AtomicLong();
+    private final AtomicLong totalCopiedBytes = new AtomicLong();
+
+    /**
+     * Create a copy of a directory, linking each file in it if possible, and copying it otherwise. Directories are always created, never linked.
+     *
+     * @param source The directory to copy.
+     * @param dest   The directory to create the copy in, which is created if it does not exist. Files already in it are replaced.
+     * @return The number of files and bytes which were linked and copied.
+     * @throws IOException Exception thrown if a directory could not be created, or a file could neither be linked nor copied.
+     */
+    public LinkStats link(@NotNull Path source, @NotNull Path dest) throws IOException {
+        long[] counts = new long[4];
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(dest.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path target = dest.resolve(source.relativize(file).toString());
+                Files.deleteIfExists(target);
+                if (linkFile(file, target)) {
+                    ++counts[0];
+                    counts[2] += attrs.size();
+                } else {
+                    Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+                    ++counts[1];
+                    counts[3] += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        totalLinkedFiles.addAndGet(counts[0]);
+        totalCopiedFiles.addAndGet(counts[1]);
+        totalLinkedBytes.addAndGet(counts[2]);
+        totalCopiedBytes.addAndGet(counts[3]);
+        return new LinkStats(counts[0], counts[1], counts[2], counts[3]);
+    }
+
+    /**
+     * Get the number of files and bytes linked and copied by every call to {@link PackageLinker#link(Path, Path)} so far.
+     *
+     * @return The total number of files and bytes which were linked and copied since the program started, or since the totals were last reset.
+     */
+    public LinkStats getTotals() {
+        return new LinkStats(totalLinkedFiles.get(), totalCopiedFiles.get(), totalLinkedBytes.get(), totalCopiedBytes.get());
+    }
+
+    /**
+     * Reset the totals returned by {@link PackageLinker#getTotals()}.
+     */
+    public void resetTotals() {
+        totalLinkedFiles.set(0);
+        totalCopiedFiles.set(0);
+        totalLinkedBytes.set(0);
+        totalCopiedBytes.set(0);
+    }
+
+    /**
+     * Try to hard link a file.
+     *
+     * @param file   The existing file.
+     * @param target The new link to create.
+     * @return True if the link was created, or false if the file has to be copied instead.
+     */
+    private boolean linkFile(@NotNull Path file, @NotNull Path target) {
+        try {
+            Files.createLink(target, file);
+            return true;
+        } catch (UnsupportedOperationException | IOException e) {
+
+            // Each file is tried on its own, since some failures, such as a file having too many links, only apply to that file
+            return false;
+        }
+    }
+
+    /**
+     * The number of files and bytes which were linked and copied.
+     *
+     * @param linkedFiles The number of files which were hard linked.
+     * @param copiedFiles The number of files which had to be copied.
+     * @param linkedBytes The total size of the files which were hard linked.
+     * @param copiedBytes The total size of the files which had to be copied.
+     */
+    public record LinkStats(long linkedFiles, long copiedFiles, long linkedBytes, long copiedBytes) {
+
+        @Override
+        public String toString() {
+            return "%d files linked (%d bytes), %d files copied (%d bytes)".formatted(linkedFiles, linkedBytes, copiedFiles, copiedBytes);
+        }
+    }
+}
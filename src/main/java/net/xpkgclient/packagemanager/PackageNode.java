@@ -84,7 +84,7 @@ public final class PackageNode implements Cloneable {
     @SneakyThrows(CloneNotSupportedException.class)
     protected PackageNode clone() {
         PackageNode clone = (PackageNode) super.clone();
-        clone.version = version.clone();
+        clone.version = version;
         clone.packageId = packageId;
         return clone;
     }
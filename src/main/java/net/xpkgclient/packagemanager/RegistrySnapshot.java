@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * An immutable view of all the packages on the registry at one point in time, indexed by package id, author and package type. A new snapshot is created each time the packages are retrieved, so a snapshot can be read from any thread without locking.
+ */
+public final class RegistrySnapshot {
+
+    /**
+     * A snapshot with no packages, used before any packages have been retrieved.
+     */
+    public static final RegistrySnapshot EMPTY = new RegistrySnapshot(List.of());
+
+    /**
+     * All the packages in this snapshot, in the order that the registry returned them.
+     *
+     * @return All the packages in this snapshot. Unmodifiable.
+     */
+    @Getter
+    private final List<Package> packages;
+
+    /**
+     * The entity tag that the registry sent with the packages in this snapshot, used to check if the packages have changed.
+     *
+     * @return The entity tag of this snapshot, or null if the registry did not send one.
+     */
+    @Getter
+    private final String etag;
+
+    /**
+     * The last modified date that the registry sent with the packages in this snapshot, used to check if the packages have changed.
+     *
+     * @return The last modified date of this snapshot as an HTTP date, or null if the registry did not send one.
+     */
+    @Getter
+    private final String lastModified;
+
+    /**
+     * The token that the registry sent with the packages in this snapshot, used to request only the changes since this snapshot.
+     *
+     * @return The sync token of this snapshot, or null if the registry did not send one.
+     */
+    @Getter
+    private final String syncToken;
+
+    private final Map<String, Package> packagesById;
+    private final Map<String, List<Package>> packagesByAuthor;
+    private final Map<PackageType, List<Package>> packagesByType;
+
+    /**
+     * Create a new snapshot of a list of packages, which can not be revalidated.
+     *
+     * @param packages The packages on the registry.
+     */
+    public RegistrySnapshot(@NotNull List<Package> packages) {
+        this(packages, null, null, null);
+    }
+
+    /**
+     * Create a new snapshot of a list of packages.
+     *
+     * @param packages     The packages on the registry.
+     * @param etag         The entity tag that the registry sent with the packages, or null if it did not send one.
+     * @param lastModified The last modified date that the registry sent with the packages, or null if it did not send one.
+     * @param syncToken    The sync token that the registry sent with the packages, or null if it did not send one.
+     */
+    public RegistrySnapshot(@NotNull List<Package> packages, String etag, String lastModified, String syncToken) {
+        this.packages = List.copyOf(packages);
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.syncToken = syncToken;
+
+        Map<String, Package> packagesById = new HashMap<>(Math.max(16, (int) (packages.size() / 0.75f) + 1));
+        Map<String, List<Package>> packagesByAuthor = new HashMap<>();
+        Map<PackageType, List<Package>> packagesByType = new EnumMap<>(PackageType.class);
+        for (Package pkg : this.packages) {
+
+            // Keep the first package if the registry returns the same id twice, which is what a linear search would find
+            packagesById.putIfAbsent(pkg.getPackageId(), pkg);
+            packagesByAuthor.computeIfAbsent(pkg.getAuthorId(), k -> new ArrayList<>()).add(pkg);
+            packagesByType.computeIfAbsent(pkg.getPackageType(), k -> new ArrayList<>()).add(pkg);
+        }
+
+        packagesByAuthor.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        packagesByType.replaceAll((k, v) -> Collections.unmodifiableList(v));
+
+        this.packagesById = Collections.unmodifiableMap(packagesById);
+        this.packagesByAuthor = Collections.unmodifiableMap(packagesByAuthor);
+        this.packagesByType = Collections.unmodifiableMap(packagesByType);
+    }
+
+    /**
+     * Get a package by its id.
+     *
+     * @param packageId The id of the package to get.
+     * @return The package with the id, or null if there is no such package in this snapshot.
+     */
+    public Package getPackage(String packageId) {
+        return packagesById.get(packageId);
+    }
+
+    /**
+     * Get all the packages published by an author.
+     *
+     * @param authorId The id of the author.
+     * @return The packages published by the author, in the order that the registry returned them. Unmodifiable.
+     */
+    public List<Package> getPackagesByAuthor(String authorId) {
+        return packagesByAuthor.getOrDefault(authorId, List.of());
+    }
+
+    /**
+     * Get all the packages of a type.
+     *
+     * @param packageType The type of the packages to get.
+     * @return The packages of the type, in the order that the registry returned them. Unmodifiable.
+     */
+    public List<Package> getPackagesByType(@NotNull PackageType packageType) {
+        return packagesByType.getOrDefault(packageType, List.of());
+    }
+
+    /**
+     * Create a new snapshot with changes from the registry applied to this snapshot. Changed packages keep their position, added packages are placed at the end, and removed packages are left out. This snapshot is not modified.
+     *
+     * @param updated   The packages which have been added or changed since this snapshot.
+     * @param removed   The ids of the packages which have been removed since this snapshot.
+     * @param syncToken The sync token that the registry sent with the changes.
+     * @return The new snapshot, without any validators, since they belong to the full index.
+     */
+    public RegistrySnapshot applyDelta(@NotNull List<Package> updated, @NotNull Collection<String> removed, String syncToken) {
+        Map<String, Package> updatedById = new HashMap<>(Math.max(16, (int) (updated.size() / 0.75f) + 1));
+        for (Package pkg : updated)
+            updatedById.put(pkg.getPackageId(), pkg);
+        Set<String> removedIds = new HashSet<>(removed);
+
+        List<Package> newPackages = new ArrayList<>(packages.size() + updated.size());
+        for (Package pkg : packages) {
+            String packageId = pkg.getPackageId();
+            if (removedIds.contains(packageId))
+                continue;
+
+            Package updatedPkg = updatedById.remove(packageId);
+            newPackages.add(updatedPkg == null ? pkg : updatedPkg);
+        }
+
+        // Whatever is left over did not exist before
+        for (Package pkg : updated) {
+            if (updatedById.remove(pkg.getPackageId()) != null && !removedIds.contains(pkg.getPackageId()))
+                newPackages.add(pkg);
+        }
+
+        return new RegistrySnapshot(newPackages, null, null, syncToken);
+    }
+
+    /**
+     * Get the number of packages in this snapshot.
+     *
+     * @return The number of packages in this snapshot.
+     */
+    public int size() {
+        return packages.size();
+    }
+}
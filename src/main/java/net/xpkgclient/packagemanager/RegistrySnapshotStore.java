@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.experimental.UtilityClass;
+import net.xpkgclient.Configuration;
+import net.xpkgclient.versioning.Version;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class stores a registry snapshot on disk in a compact binary format, so that the packages can be shown as soon as the client starts, before the registry has responded. The snapshot records the registry it was retrieved from, and is only loaded while that registry is configured.
+ */
+@UtilityClass
+public class RegistrySnapshotStore {
+
+    // "XPKI"
+    private static final int MAGIC = 0x58504b49;
+    private static final int FORMAT_VERSION = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Get the file that the snapshot is stored in for the configured X-Plane installation.
+     *
+     * @return The file that the snapshot is stored in, or null if there is no X-Plane installation configured.
+     */
+    public File getSnapshotFile() {
+        File xpPath = Configuration.getXpPath();
+        if (xpPath == null || !Configuration.hasConfiguredXPInstallation())
+            return null;
+        return Path.of(xpPath.getAbsolutePath(), "xpkg", "cache", "index.bin").toFile();
+    }
+
+    /**
+     * Read a snapshot of the configured registry from a file.
+     *
+     * @param file The file to read the snapshot from.
+     * @return The snapshot read from the file.
+     * @throws IOException Exception thrown if the file could not be read, if it is not a valid snapshot written by this version of the client, or if it is a snapshot of another registry.
+     */
+    public RegistrySnapshot load(@NotNull File file) throws IOException {
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), file.length());
+        try (DataInputStream in = new DataInputStream(counter)) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+                throw new IOException("Not a registry snapshot: " + file);
+
+            // The sync token and validators are only valid for the registry which sent them
+            String registryUrl = readString(in, counter);
+            if (!Configuration.getRegistryUrl().equals(registryUrl))
+                throw new IOException("Registry snapshot is of another registry: " + registryUrl);
+
+            String etag = readString(in, counter);
+            String lastModified = readString(in, counter);
+            String syncToken = readString(in, counter);
+
+            int packageCount = readCount(in, counter);
+            List<Package> packages = new ArrayList<>(packageCount);
+            PackageType[] packageTypes = PackageType.values();
+            for (int i = 0; i < packageCount; ++i) {
+                String packageId = readString(in, counter);
+                String packageName = readString(in, counter);
+                int packageType = in.readUnsignedByte();
+                String authorName = readString(in, counter);
+                String authorId = readString(in, counter);
+                String description = readString(in, counter);
+
+                String[] versions = new String[readCount(in, counter)];
+                for (int j = 0; j < versions.length; ++j)
+                    versions[j] = readString(in, counter);
+
+                if (packageType >= packageTypes.length)
+                    throw new IOException("Unknown package type in registry snapshot: " + packageType);
+
+                try {
+                    packages.add(new Package(packageId, packageName, packageTypes[packageType], versions, description, authorName, authorId));
+                } catch (RuntimeException e) {
+                    throw new IOException("Invalid package in registry snapshot: " + packageId, e);
+                }
+            }
+            return new RegistrySnapshot(packages, etag, lastModified, syncToken);
+        }
+    }
+
+    /**
+     * Write a snapshot of the configured registry to a file. The snapshot is written to a temporary file first, so that a partially written snapshot is never read.
+     *
+     * @param snapshot The snapshot to write.
+     * @param file     The file to write the snapshot to.
+     * @throws IOException Exception thrown if the snapshot could not be written.
+     */
+    public void save(@NotNull RegistrySnapshot snapshot, @NotNull File file) throws IOException {
+        Path dir = file.getAbsoluteFile().getParentFile().toPath();
+        Files.createDirectories(dir);
+        Path tmpFile = Files.createTempFile(dir, "index-", ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile.toFile()), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, Configuration.getRegistryUrl());
+                writeString(out, snapshot.getEtag());
+                writeString(out, snapshot.getLastModified());
+                writeString(out, snapshot.getSyncToken());
+
+                List<Package> packages = snapshot.getPackages();
+                out.writeInt(packages.size());
+                for (Package pkg : packages) {
+                    writeString(out, pkg.getPackageId());
+                    writeString(out, pkg.getPackageName());
+                    out.writeByte(pkg.getPackageType().ordinal());
+                    writeString(out, pkg.getAuthorName());
+                    writeString(out, pkg.getAuthorId());
+                    writeString(out, pkg.getDescription());
+
+                    Version[] versions = pkg.getVersions();
+                    out.writeInt(versions.length);
+                    for (Version version : versions)
+                        writeString(out, version.toString());
+                }
+            }
+            Files.move(tmpFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Write a string which may be null. Unlike {@link DataOutputStream#writeUTF(String)}, the string may be longer than 65535 bytes.
+     *
+     * @param out The stream to write to.
+     * @param str The string to write, or null.
+     * @throws IOException Exception thrown if the string could not be written.
+     */
+    private void writeString(@NotNull DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link RegistrySnapshotStore#writeString(DataOutputStream, String)}.
+     *
+     * @param in      The stream to read from.
+     * @param counter The stream under {@code in}, which counts the bytes left in the file.
+     * @return The string read, or null if a null string was written.
+     * @throws IOException Exception thrown if the string could not be read, or its length is not valid.
+     */
+    private String readString(@NotNull DataInputStream in, @NotNull CountingInputStream counter) throws IOException {
+        int length = in.readInt();
+        if (length == -1)
+            return null;
+
+        // A damaged file could have any length, which must not be allocated before it is known to be there
+        if (length < 0 || length > counter.getRemaining())
+            throw new IOException("Invalid string length in registry snapshot: " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the number of items which follow. Each item takes at least one byte, so a count larger than the rest of the file is not valid.
+     *
+     * @param in      The stream to read from.
+     * @param counter The stream under {@code in}, which counts the bytes left in the file.
+     * @return The number of items.
+     * @throws IOException Exception thrown if the count could not be read, or is not valid.
+     */
+    private int readCount(@NotNull DataInputStream in, @NotNull CountingInputStream counter) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > counter.getRemaining())
+            throw new IOException("Invalid count in registry snapshot: " + count);
+        return count;
+    }
+
+    /**
+     * A stream which counts the bytes read from it, so that lengths read from a file can be checked against what is left of it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final long length;
+        private long count;
+
+        /**
+         * Create a new stream.
+         *
+         * @param in     The stream to read from.
+         * @param length The total number of bytes in the stream.
+         */
+        private CountingInputStream(InputStream in, long length) {
+            super(in);
+            this.length = length;
+        }
+
+        /**
+         * Get the number of bytes which have not been read yet.
+         *
+         * @return The number of bytes left in the stream.
+         */
+        private long getRemaining() {
+            return length - count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                ++count;
+            return b;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0)
+                count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
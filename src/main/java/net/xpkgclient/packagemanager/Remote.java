@@ -15,34 +15,39 @@
 
 package net.xpkgclient.packagemanager;
 
-import javafx.application.Platform;
-import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
-import net.lingala.zip4j.ZipFile;
 import net.xpkgclient.Configuration;
 import net.xpkgclient.versioning.Version;
-import org.apache.commons.codec.binary.Hex;
 import org.jetbrains.annotations.NotNull;
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.*;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
 
 /**
  * This class handles getting packages from the remote server.
@@ -50,61 +55,277 @@ import java.util.concurrent.ExecutionException;
 @UtilityClass
 public class Remote {
 
+    private final AtomicReference<RegistrySnapshot> snapshot = new AtomicReference<>(RegistrySnapshot.EMPTY);
+
+    // The bundle of all version data, if one has been retrieved, with the file it is mapped from
+    private final AtomicReference<LoadedBundle> metadataBundle = new AtomicReference<>();
+
+    // The registries which have rejected a batch request, so that it is not tried again
+    private final Set<String> batchUnsupportedRegistries = ConcurrentHashMap.newKeySet();
+
     /**
-     * All the packages retrieved from the server. May not be up-to-date.
+     * Get the latest snapshot of the packages retrieved from the server. Replaced as a whole when the packages are retrieved again, so it may not be up-to-date, but it is never partially updated.
      *
-     * @returns The list of the packages retrieved from the server. Original list, do not modify.
+     * @return The latest snapshot of the packages retrieved from the server, or {@link RegistrySnapshot#EMPTY} if the packages have not been retrieved yet.
      */
-    @Getter
-    private List<Package> packages = new ArrayList<>();
+    public RegistrySnapshot getSnapshot() {
+        return snapshot.get();
+    }
 
     /**
-     * Get all packages from the server.
+     * Get all the packages retrieved from the server. May not be up-to-date.
      *
-     * @param cb The callback to execute after downloading all packages from the server. Run within {@link Platform#runLater(Runnable)} so that JavaFX calls can be made from within the new thread.
+     * @return The list of the packages retrieved from the server. Unmodifiable.
      */
-    @SneakyThrows(MalformedURLException.class)
-    public synchronized void getAllPackages(PackageRetrieveCallback cb) {
-        ArrayList<Package> packages = new ArrayList<>();
+    public List<Package> getPackages() {
+        return snapshot.get().getPackages();
+    }
 
-        final URL url = new URL("http://localhost:5020/packages/");
-        JSONObject json;
+    /**
+     * Load the snapshot saved by the last successful retrieval of the packages, if the packages have not been retrieved yet. This lets the packages be shown immediately, while they are retrieved again in the background.
+     *
+     * @return True if the saved snapshot was loaded, or false if there is no saved snapshot, if it could not be read, or if the packages have already been retrieved.
+     */
+    public boolean loadSavedSnapshot() {
+        File snapshotFile = RegistrySnapshotStore.getSnapshotFile();
+        if (snapshotFile == null || !snapshotFile.exists())
+            return false;
+
+        RegistrySnapshot savedSnapshot;
         try {
-            json = readJsonFromUrl(url);
-
-            JSONArray packagesArray = (JSONArray) json.get("data");
-            for (Object pkgObj : packagesArray) {
-                JSONObject pkg = (JSONObject) pkgObj;
-                String packageId = pkg.getString("packageId");
-                String packageName = pkg.getString("packageName");
-                String packageTypeStr = pkg.getString("packageType");
-                String authorName = pkg.getString("authorName");
-                String authorId = pkg.getString("authorId");
-                String description = pkg.getString("description");
-
-                JSONArray vJsonArr = pkg.getJSONArray("versions");
-                String[] versions = new String[vJsonArr.length()];
-                for (int i = 0; i < vJsonArr.length(); ++i)
-                    versions[i] = vJsonArr.getString(i);
-
-                PackageType packageType = switch (packageTypeStr) {
-                    case "aircraft" -> PackageType.AIRCRAFT;
-                    case "executable" -> PackageType.EXECUTABLE;
-                    case "other" -> PackageType.OTHER;
-                    default ->
-                            throw new RuntimeException("Unexpected package type: \"%s\"".formatted(packageTypeStr));
-                };
-
-                packages.add(new Package(packageId, packageName, packageType, versions, description, authorName, authorId));
-            }
+            savedSnapshot = RegistrySnapshotStore.load(snapshotFile);
+        } catch (IOException e) {
+            return false;
+        }
 
-            Remote.packages = packages;
-            Platform.runLater(() -> cb.execute(packages));
-        } catch (Throwable e) {
-            throw new RuntimeException("Could not get all packages from %s".formatted(url), e);
+        return snapshot.compareAndSet(RegistrySnapshot.EMPTY, savedSnapshot);
+    }
+
+    /**
+     * Fetch all packages from the server. If the current snapshot has a sync token, only the changes since the snapshot are requested, and the full index is only requested if the server no longer accepts the token. Otherwise, if the current snapshot has validators, the request is conditional, and if the server reports that nothing has changed, the current packages are kept without transferring the index again.
+     *
+     * @return A future which completes with the list of all published and approved packages on the server, and updates {@link Remote#getPackages()} before it completes.
+     */
+    public CompletableFuture<List<Package>> fetchAllPackages() {
+        URI uri = registryUri("/packages/");
+        RegistrySnapshot currentSnapshot = snapshot.get();
+
+        CompletableFuture<RegistrySnapshot> newSnapshot;
+        if (currentSnapshot.getSyncToken() == null)
+            newSnapshot = fetchFullIndex(uri, currentSnapshot);
+        else
+            newSnapshot = fetchIndexDelta(uri, currentSnapshot).thenCompose(deltaSnapshot -> deltaSnapshot == null ? fetchFullIndex(uri, currentSnapshot) : CompletableFuture.completedFuture(deltaSnapshot));
+
+        return newSnapshot
+                .thenApply(updatedSnapshot -> {
+                    if (updatedSnapshot != currentSnapshot) {
+                        snapshot.set(updatedSnapshot);
+                        saveSnapshot(updatedSnapshot);
+                    }
+                    return updatedSnapshot.getPackages();
+                })
+                .exceptionally(e -> {
+                    throw new RuntimeException("Could not get all packages from %s".formatted(uri), unwrap(e));
+                });
+    }
+
+    /**
+     * Fetch the full package index, conditionally if the current snapshot has validators.
+     *
+     * @param uri             The URI of the package index.
+     * @param currentSnapshot The current snapshot.
+     * @return A future which completes with a new snapshot of the full index, or with {@code currentSnapshot} if the server reports that the index has not changed.
+     */
+    private CompletableFuture<RegistrySnapshot> fetchFullIndex(URI uri, @NotNull RegistrySnapshot currentSnapshot) {
+        HttpRequest.Builder request = newRequestBuilder(uri);
+        if (currentSnapshot.getEtag() != null)
+            request.header("If-None-Match", currentSnapshot.getEtag());
+        if (currentSnapshot.getLastModified() != null)
+            request.header("If-Modified-Since", currentSnapshot.getLastModified());
+
+        return HttpClientHolder.CLIENT.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> {
+                    try (Reader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+                        if (response.statusCode() == 304)
+                            return currentSnapshot;
+
+                        requireOk(response, uri);
+                        PackageIndexParser.PackageIndex index = PackageIndexParser.parseIndex(reader, TaskExecutors.CPU);
+                        if (index.delta())
+                            throw new RuntimeException("Server responded with a delta to a request for the full package index");
+                        return new RegistrySnapshot(
+                                index.packages(),
+                                response.headers().firstValue("ETag").orElse(null),
+                                response.headers().firstValue("Last-Modified").orElse(null),
+                                index.syncToken()
+                        );
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, TaskExecutors.IO);
+    }
+
+    /**
+     * Fetch the changes to the package index since the current snapshot, and apply them to it.
+     *
+     * @param uri             The URI of the package index.
+     * @param currentSnapshot The current snapshot, which must have a sync token.
+     * @return A future which completes with the new snapshot, or with null if the server no longer accepts the sync token of {@code currentSnapshot}, in which case the full index must be fetched.
+     */
+    private CompletableFuture<RegistrySnapshot> fetchIndexDelta(@NotNull URI uri, @NotNull RegistrySnapshot currentSnapshot) {
+        URI deltaUri = URI.create(uri + "?since=" + URLEncoder.encode(currentSnapshot.getSyncToken(), StandardCharsets.UTF_8));
+        return HttpClientHolder.CLIENT.sendAsync(newRequest(deltaUri), HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> {
+                    try (Reader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+                        if (response.statusCode() == 410)
+                            return null;
+
+                        requireOk(response, deltaUri);
+                        PackageIndexParser.PackageIndex index = PackageIndexParser.parseIndex(reader, TaskExecutors.CPU);
+
+                        // A server which does not support deltas just sends the full index
+                        if (!index.delta())
+                            return new RegistrySnapshot(
+                                    index.packages(),
+                                    response.headers().firstValue("ETag").orElse(null),
+                                    response.headers().firstValue("Last-Modified").orElse(null),
+                                    index.syncToken()
+                            );
+                        return currentSnapshot.applyDelta(index.packages(), index.removed(), index.syncToken());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, TaskExecutors.IO);
+    }
+
+    /**
+     * Save a snapshot so that it can be loaded with {@link Remote#loadSavedSnapshot()} the next time the client starts. Failing to save is ignored, since the packages can always be retrieved again.
+     *
+     * @param snapshot The snapshot to save.
+     */
+    private void saveSnapshot(RegistrySnapshot snapshot) {
+        File snapshotFile = RegistrySnapshotStore.getSnapshotFile();
+        if (snapshotFile == null)
+            return;
+
+        try {
+            RegistrySnapshotStore.save(snapshot, snapshotFile);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Get the bundle of the data of all package versions, which is used instead of requesting the data of each version.
+     *
+     * @return The latest bundle retrieved from the server, or null if no bundle has been retrieved or loaded.
+     */
+    public MetadataBundle getMetadataBundle() {
+        LoadedBundle loaded = metadataBundle.get();
+        return loaded == null ? null : loaded.bundle();
+    }
+
+    /**
+     * Stop using the metadata bundle, so that the data of each version is requested separately again. The saved bundle is kept.
+     */
+    public void clearMetadataBundle() {
+        metadataBundle.set(null);
+    }
+
+    /**
+     * Memory-map the bundle saved by the last successful retrieval of the bundle, if no bundle has been retrieved yet.
+     *
+     * @return True if the saved bundle was loaded, or false if there is no saved bundle, if it could not be read, or if a bundle has already been retrieved.
+     */
+    public boolean loadSavedMetadataBundle() {
+        File bundleDir = MetadataBundle.getBundleDir();
+        if (bundleDir == null)
+            return false;
+        File bundleFile = MetadataBundle.findLatestBundleFile(bundleDir);
+        if (bundleFile == null)
+            return false;
+
+        // Older bundles are only left behind if they could not be deleted while they were mapped
+        MetadataBundle.deleteBundleFilesExcept(bundleDir, bundleFile);
+        try {
+            File etagFile = MetadataBundle.getEtagFile(bundleFile);
+            String etag = etagFile.exists() ? Files.readString(etagFile.toPath(), StandardCharsets.UTF_8) : null;
+            return metadataBundle.compareAndSet(null, new LoadedBundle(MetadataBundle.open(bundleFile), bundleFile, etag));
+        } catch (IOException e) {
+            return false;
         }
     }
 
+    /**
+     * Fetch the bundle of the data of all package versions from the server, so that dependencies can be resolved without requesting the data of each version. The bundle is requested conditionally if a bundle has already been retrieved or loaded, and if it changed, it is sent compressed with gzip, and is decompressed to a new file in {@link MetadataBundle#getBundleDir()}, or to a temporary file if there is no X-Plane installation configured, and then memory-mapped.
+     *
+     * @return A future which completes with the new bundle, or with the current bundle if the server reports that it has not changed, and updates {@link Remote#getMetadataBundle()} before it completes.
+     */
+    public CompletableFuture<MetadataBundle> fetchMetadataBundle() {
+        URI uri = registryUri("/packages/bundle");
+        LoadedBundle current = metadataBundle.get();
+        HttpRequest.Builder request = newRequestBuilder(uri);
+        if (current != null && current.etag() != null)
+            request.header("If-None-Match", current.etag());
+
+        return HttpClientHolder.CLIENT.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> {
+                    if (response.statusCode() == 304 && current != null) {
+                        try {
+                            response.body().close();
+                        } catch (IOException ignored) {
+                        }
+                        return current.bundle();
+                    }
+
+                    try (InputStream in = new GZIPInputStream(requireOk(response, uri), 64 * 1024)) {
+                        File bundleDir = MetadataBundle.getBundleDir();
+                        File bundleFile;
+                        if (bundleDir == null) {
+                            bundleFile = File.createTempFile("xpkg-bundle-", ".bin");
+                            bundleFile.deleteOnExit();
+                        } else {
+                            Files.createDirectories(bundleDir.toPath());
+                            bundleFile = MetadataBundle.newBundleFile(bundleDir);
+                        }
+
+                        // The current bundle still has its file mapped, so the new bundle is written to a file of its own rather than replacing it
+                        Path tmpFile = Files.createTempFile(bundleFile.getParentFile().toPath(), "bundle-", ".tmp");
+                        try {
+                            Files.copy(in, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+                            Files.move(tmpFile, bundleFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        } finally {
+                            Files.deleteIfExists(tmpFile);
+                        }
+
+                        String etag = response.headers().firstValue("ETag").orElse(null);
+                        File etagFile = MetadataBundle.getEtagFile(bundleFile);
+                        MetadataBundle bundle;
+                        try {
+                            if (bundleDir != null && etag != null)
+                                Files.writeString(etagFile.toPath(), etag, StandardCharsets.UTF_8);
+                            bundle = MetadataBundle.open(bundleFile);
+                        } catch (IOException | RuntimeException e) {
+                            Files.deleteIfExists(bundleFile.toPath());
+                            Files.deleteIfExists(etagFile.toPath());
+                            throw e;
+                        }
+
+                        // The old bundle may still be in use by a resolution which started before the swap, in which case its file can not be deleted on some systems until it is unmapped, so it is deleted by the next retrieval or load instead
+                        LoadedBundle previous = metadataBundle.getAndSet(new LoadedBundle(bundle, bundleFile, etag));
+                        if (bundleDir != null)
+                            MetadataBundle.deleteBundleFilesExcept(bundleDir, bundleFile);
+                        else if (previous != null && !previous.file().equals(bundleFile))
+                            previous.file().delete();
+                        return bundle;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, TaskExecutors.IO)
+                .exceptionally(e -> {
+                    throw new RuntimeException("Could not get the metadata bundle from %s".formatted(uri), unwrap(e));
+                });
+    }
+
     /**
      * Get a package. Tries to get the most up to date from remote.
      *
@@ -112,115 +333,504 @@ public class Remote {
      * @returns The package object of the package. Null if the package is not found.
      */
     public Package getPackage(String packageId) {
-        Optional<Package> pkg = packages.stream().filter(p -> p.getPackageId().equals(packageId)).findFirst();
-        return pkg.orElse(null);
+        return snapshot.get().getPackage(packageId);
     }
 
     /**
-     * Download a package.
+     * Download a package, and extract it into the downloads directory of the X-Plane installation. If the archive of the version is already kept in the {@link ArchiveStore}, it is extracted without being downloaded again, and otherwise the download is kept in the store once it has been checked. If {@link Configuration#isLinkedInstalls()} is true, the extracted contents are kept in the store too, and later installations of the same version are hard linked from them with {@link PackageLinker}, falling back to copying files which can not be linked. The hash of the download is computed as it is written to disk. If {@link Configuration#isStreamingExtraction()} is true, the package is extracted to a staging directory while it is downloaded, otherwise, or if the package can not be extracted as it is downloaded, it is extracted on {@link TaskExecutors#CPU} once the download is complete. The package is only moved out of the staging directory once the hash of the whole download has been checked. If the download is interrupted, the part already downloaded is kept with a {@link DownloadProgress} record, and the next download of the same version asks the server for the rest of it, as long as the server sent an {@code ETag} or {@code Last-Modified} header to check that the file did not change. Only one download of a version, in any process, can write to the file which is continued, and any other download of the same version at the same time is written to a file of its own. Cancelling the returned future stops the download, and removes the part already downloaded.
      *
      * @param pkg        The package to download.
      * @param version    The version of the package to download.
      * @param pkgLocData The package location data of the package, or {@code null} if the package loc data has not yet been downloaded. If it is null the data will be downloaded.
-     * @param cb         The callback function which runs after the file has been downloaded and unzipped, with the second parameter as the location of the root of the package downloaded. If there is an exception downloading the package, the file will be null and the first parameter will have the error that caused the download to fail.
+     * @return A future which completes with the location of the root of the extracted package, or completes exceptionally with the error that caused the download to fail.
+     */
+    public CompletableFuture<File> fetchPackage(@NotNull Package pkg, Version version, VersionData pkgLocData) {
+        // The download only starts once the archive store has missed, so it is shared with the future to be cancelled
+        AtomicReference<HashingBodySubscriber> download = new AtomicReference<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        // Set once there is evidence that the cached data of the version is stale, since the data is otherwise immutable, and failing for any other reason, such as a timeout, does not make it wrong
+        AtomicBoolean versionChanged = new AtomicBoolean();
+
+        CompletableFuture<VersionData> data = pkgLocData == null ? fetchVersionData(pkg.getPackageId(), version) : CompletableFuture.completedFuture(pkgLocData);
+        CompletableFuture<File> extracted = data.thenApplyAsync(versionData -> {
+            if (versionData.loc.equalsIgnoreCase("NOT_PUBLISHED")) {
+                versionChanged.set(true);
+                throw new RuntimeException("%s@%s is not published".formatted(pkg.getPackageId(), version));
+            }
+
+            try {
+                return downloadAndExtract(pkg, version, versionData, download, cancelled, versionChanged);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, TaskExecutors.IO);
+
+        // The download is removed by the task itself, which keeps running until the download stops even if the returned future is cancelled, since a cancelled future does not run its own handlers
+        CompletableFuture<File> future = extracted.handle((destFile, e) -> {
+            if (e == null)
+                return destFile;
+
+            RuntimeException error = new RuntimeException("Could not download the package %s@%s".formatted(pkg, version), unwrap(e));
+            if (versionChanged.get()) {
+
+                // The cached location or hash is stale, since the version was unpublished or republished
+                try {
+                    VersionDataCache.invalidate(pkg.getPackageId(), version);
+                } catch (RuntimeException invalidateError) {
+                    error.addSuppressed(invalidateError);
+                }
+            }
+            throw error;
+        });
+        future.whenComplete((destFile, e) -> {
+            if (future.isCancelled()) {
+                cancelled.set(true);
+                HashingBodySubscriber currentDownload = download.get();
+                if (currentDownload != null)
+                    currentDownload.cancel();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Lock the file a version of a package is downloaded to, so that only one download, in any process, writes to it and continues it at once. The lock is held until the returned channel is closed.
+     *
+     * @param path The file to lock, which is created if it does not exist.
+     * @return The channel which holds the lock, or null if another download holds it, or the file could not be locked.
      */
-    public void downloadPackage(@NotNull Package pkg, Version version, VersionData pkgLocData, FileDownloadedCallback cb) {
-        File downloadFile = Path.of(Configuration.getXpPath().getAbsolutePath(), "xpkg", "tmp", "downloads", pkg.getPackageId() + ".xpkg").toFile();
+    private FileChannel lockDownload(@NotNull Path path) {
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
 
-        //noinspection ResultOfMethodCallIgnored
-        downloadFile.getParentFile().mkdirs();
+            // A byte past the end of any download is locked instead of the whole file, since on some systems locked bytes can not be written through any other channel, even in the same process
+            if (channel.tryLock(Long.MAX_VALUE - 1, 1, false) != null && Files.exists(path))
+                return channel;
+        } catch (IOException | OverlappingFileLockException ignored) {
 
-        // To prevent callback hell
-        CompletableFuture<VersionData> res = new CompletableFuture<>();
-        Thread t = new Thread(() -> {
-            if (pkgLocData == null)
-                getVersionData(pkg.getPackageId(), version, res::complete);
-            else
-                res.complete(pkgLocData);
+            // The file could not be locked, or another download in this process already holds the lock
+        }
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Use the extracted contents or archive kept in the {@link ArchiveStore} if there are any, or otherwise download the package. Blocks until the package has been extracted.
+     *
+     * @param pkg            The package to download.
+     * @param version        The version of the package to download.
+     * @param versionData    The data of the version of the package to download.
+     * @param download       Set to the subscriber which writes the download once it starts, so that it can be cancelled.
+     * @param cancelled      True once the download should stop.
+     * @param versionChanged Set to true if the server no longer has the package at its location, or it does not match its hash.
+     * @return The location of the root of the extracted package.
+     * @throws IOException Exception thrown if the package could not be downloaded, extracted, or moved into place.
+     */
+    private File downloadAndExtract(@NotNull Package pkg, Version version, @NotNull VersionData versionData, @NotNull AtomicReference<HashingBodySubscriber> download, @NotNull AtomicBoolean cancelled, @NotNull AtomicBoolean versionChanged) throws IOException {
+        Path downloadsDir = getDownloadsDir();
+        Files.createDirectories(downloadsDir);
+        File destFile = downloadsDir.resolve(pkg.getPackageId()).toFile();
+
+        // Kept extracted contents are linked, which only writes directory entries, no matter how large the package is
+        Path storedExtracted = Configuration.isLinkedInstalls() ? ArchiveStore.getExtracted(versionData.hash) : null;
+        if (storedExtracted != null) {
+            Path stagingDir = Files.createTempDirectory(downloadsDir, pkg.getPackageId() + "-");
+            try {
+                PackageLinker.LinkStats stats = PackageLinker.link(storedExtracted, stagingDir);
+                PackageExtractor.promote(stagingDir, destFile.toPath());
+                System.out.println("Installed %s@%s from the archive store: %s".formatted(pkg.getPackageId(), version, stats));
+                return destFile;
+            } catch (IOException ignored) {
+
+                // The archive is extracted again instead
+            } finally {
+                PackageExtractor.deleteRecursively(stagingDir);
+            }
+        }
+
+        File storedArchive = ArchiveStore.get(versionData.hash);
+        if (storedArchive != null) {
+            Path stagingDir = Files.createTempDirectory(downloadsDir, pkg.getPackageId() + "-");
+            try {
+                PackageExtractor.extract(storedArchive, stagingDir);
+                PackageExtractor.promote(stagingDir, destFile.toPath());
+                keepExtracted(versionData, destFile);
+                return destFile;
+            } catch (IOException e) {
+
+                // The kept archive is damaged, so it is removed and downloaded again
+                ArchiveStore.remove(versionData.hash);
+            } finally {
+                PackageExtractor.deleteRecursively(stagingDir);
+            }
+        }
+
+        // Downloads are written inside of the archive store if it is enabled, so that they can be kept without being copied, and always to the same file for the same version, so that they can be continued
+        String downloadName = pkg.getPackageId() + "@" + version;
+        Path storeDownloadPath = ArchiveStore.getDownloadPath(downloadName);
+        Path resumablePath = storeDownloadPath != null ? storeDownloadPath : downloadsDir.resolve(downloadName + ".xpkg");
+
+        // Another download of the same version, in this process or another, may already be writing to the file, in which case this download is written to its own file, which can not be continued
+        FileChannel downloadLock = lockDownload(resumablePath);
+        File downloadFile;
+        if (downloadLock != null)
+            downloadFile = resumablePath.toFile();
+        else if (storeDownloadPath != null)
+            downloadFile = ArchiveStore.newDownloadPath(downloadName).toFile();
+        else
+            downloadFile = downloadsDir.resolve(downloadName + "-" + UUID.randomUUID() + ".xpkg").toFile();
+        HashingBodySubscriber subscriber = new HashingBodySubscriber(downloadFile.toPath());
+        download.set(subscriber);
+        if (cancelled.get())
+            subscriber.cancel();
+
+        // An interrupted download is kept so that it can be continued, unless it was cancelled, turned out to be wrong, or can not be continued
+        boolean keepDownload = false;
+        try {
+            return downloadPackage(pkg, versionData, destFile, downloadFile, subscriber, versionChanged);
+        } catch (Throwable e) {
+            boolean completedDownload = subscriber.getBody().toCompletableFuture().isDone() && !subscriber.getBody().toCompletableFuture().isCompletedExceptionally();
+            keepDownload = downloadLock != null && !cancelled.get() && !completedDownload && !(unwrap(e) instanceof SecurityException) && DownloadProgress.read(downloadFile) != null;
+            throw e;
+        } finally {
+            if (!keepDownload) {
+                //noinspection ResultOfMethodCallIgnored
+                downloadFile.delete();
+                DownloadProgress.delete(downloadFile);
+            }
+
+            // The lock is only released once the file is removed, so that the next download to lock it can tell whether it still exists
+            if (downloadLock != null) {
+                try {
+                    downloadLock.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Download a package to a file, extract it into a staging directory, and move it into place once its hash has been checked. The download is kept in the {@link ArchiveStore} if it is enabled.
+     *
+     * @param pkg            The package to download.
+     * @param versionData    The data of the version of the package to download.
+     * @param destFile       The location to move the extracted package to.
+     * @param downloadFile   The file to download the package to.
+     * @param download       The subscriber which writes the download to {@code downloadFile}.
+     * @param versionChanged Set to true if the server no longer has the package at its location, or it does not match its hash.
+     * @return The location of the root of the extracted package.
+     * @throws IOException Exception thrown if the package could not be downloaded, extracted, or moved into place.
+     */
+    private File downloadPackage(@NotNull Package pkg, @NotNull VersionData versionData, @NotNull File destFile, @NotNull File downloadFile, @NotNull HashingBodySubscriber download, @NotNull AtomicBoolean versionChanged) throws IOException {
+        Path downloadsDir = destFile.getParentFile().toPath();
+        Files.createDirectories(downloadFile.getParentFile().toPath());
+        Path stagingDir = Files.createTempDirectory(downloadsDir, pkg.getPackageId() + "-");
+
+        // Entries are extracted while later parts of the package are still arriving
+        CompletableFuture<Boolean> streamed = Configuration.isStreamingExtraction()
+                ? TaskExecutors.submit(() -> PackageExtractor.extractStream(download.openStream(), stagingDir), TaskExecutors.STREAM)
+                : CompletableFuture.completedFuture(false);
+
+        // A package which tries to write outside of the staging directory is rejected without waiting for the rest of it
+        streamed.whenComplete((extracted, e) -> {
+            if (e != null && unwrap(e) instanceof SecurityException)
+                download.cancel();
         });
+        try {
+            URI uri = URI.create(versionData.loc);
+            String hash;
+            try {
+                hash = requireOk(join(sendDownloadRequest(uri, versionData, downloadFile, download, versionChanged)), uri);
+            } catch (Throwable e) {
 
-        res.thenAccept(data -> {
+                // The request may have failed before the subscriber was used, in which case the extractor would wait forever
+                download.cancel();
+                if (streamed.handle((extracted, extractError) -> extractError == null ? null : unwrap(extractError)).getNow(null) instanceof SecurityException securityException)
+                    throw securityException;
+                throw e;
+            }
+            if (!hash.equalsIgnoreCase(versionData.hash)) {
+                versionChanged.set(true);
+                throw new SecurityException("Downloaded file hash does not match expected hash from server");
+            }
 
-            if (data.loc.equalsIgnoreCase("NOT_PUBLISHED"))
-                throw new RuntimeException("");
+            // Now that the whole download is known to be what the server published, anything the extractor could not handle is extracted again from the complete file
+            boolean extracted = join(streamed.exceptionally(e -> {
+                if (unwrap(e) instanceof SecurityException securityException)
+                    throw securityException;
+                return false;
+            }));
+            if (!extracted) {
+                PackageExtractor.deleteRecursively(stagingDir);
+                Files.createDirectories(stagingDir);
+                PackageExtractor.extract(downloadFile, stagingDir);
+            }
+
+            PackageExtractor.promote(stagingDir, destFile.toPath());
+            if (ArchiveStore.isEnabled()) {
+                try {
+                    ArchiveStore.put(versionData.hash, downloadFile.toPath());
+                } catch (IOException | IllegalArgumentException ignored) {
 
-            URL packageLoc;
-            try (FileOutputStream f = new FileOutputStream(downloadFile);
-                 ZipFile zipFile = new ZipFile(downloadFile)) {
-                packageLoc = new URL(data.loc);
-                ReadableByteChannel zipStream = Channels.newChannel(packageLoc.openStream());
-                f.getChannel().transferFrom(zipStream, 0, Long.MAX_VALUE);
+                    // The package is installed either way, it will just be downloaded again next time
+                }
+                keepExtracted(versionData, destFile);
+            }
+            return destFile;
+        } finally {
+
+            // The extractor may still be writing to the staging directory if the download failed
+            streamed.handle((extracted, e) -> null).join();
+            PackageExtractor.deleteRecursively(stagingDir);
+        }
+    }
+
+    /**
+     * Send the request for a package download, asking only for the rest of the file if part of it was already downloaded. A {@link DownloadProgress} record is written next to the download once the response starts, so that the download can be continued if it is interrupted.
+     *
+     * @param uri            The location of the package.
+     * @param versionData    The data of the version of the package.
+     * @param downloadFile   The file the package is downloaded to, which may hold part of the package already.
+     * @param download       The subscriber which writes the download to {@code downloadFile}.
+     * @param versionChanged Set to true if the server responds that the package is not at its location.
+     * @return A future which completes with the response, whose body is the hash of the whole file.
+     */
+    private CompletableFuture<HttpResponse<String>> sendDownloadRequest(URI uri, @NotNull VersionData versionData, @NotNull File downloadFile, @NotNull HashingBodySubscriber download, @NotNull AtomicBoolean versionChanged) {
+        HttpRequest.Builder request = newRequestBuilder(uri);
+        DownloadProgress progress = DownloadProgress.read(downloadFile);
+        long offset = progress == null ? 0 : progress.getResumeOffset(downloadFile, versionData.loc, versionData.hash);
+        if (offset > 0) {
+            try {
+                download.resumeFrom(offset);
+
+                // The server sends the whole file instead of the rest if it changed since the part was downloaded
+                request.header("Range", "bytes=%d-".formatted(offset));
+                request.header("If-Range", progress.validator());
+            } catch (IOException ignored) {
+            }
+        }
 
-                if (!checkFileHash(downloadFile, data.hash))
-                    throw new SecurityException("Downloaded file hash does not match expected hash from server");
+        return HttpClientHolder.CLIENT.sendAsync(request.build(), responseInfo -> {
+            int status = responseInfo.statusCode();
+            if (status == 404 || status == 410)
+                versionChanged.set(true);
+            if (status == 200 || status == 206) {
+                DownloadProgress responseProgress = DownloadProgress.fromResponse(versionData.loc, versionData.hash, status, responseInfo.headers());
+                try {
+                    if (responseProgress == null)
+                        DownloadProgress.delete(downloadFile);
+                    else
+                        responseProgress.write(downloadFile);
+                } catch (IOException ignored) {
+                }
+            }
+            return download.handler().apply(responseInfo);
+        });
+    }
 
-                File destFile = Path.of(downloadFile.getParentFile().getAbsolutePath(), pkg.getPackageId()).toFile();
-                zipFile.extractAll(destFile.getAbsolutePath());
+    /**
+     * Keep the extracted contents of a package in the {@link ArchiveStore} by linking them, if {@link Configuration#isLinkedInstalls()} is true. Failures are ignored, since the package has already been extracted.
+     *
+     * @param versionData The data of the version of the package.
+     * @param destFile    The location of the root of the extracted package.
+     */
+    private void keepExtracted(@NotNull VersionData versionData, @NotNull File destFile) {
+        if (!Configuration.isLinkedInstalls())
+            return;
 
-                // We duplicate this code since we don't want any weird behaviour if we decide to do something in the callback (which will execute before any finally block)
-                if (downloadFile.exists())
-                    //noinspection ResultOfMethodCallIgnored
-                    downloadFile.delete();
+        try {
+            PackageLinker.LinkStats stats = ArchiveStore.putExtracted(versionData.hash, destFile.toPath());
+            if (stats != null)
+                System.out.println("Kept the extracted contents of %s in the archive store: %s".formatted(destFile.getName(), stats));
+        } catch (IOException ignored) {
+        }
+    }
 
-                Platform.runLater(() -> {
-                    try {
-                        cb.execute(null, destFile);
-                    } catch (Throwable e) {
-                        throw new RuntimeException(e);
-                    }
+    /**
+     * Get the directory packages are downloaded and extracted to in the X-Plane installation.
+     *
+     * @return The downloads directory, which may not exist yet.
+     */
+    private Path getDownloadsDir() {
+        return Path.of(Configuration.getXpPath().getAbsolutePath(), "xpkg", "tmp", "downloads");
+    }
+
+    /**
+     * Fetch the data for a version of a package. The data is only requested from the server if it is not in the metadata bundle or the {@link VersionDataCache}.
+     *
+     * @param packageId The id of the package to get the version data of.
+     * @param version   The version of the package to get the version data of.
+     * @return A future which completes with the data for the package version.
+     */
+    public CompletableFuture<VersionData> fetchVersionData(String packageId, @NotNull Version version) {
+        VersionData cached = getLocalVersionData(packageId, version);
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+
+        URI uri = registryUri("/packages/%s/%s".formatted(packageId, version));
+        return fetchJson(uri)
+                .thenApply(obj -> {
+                    VersionData data = toVersionData(obj);
+                    VersionDataCache.put(packageId, version, data);
+                    return data;
+                })
+                .exceptionally(e -> {
+                    throw new RuntimeException("Could not fetch the data for %s@%s from remote: %s".formatted(packageId, version, uri), unwrap(e));
                 });
-            } catch (Throwable e) {
+    }
 
-                if (downloadFile.exists())
+    /**
+     * Fetch the data for many package versions at once. Versions in the metadata bundle or the {@link VersionDataCache} are not requested, and the rest are requested from the server in a single batch request. If the server does not support batch requests, they are requested with concurrent single requests instead, and batch requests are not attempted again.
+     *
+     * @param nodes The package versions to get the data of.
+     * @return A future which completes with the data for each package version, in the same order as {@code nodes}.
+     */
+    public CompletableFuture<List<VersionData>> fetchVersionData(@NotNull Collection<PackageNode> nodes) {
+
+        // Take the versions now, since nodes can change version
+        String[] packageIds = new String[nodes.size()];
+        Version[] versions = new Version[nodes.size()];
+        int index = 0;
+        for (PackageNode node : nodes) {
+            packageIds[index] = node.getPackageId();
+            versions[index] = node.getVersion();
+            ++index;
+        }
+
+        VersionData[] results = new VersionData[packageIds.length];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < packageIds.length; ++i) {
+            results[i] = getLocalVersionData(packageIds[i], versions[i]);
+            if (results[i] == null)
+                missing.add(i);
+        }
+
+        CompletableFuture<Boolean> batchFetched = missing.size() > 1 && !batchUnsupportedRegistries.contains(Configuration.getRegistryUrl()) ? fetchVersionDataBatch(packageIds, versions, missing, results) : CompletableFuture.completedFuture(false);
+        return batchFetched
+                .thenCompose(fetched -> {
+                    if (fetched)
+                        return CompletableFuture.completedFuture(null);
+
+                    CompletableFuture<?>[] singleRequests = new CompletableFuture<?>[missing.size()];
+                    for (int i = 0; i < singleRequests.length; ++i) {
+                        int resultIndex = missing.get(i);
+                        singleRequests[i] = fetchVersionData(packageIds[resultIndex], versions[resultIndex]).thenAccept(data -> results[resultIndex] = data);
+                    }
+                    return CompletableFuture.allOf(singleRequests);
+                })
+                .thenApply(v -> List.of(results));
+    }
 
-                    //noinspection ResultOfMethodCallIgnored
-                    downloadFile.delete();
-                Platform.runLater(() -> {
-                    try {
-                        cb.execute(new RuntimeException("Could not download the package %s@%s".formatted(pkg, version), e), null);
-                    } catch (Throwable ex) {
-                        throw new RuntimeException(ex);
+    /**
+     * Request the data for many package versions from the server in a single request, and cache the results.
+     *
+     * @param packageIds The ids of all the packages.
+     * @param versions   The versions of all the packages, in the same order as {@code packageIds}.
+     * @param indices    The indices of the package versions to request.
+     * @param results    The array to put the data in, at the same indices as the packages.
+     * @return A future which completes with true if the data was retrieved, or false if the server does not support batch requests.
+     */
+    private CompletableFuture<Boolean> fetchVersionDataBatch(String[] packageIds, Version[] versions, @NotNull List<Integer> indices, VersionData[] results) {
+        JSONArray requested = new JSONArray();
+        for (int i : indices)
+            requested.put(new JSONObject().put("packageId", packageIds[i]).put("packageVersion", versions[i].toString()));
+
+        String registryUrl = Configuration.getRegistryUrl();
+        URI uri = URI.create(registryUrl + "/packages/batch");
+        HttpRequest request = newRequestBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(new JSONObject().put("versions", requested).toString(), StandardCharsets.UTF_8))
+                .build();
+
+        return HttpClientHolder.CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(response -> {
+                    int status = response.statusCode();
+                    if (status == 404 || status == 405 || status == 501) {
+                        batchUnsupportedRegistries.add(registryUrl);
+                        return false;
                     }
+
+                    JSONArray data = new JSONObject(requireOk(response, uri)).getJSONArray("data");
+                    if (data.length() != indices.size())
+                        throw new RuntimeException("Server responded with data for %d versions, but %d were requested".formatted(data.length(), indices.size()));
+
+                    for (int i = 0; i < indices.size(); ++i) {
+                        int resultIndex = indices.get(i);
+                        VersionData versionData = toVersionData(data.getJSONObject(i));
+                        VersionDataCache.put(packageIds[resultIndex], versions[resultIndex], versionData);
+                        results[resultIndex] = versionData;
+                    }
+                    return true;
+                })
+                .exceptionally(e -> {
+                    throw new RuntimeException("Could not fetch the data for %d versions from remote: %s".formatted(indices.size(), uri), unwrap(e));
                 });
-            }
-        });
+    }
 
-        t.start();
+    /**
+     * Get the data for many package versions at once. Blocks until the data has been downloaded.
+     *
+     * @param nodes The package versions to get the data of.
+     * @return The data for each package version, in the same order as {@code nodes}.
+     * @see Remote#fetchVersionData(Collection)
+     */
+    public List<VersionData> getVersionData(@NotNull Collection<PackageNode> nodes) {
+        return join(fetchVersionData(nodes));
+    }
+
+    /**
+     * Get the data for a version of a package without making a request, from the metadata bundle, or from the {@link VersionDataCache} if the version is not in the bundle.
+     *
+     * @param packageId The id of the package.
+     * @param version   The version of the package.
+     * @return The data for the version, or null if it has to be requested from the server.
+     */
+    private VersionData getLocalVersionData(String packageId, @NotNull Version version) {
+        LoadedBundle loaded = metadataBundle.get();
+        if (loaded != null) {
+            VersionData data = loaded.bundle().getVersionData(packageId, version);
+            if (data != null)
+                return data;
+        }
+        return VersionDataCache.get(packageId, version);
     }
 
     /**
-     * Get the data for a version of a package.
+     * Check if the configured registry may support batch requests for version data. A registry is assumed to support them until it rejects one.
+     *
+     * @return False if the configured registry has rejected a batch request.
+     */
+    boolean isBatchSupported() {
+        return !batchUnsupportedRegistries.contains(Configuration.getRegistryUrl());
+    }
+
+    /**
+     * Get the data for a version of a package. Blocks until the data has been downloaded.
      *
      * @param packageId      The id of the package to get the version data of.
      * @param packageVersion The version of the package to get the version data of.
      * @return The data for the package if it works.
      */
-    @SneakyThrows({ExecutionException.class, InterruptedException.class})
     public VersionData getVersionData(String packageId, Version packageVersion) {
-        CompletableFuture<Remote.VersionData> res = new CompletableFuture<>();
-        Thread t = new Thread(() -> Remote.getVersionData(packageId, packageVersion, res::complete));
-        t.start();
-        return res.get();
+        return join(fetchVersionData(packageId, packageVersion));
     }
 
     /**
-     * Get the location data for a package asynchronously.
+     * Convert the JSON returned from the server for a package version into version data.
      *
-     * @param packageId The id of the package to get the location data of.
-     * @param version   The version of the package to get the location data of.
-     * @param cb        The callback to execute after getting the location data. Run within {@link Platform#runLater(Runnable)} so that JavaFX calls can be made from within the new thread.
+     * @param obj The JSON object returned from the server.
+     * @return The version data that {@code obj} represents.
      */
-    @SneakyThrows(MalformedURLException.class)
-    public void getVersionData(String packageId, @NotNull Version version, VersionDataDownloadedCallback cb) {
-        URL url = new URL(String.format("http://localhost:5020/packages/%s/%s", packageId, version));
-        JSONObject obj;
-
-        try {
-            obj = readJsonFromUrl(url);
-        } catch (Throwable e) {
-            throw new RuntimeException("Could not fetch the data for %s@%s from remote: %s".formatted(packageId, version, url), e);
-        }
-
+    static @NotNull VersionData toVersionData(@NotNull JSONObject obj) {
         JSONArray dependencyArr = obj.getJSONArray("dependencies");
         JSONArray incompatibilityArr = obj.getJSONArray("incompatibilities");
 
@@ -241,97 +851,116 @@ public class Remote {
             incompatibilities.add(incompatibilityMap);
         });
 
-        Platform.runLater(() -> cb.execute(new VersionData(
+        return new VersionData(
                 obj.getString("loc"),
                 obj.getString("hash"),
                 dependencies.toArray(String[][]::new),
                 incompatibilities.toArray(String[][]::new)
-        )));
+        );
     }
 
     /**
-     * Check to see if a file's 256sum matches it's expected 256sum. See <a href="https://stackoverflow.com/questions/32032851/how-to-calculate-hash-value-of-a-file-in-java">this answer</a> for where the digest is created, and <a href="https://stackoverflow.com/questions/9655181/how-to-convert-a-byte-array-to-a-hex-string-in-java">chooban's answer</a> to see how to convert the hex using Apache's {@link Hex}.
+     * Fetch JSON from the server.
      *
-     * @param fileName     The file to check the 256sum.
-     * @param expectedHash The expected file 256sum.
-     * @return True if the file's hash checksum the expected checksum.
-     * @throws IOException Exception thrown if the file does not exist, or if there was an error reading it.
+     * @param uri The URI to get the JSON data from.
+     * @return A future which completes with the JSON data downloaded from the URI.
      */
-    @SneakyThrows(NoSuchAlgorithmException.class)
-    public boolean checkFileHash(File fileName, String expectedHash) throws IOException {
-
-        byte[] buffer = new byte[8192];
-        int count;
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        BufferedInputStream bis = new BufferedInputStream(new FileInputStream(fileName));
-        while ((count = bis.read(buffer)) > 0) {
-            digest.update(buffer, 0, count);
-        }
-        bis.close();
-
-        byte[] hash = digest.digest();
-        String actualHash = Hex.encodeHexString(hash);
-        return actualHash.equalsIgnoreCase(expectedHash);
+    private CompletableFuture<JSONObject> fetchJson(URI uri) {
+        return HttpClientHolder.CLIENT.sendAsync(newRequest(uri), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(response -> new JSONObject(requireOk(response, uri)));
     }
 
     /**
-     * Read JSON from URL. See <a href="https://stackoverflow.com/questions/4308554/simplest-way-to-read-json-from-a-url-in-java">answer on Stack Overflow</a>.
+     * Get the URI of a path on the registry configured in {@link Configuration#getRegistryUrl()}.
      *
-     * @param url The URL to get the JSON data from.
-     * @return The JSON data downloaded from the URL.
-     * @throws IOException   Exception thrown when there is an issue getting the data from the remote server.
-     * @throws JSONException Exception thrown when there is an issue parsing the JSON returned.
+     * @param path The path on the registry, starting with a slash.
+     * @return The URI of {@code path} on the registry.
      */
-    private static @NotNull JSONObject readJsonFromUrl(URL url) throws IOException, JSONException {
-        try (InputStream is = url.openStream()) {
-            BufferedReader rd = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            int cp;
-            while ((cp = rd.read()) != -1)
-                sb.append((char) cp);
-            String jsonText = sb.toString();
-            return new JSONObject(jsonText);
-        }
+    private URI registryUri(String path) {
+        return URI.create(Configuration.getRegistryUrl() + path);
     }
 
     /**
-     * This callback is used to run something after downloading the list of packages from remote.
+     * Create a GET request with the timeout configured in {@link Configuration#getRequestTimeout()}.
+     *
+     * @param uri The URI to request.
+     * @return The new request.
      */
-    public interface PackageRetrieveCallback {
+    private HttpRequest newRequest(URI uri) {
+        return newRequestBuilder(uri).build();
+    }
 
-        /**
-         * The callback to execute after downloading the list of packages from remote.
-         *
-         * @param packages The list of all published and approved packages from remote.
-         */
-        void execute(List<Package> packages);
+    /**
+     * Start building a GET request with the timeout configured in {@link Configuration#getRequestTimeout()}, so that headers can be added to it.
+     *
+     * @param uri The URI to request.
+     * @return The builder of the new request.
+     */
+    private HttpRequest.Builder newRequestBuilder(URI uri) {
+        return HttpRequest.newBuilder(uri)
+                .timeout(Configuration.getRequestTimeout())
+                .GET();
     }
 
     /**
-     * Callback used to run something after downloading file from remote.
+     * Make sure that the server responded successfully.
+     *
+     * @param response The response from the server.
+     * @param uri      The URI that was requested, for the error message.
+     * @param <T>      The type of the response body.
+     * @return The body of the response.
+     * @throws RuntimeException Exception thrown if the server did not respond with a 2xx status code.
      */
-    public interface FileDownloadedCallback {
+    private <T> T requireOk(@NotNull HttpResponse<T> response, URI uri) {
+        int status = response.statusCode();
+        if (status >= 200 && status < 300)
+            return response.body();
+
+        if (response.body() instanceof Closeable body) {
+            try {
+                body.close();
+            } catch (IOException ignored) {
+            }
+        }
+        throw new RuntimeException("Server responded with status %d for %s".formatted(status, uri));
+    }
 
-        /**
-         * The callback to execute after a file has been downloaded from a remote location. The parameter {@code e} is null if the operation successfully, or else {@code e} is the error that caused the download to fail.
-         *
-         * @param e The error that caused the download to fail.
-         * @param f The location of the downloaded file. Is null if e is not null.
-         */
-        void execute(Throwable e, File f) throws Throwable;
+    /**
+     * Wait for a future to complete, and rethrow its exception directly if it fails, rather than wrapped in a {@link CompletionException}.
+     *
+     * @param future The future to wait for.
+     * @param <T>    The type of the result of the future.
+     * @return The result of the future.
+     */
+    @SneakyThrows
+    private <T> T join(@NotNull CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
     }
 
     /**
-     * Callback used to run something after getting the data for a version of a package.
+     * Get the actual cause of an exception thrown from a future.
+     *
+     * @param e The exception thrown from the future.
+     * @return The cause of {@code e} if it is a {@link CompletionException}, otherwise {@code e}.
      */
-    public interface VersionDataDownloadedCallback {
+    private Throwable unwrap(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null)
+            return e.getCause();
+        return e;
+    }
 
-        /**
-         * The callback to execute after getting the data for a version of a package.
-         *
-         * @param data The data returned from the server.
-         */
-        void execute(VersionData data);
+    /**
+     * A metadata bundle which is in use, with where it was loaded from.
+     *
+     * @param bundle The bundle.
+     * @param file   The file that the bundle is mapped from.
+     * @param etag   The {@code ETag} that the bundle was sent with, or null if the server did not send one.
+     */
+    private record LoadedBundle(MetadataBundle bundle, File file, String etag) {
     }
 
     /**
@@ -346,4 +975,15 @@ public class Remote {
                               String[][] dependencies,
                               String[][] incompatibilities) {
     }
+
+    /**
+     * Holds the client used for all requests, so that it is only created (after the configuration is loaded) when the first request is made. The client keeps connections alive between requests, and uses HTTP/2 if the server supports it.
+     */
+    private static final class HttpClientHolder {
+        private static final HttpClient CLIENT = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Configuration.getConnectTimeout())
+                .build();
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executors that all background work runs on, so that the number of threads is bounded no matter how much work is queued. Blocking work, such as reading from the network or disk, or waiting for other work, runs on {@link TaskExecutors#IO}, and work which only uses the processor, such as hashing, extracting and parsing, runs on {@link TaskExecutors#CPU}. Work which reads a download as it arrives runs on {@link TaskExecutors#STREAM}, since the work on {@link TaskExecutors#IO} which makes the download waits for it. Work must never wait for other work on the same executor, since every thread could be waiting for work which is queued behind it. All threads are daemon threads, so they never keep the client running.
+ */
+@UtilityClass
+public class TaskExecutors {
+
+    /**
+     * The maximum number of threads doing blocking work at once. Work beyond this is queued.
+     */
+    public static final int MAX_IO_THREADS = 32;
+
+    /**
+     * The executor for blocking work.
+     */
+    public static final ExecutorService IO = newPool("xpkg-io", MAX_IO_THREADS);
+
+    /**
+     * The executor for work which reads a download as it arrives, such as extracting it. It has as many threads as {@link TaskExecutors#IO}, so that every download running there can have its own.
+     */
+    public static final ExecutorService STREAM = newPool("xpkg-stream", MAX_IO_THREADS);
+
+    /**
+     * The executor for work which only uses the processor, with one thread for each processor.
+     */
+    public static final ExecutorService CPU = newPool("xpkg-cpu", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Create a pool of daemon threads, which are only started when there is work for them, and stop after being idle for a while.
+     *
+     * @param name       The prefix of the names of the threads.
+     * @param maxThreads The maximum number of threads, more work than this is queued until a thread is free.
+     * @return The new pool.
+     */
+    public ExecutorService newPool(String name, int maxThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Run a task on an executor. If the task throws, the returned future completes exceptionally with the exception that was thrown, not wrapped. Cancelling the returned future interrupts the task if it is running, and stops it from starting if it is queued.
+     *
+     * @param task     The task to run.
+     * @param executor The executor to run the task on.
+     * @param <T>      The type of the result of the task.
+     * @return A future which completes with the result of the task.
+     */
+    public <T> CompletableFuture<T> submit(@NotNull Callable<T> task, @NotNull ExecutorService executor) {
+        InterruptibleFuture<T> future = new InterruptibleFuture<>();
+        future.setTask(executor.submit(() -> {
+            if (future.isDone())
+                return;
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }));
+        return future;
+    }
+
+    /**
+     * Run a task on an executor, which does not have a result.
+     *
+     * @param task     The task to run.
+     * @param executor The executor to run the task on.
+     * @return A future which completes when the task has finished.
+     * @see TaskExecutors#submit(Callable, ExecutorService)
+     */
+    public CompletableFuture<Void> run(@NotNull Runnable task, @NotNull ExecutorService executor) {
+        return submit(() -> {
+            task.run();
+            return null;
+        }, executor);
+    }
+
+    /**
+     * A future which interrupts the task computing it when it is cancelled.
+     *
+     * @param <T> The type of the result.
+     */
+    private static final class InterruptibleFuture<T> extends CompletableFuture<T> {
+
+        private volatile Future<?> task;
+
+        /**
+         * Set the task computing this future, and cancel it immediately if this future was cancelled before the task was set.
+         *
+         * @param task The task computing this future.
+         */
+        private void setTask(Future<?> task) {
+            this.task = task;
+            if (isCancelled())
+                task.cancel(true);
+        }
+
+        /**
+         * Cancel this future, and interrupt the task computing it.
+         *
+         * @param mayInterruptIfRunning Ignored, the task is always interrupted.
+         * @return True if this future is now cancelled.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Future<?> currentTask = task;
+            if (cancelled && currentTask != null)
+                currentTask.cancel(true);
+            return cancelled;
+        }
+    }
+}
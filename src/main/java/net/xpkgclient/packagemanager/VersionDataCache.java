@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import lombok.experimental.UtilityClass;
+import net.xpkgclient.Configuration;
+import net.xpkgclient.versioning.Version;
+import org.apache.commons.codec.binary.Hex;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * A two-level cache of the data for package versions. The data of a published version never changes, so once it has been retrieved it is kept in memory, and stored on disk in {@code xpkg/cache/meta} of the X-Plane installation so that it does not need to be retrieved again after a restart. Data is kept apart for each registry, so that changing the registry never returns the data of another one. Data is only removed when it is explicitly invalidated, for instance if the version is no longer published. Safe to use from multiple threads.
+ */
+@UtilityClass
+public class VersionDataCache {
+
+    /**
+     * The maximum number of versions to keep in memory. The least recently used version is removed from memory (but not from disk) when the cache is full.
+     */
+    public static final int MAX_MEMORY_ENTRIES = 2048;
+
+    // Package ids which are safe to use as part of a file name, anything else, such as "..", is only cached in memory
+    private static final Pattern SAFE_PACKAGE_ID = Pattern.compile("[a-zA-Z0-9][a-zA-Z0-9._-]*");
+
+    private final AtomicLong memoryHitCount = new AtomicLong();
+    private final AtomicLong diskHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    // Iterates in access order, so that the eldest entry is the least recently used one
+    private final Map<String, Remote.VersionData> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Remote.VersionData> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+
+    /**
+     * Get the cached data for a version of a package, from memory, or from disk if it is not in memory.
+     *
+     * @param packageId The id of the package.
+     * @param version   The version of the package.
+     * @return The cached data, or null if the data for the version is not cached.
+     */
+    public Remote.VersionData get(String packageId, @NotNull Version version) {
+        String key = key(packageId, version);
+        Remote.VersionData data;
+        synchronized (cache) {
+            data = cache.get(key);
+        }
+
+        if (data != null) {
+            memoryHitCount.incrementAndGet();
+            return data;
+        }
+
+        data = readFromDisk(packageId, version);
+        if (data == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        diskHitCount.incrementAndGet();
+        synchronized (cache) {
+            cache.put(key, data);
+        }
+        return data;
+    }
+
+    /**
+     * Cache the data for a version of a package, in memory and on disk. Data for versions which are not published is not cached, since the version may be published later.
+     *
+     * @param packageId The id of the package.
+     * @param version   The version of the package.
+     * @param data      The data for the version.
+     */
+    public void put(String packageId, @NotNull Version version, @NotNull Remote.VersionData data) {
+        if (data.loc().equalsIgnoreCase("NOT_PUBLISHED"))
+            return;
+
+        synchronized (cache) {
+            cache.put(key(packageId, version), data);
+        }
+        writeToDisk(packageId, version, data);
+    }
+
+    /**
+     * Remove the data for a version of a package from memory and from disk, so that it is retrieved from the server the next time it is needed.
+     *
+     * @param packageId The id of the package.
+     * @param version   The version of the package.
+     */
+    public void invalidate(String packageId, @NotNull Version version) {
+        synchronized (cache) {
+            cache.remove(key(packageId, version));
+        }
+
+        File file = getCacheFile(packageId, version);
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                throw new RuntimeException("Could not remove the cached data for %s@%s".formatted(packageId, version), e);
+            }
+        }
+    }
+
+    /**
+     * Get the number of lookups which found the data in memory.
+     *
+     * @return The number of memory hits since the program started, or since the cache was last cleared.
+     */
+    public long getMemoryHitCount() {
+        return memoryHitCount.get();
+    }
+
+    /**
+     * Get the number of lookups which found the data on disk, but not in memory.
+     *
+     * @return The number of disk hits since the program started, or since the cache was last cleared.
+     */
+    public long getDiskHitCount() {
+        return diskHitCount.get();
+    }
+
+    /**
+     * Get the number of lookups which did not find the data in memory or on disk.
+     *
+     * @return The number of cache misses since the program started, or since the cache was last cleared.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Remove all data from memory, and reset the hit and miss counts. Data on disk is kept.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        memoryHitCount.set(0);
+        diskHitCount.set(0);
+        missCount.set(0);
+    }
+
+    /**
+     * Get the key of a version of a package in the memory cache.
+     *
+     * @param packageId The id of the package.
+     * @param version   The version of the package.
+     * @return The key of the version, which includes the configured registry.
+     */
+    private String key(String packageId, @NotNull Version version) {
+        return Configuration.getRegistryUrl() + ' ' + packageId + '@' + version;
+    }
+
+    /**
+     * Get the name of the directory the data from the configured registry is stored in.
+     *
+     * @return The start of the SHA-256 hash of the registry URL, as a hex string, which is safe to use as a file name no matter what the URL is.
+     */
+    @SneakyThrows(NoSuchAlgorithmException.class)
+    private String getRegistryDirName() {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(Configuration.getRegistryUrl().getBytes(StandardCharsets.UTF_8));
+        return Hex.encodeHexString(hash).substring(0, 16);
+    }
+
+    /**
+     * Get the file which stores the data for a version of a package.
+     *
+     * @param packageId The id of the package.
+     * @param version   The version of the package.
+     * @return The file which stores the data of the version, or null if there is no X-Plane installation configured, or if the package id can not be used in a file name.
+     */
+    private File getCacheFile(String packageId, @NotNull Version version) {
+        File xpPath = Configuration.getXpPath();
+        if (xpPath == null || !Configuration.hasConfiguredXPInstallation() || !SAFE_PACKAGE_ID.matcher(packageId).matches())
+            return null;
+        return Path.of(xpPath.getAbsolutePath(), "xpkg", "cache", "meta", getRegistryDirName(), packageId, version + ".json").toFile();
+    }
+
+    /**
+     * Read the data for a version of a package from disk. An unreadable file is treated as if it does not exist.
+     *
+     * @param packageId The id of the package.
+     * @param version   The version of the package.
+     * @return The data read from disk, or null if it is not stored on disk.
+     */
+    private Remote.VersionData readFromDisk(String packageId, @NotNull Version version) {
+        File file = getCacheFile(packageId, version);
+        if (file == null || !file.exists())
+            return null;
+
+        try {
+            return Remote.toVersionData(new JSONObject(Files.readString(file.toPath(), StandardCharsets.UTF_8)));
+        } catch (IOException | JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the data for a version of a package to disk. The data is written to a temporary file first, so that a partially written file is never read. Failing to write is ignored, since the data can always be retrieved again.
+     *
+     * @param packageId The id of the package.
+     * @param version   The version of the package.
+     * @param data      The data to write.
+     */
+    private void writeToDisk(String packageId, @NotNull Version version, Remote.@NotNull VersionData data) {
+        File file = getCacheFile(packageId, version);
+        if (file == null)
+            return;
+
+        JSONObject obj = new JSONObject();
+        obj.put("loc", data.loc());
+        obj.put("hash", data.hash());
+        obj.put("dependencies", new JSONArray(data.dependencies()));
+        obj.put("incompatibilities", new JSONArray(data.incompatibilities()));
+
+        try {
+            Path dir = file.getParentFile().toPath();
+            Files.createDirectories(dir);
+            Path tmpFile = Files.createTempFile(dir, "meta-", ".tmp");
+            Files.writeString(tmpFile, obj.toString(), StandardCharsets.UTF_8);
+            try {
+                Files.move(tmpFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.deleteIfExists(tmpFile);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
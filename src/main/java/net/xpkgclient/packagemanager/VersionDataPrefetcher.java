@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.Getter;
+import net.xpkgclient.versioning.Version;
+import net.xpkgclient.versioning.VersionSelectCache;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Speculatively fetches the data for the versions that resolving a package is likely to need, while the resolver is still working. Starting from the package being resolved, the dependencies are walked breadth-first, and the newest version of each dependency which satisfies the first selection seen for it is fetched, with the versions found while other requests are in progress batched together. The resolver gets its data through {@link VersionDataPrefetcher#getVersionData(String, Version)}, which waits for a prefetch in progress instead of requesting the same data again.
+ */
+public final class VersionDataPrefetcher {
+
+    /**
+     * The maximum number of versions to request in a single batch request.
+     */
+    public static final int MAX_BATCH_SIZE = 100;
+
+    private final int maxDepth;
+    private final int maxConcurrency;
+
+    // Packages which will not be fetched, because they are already installed, or have already been visited
+    private final Set<String> visitedPackageIds = ConcurrentHashMap.newKeySet();
+
+    // The data of every version that has been prefetched or is being prefetched, indexed by "packageId@version"
+    private final Map<String, CompletableFuture<Remote.VersionData>> prefetches = new ConcurrentHashMap<>();
+    private final Set<String> usedKeys = ConcurrentHashMap.newKeySet();
+
+    // The package versions which have been found but not requested yet, in the order they were found
+    private final Queue<PendingFetch> queue = new ArrayDeque<>();
+    private int inFlightCount = 0;
+
+    private volatile boolean cancelled = false;
+
+    private final AtomicLong fetchCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * The number of prefetched versions which were never used by the resolver. Only counted once the prefetcher is cancelled.
+     *
+     * @return The number of prefetched versions which were never used by the resolver.
+     */
+    @Getter
+    private long wastedCount;
+
+    /**
+     * Create a new prefetcher.
+     *
+     * @param maxDepth           The maximum number of levels of dependencies to fetch, not counting the package being resolved.
+     * @param maxConcurrency     The maximum number of requests to make at once.
+     * @param excludedPackageIds The ids of the packages not to fetch, such as the packages which are already installed.
+     */
+    public VersionDataPrefetcher(int maxDepth, int maxConcurrency, @NotNull Collection<String> excludedPackageIds) {
+        if (maxConcurrency < 1)
+            throw new IllegalArgumentException("Prefetch concurrency must be at least 1");
+
+        this.maxDepth = maxDepth;
+        this.maxConcurrency = maxConcurrency;
+        visitedPackageIds.addAll(excludedPackageIds);
+    }
+
+    /**
+     * Start prefetching in the background, from a package which is being resolved.
+     *
+     * @param packageId      The id of the package which is being resolved.
+     * @param packageVersion The version of the package which is being resolved.
+     */
+    public void start(String packageId, Version packageVersion) {
+        visitedPackageIds.add(packageId);
+        enqueue(new PackageNode(packageId, packageVersion), 0);
+        dispatch();
+    }
+
+    /**
+     * Get the data for a version of a package, from a prefetch if the version was prefetched, or from {@link Remote#getVersionData(String, Version)} otherwise. Blocks until the data is available.
+     *
+     * @param packageId The id of the package to get the version data of.
+     * @param version   The version of the package to get the version data of.
+     * @return The data for the package version.
+     */
+    public Remote.VersionData getVersionData(String packageId, @NotNull Version version) {
+        String key = key(packageId, version);
+        CompletableFuture<Remote.VersionData> prefetch = prefetches.get(key);
+        if (prefetch != null) {
+            try {
+                Remote.VersionData data = prefetch.join();
+                if (usedKeys.add(key))
+                    hitCount.incrementAndGet();
+                return data;
+            } catch (CompletionException | CancellationException ignored) {
+                // Request it again below, so that the resolver gets the actual error
+            }
+        }
+        return Remote.getVersionData(packageId, version);
+    }
+
+    /**
+     * Stop prefetching, and count the prefetched versions which were never used. Requests already sent are not aborted, but their results are ignored, and no more requests are made.
+     */
+    public void cancel() {
+        if (cancelled)
+            return;
+        cancelled = true;
+
+        long wasted = 0;
+        for (Map.Entry<String, CompletableFuture<Remote.VersionData>> prefetch : prefetches.entrySet()) {
+            CompletableFuture<Remote.VersionData> future = prefetch.getValue();
+            future.cancel(false);
+            if (!future.isCompletedExceptionally() && !usedKeys.contains(prefetch.getKey()))
+                ++wasted;
+        }
+        wastedCount = wasted;
+    }
+
+    /**
+     * Get the number of versions whose data has been prefetched.
+     *
+     * @return The number of versions whose data has been prefetched successfully.
+     */
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    /**
+     * Get the number of versions which the resolver got from a prefetch, rather than having to request them itself.
+     *
+     * @return The number of prefetch hits.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Queue a package version to be fetched.
+     *
+     * @param node  The package version to fetch.
+     * @param depth The depth of the package version, where the package being resolved is at depth 0.
+     */
+    private void enqueue(@NotNull PackageNode node, int depth) {
+        CompletableFuture<Remote.VersionData> future = new CompletableFuture<>();
+        prefetches.put(key(node.getPackageId(), node.getVersion()), future);
+        synchronized (queue) {
+            queue.add(new PendingFetch(node, future, depth));
+        }
+    }
+
+    /**
+     * Send requests for the queued package versions, as long as there are fewer requests in progress than the concurrency limit. Each request is a batch of as many queued versions as possible if the registry supports batch requests, or a single version otherwise.
+     */
+    private void dispatch() {
+        int chunkSize = Remote.isBatchSupported() ? MAX_BATCH_SIZE : 1;
+        List<List<PendingFetch>> chunks = new ArrayList<>();
+        synchronized (queue) {
+            while (!cancelled && inFlightCount < maxConcurrency && !queue.isEmpty()) {
+                List<PendingFetch> chunk = new ArrayList<>(Math.min(chunkSize, queue.size()));
+                while (chunk.size() < chunkSize && !queue.isEmpty())
+                    chunk.add(queue.poll());
+                chunks.add(chunk);
+                ++inFlightCount;
+            }
+        }
+
+        for (List<PendingFetch> chunk : chunks)
+            fetch(chunk);
+    }
+
+    /**
+     * Fetch the data of some package versions. Once it has been fetched, the dependencies of the versions are queued before their futures are completed, so that when the resolver gets to a dependency, it is already being prefetched, or queued to be.
+     *
+     * @param chunk The package versions to fetch.
+     */
+    private void fetch(@NotNull List<PendingFetch> chunk) {
+        List<PackageNode> nodes = new ArrayList<>(chunk.size());
+        for (PendingFetch pending : chunk)
+            nodes.add(pending.node());
+
+        Remote.fetchVersionData(nodes).whenComplete((data, e) -> {
+            try {
+                for (int i = 0; i < chunk.size(); ++i) {
+                    PendingFetch pending = chunk.get(i);
+                    if (e != null) {
+                        pending.future().completeExceptionally(e);
+                        continue;
+                    }
+
+                    // Every future has to complete, since the resolver waits for them without a timeout
+                    try {
+                        if (pending.depth() < maxDepth)
+                            enqueueDependencies(data.get(i), pending.depth() + 1);
+                        if (pending.future().complete(data.get(i)))
+                            fetchCount.incrementAndGet();
+                    } catch (Throwable itemError) {
+                        pending.future().completeExceptionally(itemError);
+                    }
+                }
+            } finally {
+                synchronized (queue) {
+                    --inFlightCount;
+                }
+                dispatch();
+            }
+        });
+    }
+
+    /**
+     * Queue the newest candidate version of each dependency of a package version which has not been visited yet.
+     *
+     * @param data  The data of the package version.
+     * @param depth The depth of the dependencies.
+     */
+    private void enqueueDependencies(Remote.@NotNull VersionData data, int depth) {
+        for (String[] dependency : data.dependencies()) {
+            if (cancelled)
+                return;
+
+            String dependencyId = dependency[0];
+            if (!visitedPackageIds.add(dependencyId))
+                continue;
+
+            Package dependencyPkg = Remote.getPackage(dependencyId);
+            if (dependencyPkg == null)
+                continue;
+
+            // A selection which can not be parsed is not prefetched, and the resolver reports it when it gets to it
+            BitSet candidates;
+            try {
+                candidates = dependencyPkg.getVersionMask(VersionSelectCache.get(dependency[1]));
+            } catch (RuntimeException e) {
+                continue;
+            }
+            if (!candidates.isEmpty())
+                enqueue(new PackageNode(dependencyId, dependencyPkg.getVersions()[candidates.length() - 1]), depth);
+        }
+    }
+
+    /**
+     * Get the key of a version of a package.
+     *
+     * @param packageId The id of the package.
+     * @param version   The version of the package.
+     * @return The key of the version.
+     */
+    private static String key(String packageId, @NotNull Version version) {
+        return packageId + '@' + version;
+    }
+
+    /**
+     * A package version which is queued to be fetched, or is being fetched.
+     *
+     * @param node   The package version.
+     * @param future The future to complete with the data of the version.
+     * @param depth  The depth of the package version, where the package being resolved is at depth 0.
+     */
+    private record PendingFetch(PackageNode node, CompletableFuture<Remote.VersionData> future, int depth) {
+    }
+}
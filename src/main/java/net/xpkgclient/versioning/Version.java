@@ -16,24 +16,30 @@
 package net.xpkgclient.versioning;
 
 import lombok.Getter;
-import lombok.Setter;
-import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A class to compare different versions and version strings.
+ * An immutable version. Versions are never constructed directly, instead equal versions are all represented by a single shared instance, which is retrieved with {@link Version#of(int, int, int)}, {@link Version#parse(CharSequence)}, or similar.
  */
 public final class Version implements Comparable<Version>, Cloneable {
 
+    private static final long MAJOR_MULTIPLIER = 1_000_000_000_000_000L;
+    private static final long MINOR_MULTIPLIER = 1_000_000_000_000L;
+    private static final long PATCH_MULTIPLIER = 1_000_000_000L;
+
+    // Every version that has been created, indexed by its version number
+    private static final ConcurrentHashMap<Long, Version> interned = new ConcurrentHashMap<>();
+
     public static final Version MIN_VERSION;
     public static final Version MAX_VERSION;
 
     static {
         try {
-            MIN_VERSION = new Version(0, 0, 1, 'a', 1);
-            MAX_VERSION = new Version(999, 999, 999);
+            MIN_VERSION = of(0, 0, 1, 'a', 1);
+            MAX_VERSION = of(999, 999, 999);
         } catch (InvalidVersionException e) {
             throw new IllegalStateException(e);
         }
@@ -42,32 +48,26 @@ public final class Version implements Comparable<Version>, Cloneable {
     /**
      * The major number of this version.
      *
-     * @param major The new major of this version.
      * @return The major number of this version.
      */
     @Getter
-    @Setter
-    private int major;
+    private final int major;
 
     /**
      * The minor number of this version.
      *
-     * @param minor The new minor version number
      * @return The minor number of this version.
      */
     @Getter
-    @Setter
-    private int minor = 0;
+    private final int minor;
 
     /**
      * The patch number of this version.
      *
-     * @param patch The new patch number of this version.
      * @return The patch number of this version.
      */
     @Getter
-    @Setter
-    private int patch = 0;
+    private final int patch;
 
     /**
      * This char is 'a' if this is an alpha version, 'b' if it is a beta version, 'r' if it is a release-candidate, or null if it's a release version.
@@ -75,132 +75,107 @@ public final class Version implements Comparable<Version>, Cloneable {
      * @return A char which is 'a' if this is an alpha version, 'b' if it is a beta version, 'r' if it is a release-candidate, or null if it's a release version.
      */
     @Getter
-    private Character preReleaseType = null;
+    private final Character preReleaseType;
 
     /**
-     * Pre-release number. Null if {@code alphaOrBeta} is null.
+     * Pre-release number. Null if {@code preReleaseType} is null.
      *
-     * @return The pre-release number, or null if {@code alphaOrBeta} is null.
+     * @return The pre-release number, or null if {@code preReleaseType} is null.
      */
     @Getter
-    private Integer preReleaseVersion = null;
+    private final Integer preReleaseVersion;
 
     /**
-     * Parse a version string in the form of {@code major.minor.patch}.
+     * The number representation of this version, which orders versions the same way that they are compared, and which is unique to this version.
      *
-     * @param versionStr The string to parse.
-     * @throws InvalidVersionException Exception thrown if the version string is invalid.
+     * @return The number representation of this version.
      */
-    public Version(@NotNull String versionStr) throws InvalidVersionException {
-        versionStr = versionStr.toLowerCase();
-        if (versionStr.length() < 1 || versionStr.length() > 15)
-            throw new InvalidVersionException(versionStr);
-
-        String semanticPart = versionStr;
-
-        final boolean containsA = versionStr.contains("a");
-        final boolean containsB = versionStr.contains("b");
-        final boolean containsR = versionStr.contains("r");
-        if (containsA || containsB || containsR) {
-            if (containsA)
-                preReleaseType = 'a';
-            else if (containsB)
-                preReleaseType = 'b';
-            else
-                preReleaseType = 'r';
-
-            String[] parts = versionStr.split(String.valueOf(preReleaseType), -1);
-            if (parts.length != 2)
-                throw new InvalidVersionException(versionStr);
-
-            semanticPart = parts[0];
-            String preReleasePart = parts[1];
-
-            try {
-                preReleaseVersion = Integer.parseInt(preReleasePart, 10);
-            } catch (Throwable e) {
-                throw new InvalidVersionException(versionStr, e);
-            }
-        }
-
-        // Parse the semantic part
-        String[] partsStr = semanticPart.split("\\.", -1);
-        if (partsStr.length > 3 || partsStr.length == 0)
-            throw new InvalidVersionException(versionStr);
-
-        for (final String part : partsStr) {
-            if (part.isBlank())
-                throw new InvalidVersionException(versionStr);
-        }
+    @Getter
+    private final long versionNum;
 
-        try {
-            major = Integer.parseInt(partsStr[0], 10);
-            if (partsStr.length > 1)
-                minor = Integer.parseInt(partsStr[1], 10);
-            if (partsStr.length > 2)
-                patch = Integer.parseInt(partsStr[2], 10);
-        } catch (Throwable e) {
-            throw new InvalidVersionException(versionStr, e);
-        }
-        checkVersionValidity(versionStr);
+    /**
+     * Create a new version. Only used by {@link Version#intern(int, int, int, Character, Integer)}, the values must already be checked.
+     *
+     * @param major             The major number of the version.
+     * @param minor             The minor number of the version.
+     * @param patch             The patch number of the version.
+     * @param preReleaseType    The type of pre-release, or null if it's a release version.
+     * @param preReleaseVersion The pre-release number, or null if it's a release version.
+     * @param versionNum        The number representation of the version.
+     */
+    private Version(int major, int minor, int patch, Character preReleaseType, Integer preReleaseVersion, long versionNum) {
+        this.major = major;
+        this.minor = minor;
+        this.patch = patch;
+        this.preReleaseType = preReleaseType;
+        this.preReleaseVersion = preReleaseVersion;
+        this.versionNum = versionNum;
     }
 
     /**
-     * Create a new version from only the major number, set the minor and patch numbers to zero.
+     * Get a version from only the major number, with the minor and patch numbers set to zero.
      *
      * @param major The major number of the version.
+     * @return The version.
      * @throws InvalidVersionException Exception thrown if the version is not valid.
      */
-    public Version(int major) throws InvalidVersionException {
-        this.major = major;
-        checkVersionValidity();
+    public static Version of(int major) throws InvalidVersionException {
+        return of(major, 0, 0);
     }
 
     /**
-     * Create a new version from the major and minor numbers, and set the patch number to zero.
+     * Get a version from the major and minor numbers, with the patch number set to zero.
      *
      * @param major The major number of the version.
      * @param minor The minor number of the version.
+     * @return The version.
      * @throws InvalidVersionException Exception thrown if the version is not valid.
      */
-    public Version(int major, int minor) throws InvalidVersionException {
-        this.major = major;
-        this.minor = minor;
-        checkVersionValidity();
+    public static Version of(int major, int minor) throws InvalidVersionException {
+        return of(major, minor, 0);
     }
 
     /**
-     * Create a new version from the major, minor, and patch numbers.
+     * Get a version from the major, minor, and patch numbers.
      *
      * @param major The major number of the version.
      * @param minor The minor number of the version.
      * @param patch The patch number of the version.
+     * @return The version.
      * @throws InvalidVersionException Exception thrown if the version is not valid.
      */
-    public Version(int major, int minor, int patch) throws InvalidVersionException {
-        this.major = major;
-        this.minor = minor;
-        this.patch = patch;
-        checkVersionValidity();
+    public static Version of(int major, int minor, int patch) throws InvalidVersionException {
+        if (!hasValidParts(major, minor, patch, null, null))
+            throw new InvalidVersionException("%d.%d.%d".formatted(major, minor, patch));
+        return intern(major, minor, patch, null, null);
     }
 
     /**
-     * Create a new pre-release version from the major, minor, and patch numbers.
+     * Get a pre-release version from the major, minor, and patch numbers.
      *
      * @param major          The major number of the version.
      * @param minor          The minor number of the version.
      * @param patch          The patch number of the version.
-     * @param preReleaseType The type of pre-release this is.
+     * @param preReleaseType The type of pre-release this is, 'a' for alpha, 'b' for beta, or 'r' for a release candidate.
      * @param preReleaseNum  The pre-release version.
+     * @return The version.
      * @throws InvalidVersionException Exception thrown if the version is not valid.
      */
-    public Version(int major, int minor, int patch, char preReleaseType, int preReleaseNum) throws InvalidVersionException {
-        this.major = major;
-        this.minor = minor;
-        this.patch = patch;
-        this.preReleaseType = preReleaseType;
-        this.preReleaseVersion = preReleaseNum;
-        checkVersionValidity();
+    public static Version of(int major, int minor, int patch, char preReleaseType, int preReleaseNum) throws InvalidVersionException {
+        if (!hasValidParts(major, minor, patch, preReleaseType, preReleaseNum))
+            throw new InvalidVersionException("%d.%d.%d%c%d".formatted(major, minor, patch, preReleaseType, preReleaseNum));
+        return intern(major, minor, patch, preReleaseType, preReleaseNum);
+    }
+
+    /**
+     * Parse a version string in the form of {@code major.minor.patch}, optionally followed by a pre-release.
+     *
+     * @param versionStr The string to parse.
+     * @return The parsed version.
+     * @throws InvalidVersionException Exception thrown if the version string is invalid.
+     */
+    public static Version parse(@NotNull CharSequence versionStr) throws InvalidVersionException {
+        return parse(versionStr, 0, versionStr.length());
     }
 
     /**
@@ -211,29 +186,219 @@ public final class Version implements Comparable<Version>, Cloneable {
      */
     public static Version fromString(String versionStr) {
         try {
-            return new Version(versionStr);
+            return parse(versionStr);
         } catch (Exception e) {
             return null;
         }
     }
 
     /**
-     * Turn {@code num} into a string and return as a 3-digit (character) string, prepending zeros.
+     * Parse a version out of a section of a character sequence, such as a buffer that JSON is being read from, without copying it into a new string first. Accepts up to three dot-separated numbers, optionally followed by a single pre-release character ('a', 'b', or 'r', in any case) and the pre-release number. The string is read in a single pass.
      *
-     * @param num The number to turn to a three-digit string.
-     * @return The number as a three-digit string.
+     * @param seq   The sequence that contains the version string.
+     * @param start The index of the first character of the version string (inclusive).
+     * @param end   The index after the last character of the version string (exclusive).
+     * @return The parsed version.
+     * @throws InvalidVersionException   Exception thrown if the version string is invalid.
+     * @throws IndexOutOfBoundsException Exception thrown if {@code start} or {@code end} are outside of {@code seq}.
      */
-    private static String toThreeDigits(int num) {
-        String numStr = String.valueOf(num);
+    public static Version parse(@NotNull CharSequence seq, int start, int end) throws InvalidVersionException {
+        Objects.checkFromToIndex(start, end, seq.length());
+
+        int len = end - start;
+        if (len < 1 || len > 15)
+            throw invalidVersion(seq, start, end);
+
+        int major = 0;
+        int minor = 0;
+        int patch = 0;
+        char preType = 0;
+        int preNum = 0;
+
+        // The semantic part that is currently being read, zero for major, one for minor, and two for patch
+        int part = 0;
+        int value = 0;
+        int digits = 0;
+
+        for (int i = start; i <= end; ++i) {
+            boolean atEnd = i == end;
+            char c = atEnd ? 0 : seq.charAt(i);
+            if (!atEnd && c >= '0' && c <= '9') {
+
+                // Anything above 999 is invalid, so stop accumulating before it can overflow
+                if (value <= 999)
+                    value = value * 10 + (c - '0');
+                ++digits;
+                continue;
+            }
 
-        if (numStr.length() == 1)
-            numStr = "00" + numStr;
-        else if (numStr.length() == 2)
-            numStr = "0" + numStr;
-        else if (numStr.length() != 3)
-            throw new UnsupportedOperationException("Can not convert an integer that is longer than three digits to a three-digit string.");
+            // Every separator (and the end of the string) must follow at least one digit
+            if (digits == 0)
+                throw invalidVersion(seq, start, end);
+
+            if (preType == 0) {
+                if (part == 0)
+                    major = value;
+                else if (part == 1)
+                    minor = value;
+                else
+                    patch = value;
+
+                if (c == '.' && part < 2 && !atEnd)
+                    ++part;
+                else if (c == 'a' || c == 'b' || c == 'r' || c == 'A' || c == 'B' || c == 'R')
+                    preType = Character.toLowerCase(c);
+                else if (!atEnd)
+                    throw invalidVersion(seq, start, end);
+            } else if (atEnd)
+                preNum = value;
+            else
+                throw invalidVersion(seq, start, end);
+
+            value = 0;
+            digits = 0;
+        }
+
+        if (preType == 0) {
+            if (!hasValidParts(major, minor, patch, null, null))
+                throw invalidVersion(seq, start, end);
+            return intern(major, minor, patch, null, null);
+        }
+
+        if (!hasValidParts(major, minor, patch, preType, preNum))
+            throw invalidVersion(seq, start, end);
+        return intern(major, minor, patch, preType, preNum);
+    }
 
-        return numStr;
+    /**
+     * Get the version with the given number representation, the inverse of {@link Version#getVersionNum()}.
+     *
+     * @param versionNum The number representation of a valid version.
+     * @return The version with the number representation.
+     */
+    static Version fromVersionNum(long versionNum) {
+        Version version = interned.get(versionNum);
+        if (version != null)
+            return version;
+
+        // Pre-releases are subtracted from the release, so round up to the release
+        long semverNum = (versionNum + PATCH_MULTIPLIER - 1) / PATCH_MULTIPLIER;
+        long preReleaseFloat = semverNum * PATCH_MULTIPLIER - versionNum;
+        int major = (int) (semverNum / 1_000_000L);
+        int minor = (int) (semverNum / 1_000L % 1_000L);
+        int patch = (int) (semverNum % 1_000L);
+
+        if (preReleaseFloat == 0)
+            return intern(major, minor, patch, null, null);
+        else if (preReleaseFloat >= 999_999_000L)
+            return intern(major, minor, patch, 'a', (int) (999 - (preReleaseFloat - 999_999_000L)));
+        else if (preReleaseFloat >= 999_000_999L)
+            return intern(major, minor, patch, 'b', (int) (999 - (preReleaseFloat - 999_000_999L) / 1_000L));
+        return intern(major, minor, patch, 'r', (int) (999 - (preReleaseFloat - 999_999L) / 1_000_000L));
+    }
+
+    /**
+     * Get the number representation of the smallest version which is greater than a version.
+     *
+     * @param versionNum The number representation of a valid version.
+     * @return The number representation of the next version, or {@link Long#MAX_VALUE} if {@code versionNum} is the number of {@link Version#MAX_VERSION}.
+     */
+    static long nextVersionNum(long versionNum) {
+        long semverNum = (versionNum + PATCH_MULTIPLIER - 1) / PATCH_MULTIPLIER;
+        long preReleaseFloat = semverNum * PATCH_MULTIPLIER - versionNum;
+
+        // The release is followed by the first alpha of the next patch, the semantic part carries since each number has three decimal digits
+        if (preReleaseFloat == 0)
+            return semverNum + 1 >= 1_000_000_000L ? Long.MAX_VALUE : (semverNum + 1) * PATCH_MULTIPLIER - 999_999_998L;
+
+        // The last alpha is followed by the first beta, and the last beta by the first release candidate, with the same step
+        if (preReleaseFloat >= 999_999_000L)
+            return versionNum + 1;
+        if (preReleaseFloat >= 999_000_999L)
+            return versionNum + 1_000L;
+
+        // The last release candidate is followed by the release
+        if (preReleaseFloat == 999_999L)
+            return semverNum * PATCH_MULTIPLIER;
+        return versionNum + 1_000_000L;
+    }
+
+    /**
+     * Get the number representation of the greatest version which is less than a version.
+     *
+     * @param versionNum The number representation of a valid version.
+     * @return The number representation of the previous version, or {@link Long#MIN_VALUE} if {@code versionNum} is the number of {@link Version#MIN_VERSION}.
+     */
+    static long previousVersionNum(long versionNum) {
+        long semverNum = (versionNum + PATCH_MULTIPLIER - 1) / PATCH_MULTIPLIER;
+        long preReleaseFloat = semverNum * PATCH_MULTIPLIER - versionNum;
+
+        // The release is preceded by the last release candidate
+        if (preReleaseFloat == 0)
+            return versionNum - 999_999L;
+
+        // The first alpha is preceded by the release of the previous patch
+        if (preReleaseFloat == 999_999_998L)
+            return semverNum - 1 <= 0 ? Long.MIN_VALUE : (semverNum - 1) * PATCH_MULTIPLIER;
+        if (preReleaseFloat >= 999_999_000L)
+            return versionNum - 1;
+
+        // The first beta is preceded by the last alpha, and the first release candidate by the last beta
+        if (preReleaseFloat == 999_998_999L)
+            return versionNum - 1;
+        if (preReleaseFloat >= 999_000_999L)
+            return versionNum - 1_000L;
+        if (preReleaseFloat == 998_999_999L)
+            return versionNum - 1_000L;
+        return versionNum - 1_000_000L;
+    }
+
+    /**
+     * Get the shared instance of a version, and create it if it does not exist yet.
+     *
+     * @param major             The major number of the version.
+     * @param minor             The minor number of the version.
+     * @param patch             The patch number of the version.
+     * @param preReleaseType    The type of pre-release, or null if it's a release version.
+     * @param preReleaseVersion The pre-release number, or null if it's a release version.
+     * @return The shared instance of the version.
+     */
+    private static Version intern(int major, int minor, int patch, Character preReleaseType, Integer preReleaseVersion) {
+        long versionNum = computeVersionNum(major, minor, patch, preReleaseType, preReleaseVersion);
+        Version version = interned.get(versionNum);
+        if (version != null)
+            return version;
+
+        version = new Version(major, minor, patch, preReleaseType, preReleaseVersion, versionNum);
+        Version existing = interned.putIfAbsent(versionNum, version);
+        return existing == null ? version : existing;
+    }
+
+    /**
+     * Compute the number representation of a version. Each of the major, minor, and patch numbers take up three decimal digits, followed by nine digits which are subtracted from for pre-releases, so that alpha versions are less than beta versions, which are less than release candidates, which are less than the release.
+     *
+     * @param major             The major number of the version.
+     * @param minor             The minor number of the version.
+     * @param patch             The patch number of the version.
+     * @param preReleaseType    The type of pre-release, or null if it's a release version.
+     * @param preReleaseVersion The pre-release number, or null if it's a release version.
+     * @return The number representation of the version.
+     */
+    private static long computeVersionNum(int major, int minor, int patch, Character preReleaseType, Integer preReleaseVersion) {
+        long semverNum = major * MAJOR_MULTIPLIER + minor * MINOR_MULTIPLIER + patch * PATCH_MULTIPLIER;
+        if (preReleaseType == null)
+            return semverNum;
+
+        long preReleaseNum = 999 - preReleaseVersion;
+        long preReleaseFloat;
+        if (preReleaseType == 'a')
+            preReleaseFloat = 999_999_000L + preReleaseNum;
+        else if (preReleaseType == 'b')
+            preReleaseFloat = 999_000_999L + preReleaseNum * 1_000L;
+        else
+            preReleaseFloat = preReleaseNum * 1_000_000L + 999_999L;
+
+        return semverNum - preReleaseFloat;
     }
 
     /**
@@ -263,27 +428,15 @@ public final class Version implements Comparable<Version>, Cloneable {
     }
 
     /**
-     * Set the new alpha or beta version. Use 'a' for alpha, 'b' for beta, 'r' for a release candidate, or null if it's a release version. Sets {@link Version#preReleaseVersion} to 1 if it is zero or not set.
+     * Create the exception for an invalid version string in a section of a character sequence.
      *
-     * @param preReleaseType The new alpha or beta version.
+     * @param seq   The sequence that contains the version string.
+     * @param start The index of the first character of the version string (inclusive).
+     * @param end   The index after the last character of the version string (exclusive).
+     * @return The exception to throw.
      */
-    public void setPreReleaseType(Character preReleaseType) throws InvalidVersionException {
-        if (preReleaseType != null && preReleaseType != 'a' && preReleaseType != 'b' && preReleaseType != 'r')
-            throw new InvalidVersionException("Alpha or beta version must be set by either \"a\", \"b\", \"r\", or must be null, not \"%c\"".formatted(preReleaseType));
-
-        this.preReleaseType = preReleaseType;
-        if (this.preReleaseVersion == null || this.preReleaseVersion == 0)
-            this.preReleaseVersion = 1;
-    }
-
-    /**
-     * Change the pre-release number. Only updated if {@link Version#preReleaseType} is set.
-     *
-     * @param preReleaseVersion The new pre-release version number.
-     */
-    private void setPreReleaseVersion(Integer preReleaseVersion) {
-        if (isPreRelease())
-            this.preReleaseVersion = preReleaseVersion;
+    private static InvalidVersionException invalidVersion(CharSequence seq, int start, int end) {
+        return new InvalidVersionException(seq.subSequence(start, end).toString().toLowerCase());
     }
 
     /**
@@ -296,30 +449,24 @@ public final class Version implements Comparable<Version>, Cloneable {
     }
 
     /**
-     * Check to make sure that a version is valid, which means that the major minor and version numbers are greater than or equal zero, and that all three of them do not equal zero. Create a new version string for the exception if it is not.
-     *
-     * @throws InvalidVersionException Exception thrown if this version is not valid.
-     */
-    private void checkVersionValidity() throws InvalidVersionException {
-        checkVersionValidity(null);
-    }
-
-    /**
-     * Check to make sure that a version is valid, which means that the major minor and version numbers are greater than or equal zero, and that all three of them do not equal zero. Use the provided version string for the exception if it is not. If the provided version string is null, create a new one for the exception.
+     * Check to make sure that a version is valid, which means that the major, minor, and patch numbers are between zero and 999 and that all three of them do not equal zero, that the pre-release type is either 'a', 'b', or 'r', and that the pre-release number is between one and 999.
      *
-     * @param v The version string that was provided at creation.
-     * @throws InvalidVersionException Exception thrown if this version is not valid.
+     * @param major             The major number of the version.
+     * @param minor             The minor number of the version.
+     * @param patch             The patch number of the version.
+     * @param preReleaseType    The type of pre-release, or null if it's a release version.
+     * @param preReleaseVersion The pre-release number, or null if it's a release version.
+     * @return True if the version is valid.
      */
-    private void checkVersionValidity(String v) throws InvalidVersionException {
-        if (major < 0 ||
-                minor < 0 ||
-                patch < 0 ||
-                major > 999 ||
-                minor > 999 ||
-                patch > 999 ||
-                (major | minor | patch) == 0 ||
-                (isPreRelease() && (preReleaseVersion > 999 || preReleaseVersion < 1)))
-            throw new InvalidVersionException(v == null ? toString() : v);
+    private static boolean hasValidParts(int major, int minor, int patch, Character preReleaseType, Integer preReleaseVersion) {
+        return major >= 0 &&
+                minor >= 0 &&
+                patch >= 0 &&
+                major <= 999 &&
+                minor <= 999 &&
+                patch <= 999 &&
+                (major | minor | patch) != 0 &&
+                (preReleaseType == null || ((preReleaseType == 'a' || preReleaseType == 'b' || preReleaseType == 'r') && preReleaseVersion <= 999 && preReleaseVersion >= 1));
     }
 
     /**
@@ -338,23 +485,13 @@ public final class Version implements Comparable<Version>, Cloneable {
      * Check if two versions are equal.
      *
      * @param o The reference object with which to compare.
-     * @return True if the two versions have the same major minor and patch numbers.
+     * @return True if the two versions have the same number representation, which (since versions are shared) is only the case if they are the same object.
      */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        Version version = (Version) o;
-
-        if (preReleaseType != null &&
-                (!preReleaseType.equals(version.preReleaseType) ||
-                        !preReleaseVersion.equals(version.preReleaseVersion))) {
-            return false;
-        }
-
-        return major == version.major &&
-                minor == version.minor &&
-                patch == version.patch;
+        return versionNum == ((Version) o).versionNum;
     }
 
     /**
@@ -364,52 +501,17 @@ public final class Version implements Comparable<Version>, Cloneable {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(major, minor, patch, preReleaseType, preReleaseVersion);
+        return Long.hashCode(versionNum);
     }
 
     /**
-     * Create a copy of this version.
+     * Since versions are immutable and shared, this returns this version.
      *
-     * @return A copy of this version.
+     * @return This version.
      */
     @Override
-    @SneakyThrows({CloneNotSupportedException.class, InvalidVersionException.class})
     public Version clone() {
-        Version clone = (Version) super.clone();
-        clone.setMajor(major);
-        clone.setMinor(minor);
-        clone.setPatch(patch);
-        if (isPreRelease()) {
-            clone.setPreReleaseType(preReleaseType);
-            clone.setPreReleaseVersion(preReleaseVersion);
-        }
-        return clone;
-    }
-
-    /**
-     * Compute and retrieve the number representation of this version.
-     *
-     * @return The number representation of this version.
-     */
-    public long getVersionNum() {
-        String longStr = "%s%s%s000000000".formatted(major, toThreeDigits(minor), toThreeDigits(patch));
-
-        long semverNum = Long.parseLong(longStr);
-        if (!isPreRelease()) {
-            return semverNum;
-        }
-
-        int preReleaseNum = 999 - preReleaseVersion;
-        String preReleaseFloatStr;
-        if (preReleaseType == 'a')
-            preReleaseFloatStr = "999999%s".formatted(toThreeDigits(preReleaseNum));
-        else if (preReleaseType == 'b')
-            preReleaseFloatStr = "999%s999".formatted(toThreeDigits(preReleaseNum));
-        else
-            preReleaseFloatStr = "%s999999".formatted(toThreeDigits(preReleaseNum));
-
-        long preReleaseFloat = Long.parseLong(preReleaseFloatStr);
-        return semverNum - preReleaseFloat;
+        return this;
     }
 
     /**
@@ -420,6 +522,6 @@ public final class Version implements Comparable<Version>, Cloneable {
      */
     @Override
     public int compareTo(@NotNull Version other) {
-        return Long.compare(getVersionNum(), other.getVersionNum());
+        return Long.compare(versionNum, other.versionNum);
     }
 }
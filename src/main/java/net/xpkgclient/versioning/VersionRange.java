@@ -19,6 +19,9 @@ import lombok.Getter;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -100,28 +103,31 @@ public final class VersionRange implements Comparable<VersionRange>, Cloneable {
     }
 
     /**
-     * Simplify the list of ranges.
+     * Simplify a list of ranges by merging all ranges that overlap, or that touch (where there is no version between the maximum of one range and the minimum of the next). The ranges do not need to be sorted.
      *
-     * @param ranges The ranges to simplify.
-     * @return A new deep copy of the ranges simplified.
+     * @param ranges The ranges to simplify. Not modified.
+     * @return A new list of new ranges, sorted by their minimum versions, where no two ranges overlap or touch.
      */
     public static List<VersionRange> simplify(List<VersionRange> ranges) {
-
-        // Create a deep copy of the list
-        ranges = deepCopy(ranges);
-
-        int curr = 0;
-        while (ranges.size() > 1 && curr < ranges.size() - 1) {
-            VersionRange r = VersionRange.tryMerge(ranges.get(curr), ranges.get(curr + 1));
-            if (r == null)
-                ++curr;
-            else {
-                ranges.set(curr, r);
-                ranges.remove(curr + 1);
+        VersionRange[] sorted = ranges.toArray(VersionRange[]::new);
+        Arrays.sort(sorted, Comparator.comparingLong(VersionRange::getMinVersionNum));
+
+        List<VersionRange> simplified = new ArrayList<>();
+        int i = 0;
+        while (i < sorted.length) {
+            VersionRange first = sorted[i];
+            VersionRange last = first;
+
+            // Keep extending the range while the next one starts before the version after the current maximum
+            for (++i; i < sorted.length && sorted[i].minVersionNum <= Version.nextVersionNum(last.maxVersionNum); ++i) {
+                if (sorted[i].maxVersionNum > last.maxVersionNum)
+                    last = sorted[i];
             }
+
+            simplified.add(new VersionRange(first.minVersion, last.maxVersion));
         }
 
-        return ranges;
+        return simplified;
     }
 
     /**
@@ -225,8 +231,8 @@ public final class VersionRange implements Comparable<VersionRange>, Cloneable {
     @SneakyThrows(CloneNotSupportedException.class)
     public VersionRange clone() {
         VersionRange clone = (VersionRange) super.clone();
-        clone.setMin(minVersion.clone());
-        clone.setMax(maxVersion.clone());
+        clone.setMin(minVersion);
+        clone.setMax(maxVersion);
         return clone;
     }
 }
\ No newline at end of file
@@ -20,14 +20,16 @@ import lombok.SneakyThrows;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.List;
 
 /**
- * This class can parse a version select string and determine if a version is within its selection.
+ * This class can parse a version select string and determine if a version is within its selection. The selection is stored as two parallel arrays of the minimum and maximum version numbers of each of its ranges, which are sorted and do not overlap, so that checking if a version is within the selection is a binary search.
  */
 public class VersionSelect implements Cloneable {
 
+    private static final long[] NO_RANGES = new long[0];
+
     /**
      * Check if the provided version selection string was valid.
      *
@@ -35,7 +37,12 @@ public class VersionSelect implements Cloneable {
      */
     @Getter
     private boolean isValid = true;
-    private List<VersionRange> ranges = new ArrayList<>();
+
+    // The version numbers of the minimum version of each range, sorted, where the range at index i has a maximum of maxVersionNums[i]
+    private long[] minVersionNums;
+
+    // The version numbers of the maximum version of each range, sorted, where no range overlaps with the next one
+    private long[] maxVersionNums;
 
     /**
      * Create a new selection checker from a string.
@@ -44,13 +51,14 @@ public class VersionSelect implements Cloneable {
      */
     public VersionSelect(String selectionStr) {
         String[] selectionSections = selectionStr.split(",");
+        long[] mins = new long[selectionSections.length];
+        long[] maxes = new long[selectionSections.length];
+        int rangeCount = 0;
 
         try {
             for (String selection : selectionSections) {
-                VersionRange range = new VersionRange(
-                        Version.MIN_VERSION,
-                        Version.MAX_VERSION
-                );
+                long min = Version.MIN_VERSION.getVersionNum();
+                long max = Version.MAX_VERSION.getVersionNum();
 
                 selection = selection.trim();
 
@@ -58,29 +66,31 @@ public class VersionSelect implements Cloneable {
 
                 if (versionParts.length == 1) {
                     if (selection.equals("*")) {
-                        ranges = Collections.singletonList(range);
+                        mins[0] = min;
+                        maxes[0] = max;
+                        rangeCount = 1;
                         break;
                     }
 
                     String version = versionParts[0].trim();
 
-                    Version minVersion = new Version(version);
-                    Version maxVersion = minVersion.clone();
+                    Version minVersion = Version.parse(version);
+                    Version maxVersion = minVersion;
 
                     if (!minVersion.isPreRelease()) {
                         String[] singleVersionParts = version.split("\\.");
 
-                        if (singleVersionParts.length == 1)
-                            maxVersion.setMinor(999);
-
-                        if (singleVersionParts.length <= 2)
-                            maxVersion.setPatch(999);
-
-                        if (singleVersionParts.length <= 3)
-                            minVersion.setPreReleaseType('a');
+                        maxVersion = Version.of(
+                                minVersion.getMajor(),
+                                singleVersionParts.length == 1 ? 999 : minVersion.getMinor(),
+                                singleVersionParts.length <= 2 ? 999 : minVersion.getPatch()
+                        );
+                        minVersion = Version.of(minVersion.getMajor(), minVersion.getMinor(), minVersion.getPatch(), 'a', 1);
                     }
 
-                    ranges.add(new VersionRange(minVersion, maxVersion));
+                    mins[rangeCount] = minVersion.getVersionNum();
+                    maxes[rangeCount] = maxVersion.getVersionNum();
+                    ++rangeCount;
                     continue;
                 } else if (versionParts.length != 2) {
                     isValid = false;
@@ -104,9 +114,9 @@ public class VersionSelect implements Cloneable {
 
                     // Since (for instance) 1 really means everything from 1.0.0a1 and up, we can use this hack
                     if (!lowerVersion.isPreRelease())
-                        lowerVersion = new Version(lowerVersionStr + "a1");
+                        lowerVersion = Version.of(lowerVersion.getMajor(), lowerVersion.getMinor(), lowerVersion.getPatch(), 'a', 1);
 
-                    range.setMin(lowerVersion);
+                    min = lowerVersion.getVersionNum();
                 }
 
                 if (hasUpper) {
@@ -114,40 +124,81 @@ public class VersionSelect implements Cloneable {
                     // Similarly, since (for instance) 2 really means everything up to 2.999.999, we can use this hack
                     int partLen = upperVersionStr.split("\\.").length;
 
-                    boolean hasPre = upperVersionStr.contains("a") || upperVersionStr.contains("b") || upperVersionStr.contains("r");
-
-                    if (!hasPre) {
-                        if (partLen < 2)
-                            upperVersion.setMinor(999);
-                        if (partLen < 3)
-                            upperVersion.setPatch(999);
+                    if (!upperVersion.isPreRelease()) {
+                        upperVersion = Version.of(
+                                upperVersion.getMajor(),
+                                partLen < 2 ? 999 : upperVersion.getMinor(),
+                                partLen < 3 ? 999 : upperVersion.getPatch()
+                        );
                     }
-                    range.setMax(upperVersion);
+                    max = upperVersion.getVersionNum();
                 }
 
-                if (range.getMinVersionNum() > range.getMaxVersionNum()) {
+                if (min > max) {
                     isValid = false;
                     break;
                 }
-                ranges.add(range);
-            }
 
-            if (!isValid)
-                return;
-            ranges = VersionRange.simplify(ranges);
+                mins[rangeCount] = min;
+                maxes[rangeCount] = max;
+                ++rangeCount;
+            }
         } catch (InvalidVersionException e) {
             isValid = false;
             throw new RuntimeException(e);
         }
+
+        if (!isValid) {
+            minVersionNums = NO_RANGES;
+            maxVersionNums = NO_RANGES;
+            return;
+        }
+        compile(mins, maxes, rangeCount);
     }
 
     /**
-     * Create a new version selection from a version ranges. Does not copy {@code ranges}.
+     * Create a new version selection from a version ranges. The ranges do not need to be sorted, and may overlap.
      *
      * @param ranges The ranges for this version selection.
      */
     public VersionSelect(List<VersionRange> ranges) {
-        this.ranges = ranges;
+        long[] mins = new long[ranges.size()];
+        long[] maxes = new long[ranges.size()];
+        for (int i = 0; i < mins.length; ++i) {
+            VersionRange range = ranges.get(i);
+            mins[i] = range.getMinVersionNum();
+            maxes[i] = range.getMaxVersionNum();
+        }
+        compile(mins, maxes, mins.length);
+    }
+
+    /**
+     * Create a new version selection from ranges which are already sorted and do not overlap.
+     *
+     * @param minVersionNums The version numbers of the minimum version of each range.
+     * @param maxVersionNums The version numbers of the maximum version of each range.
+     */
+    private VersionSelect(long[] minVersionNums, long[] maxVersionNums) {
+        this.minVersionNums = minVersionNums;
+        this.maxVersionNums = maxVersionNums;
+    }
+
+    /**
+     * Create a version selection from ranges which have already been compiled, such as those read back from {@link VersionSelect#getRanges()}.
+     *
+     * @param minVersionNums The version numbers of the minimum version of each range, which must be sorted.
+     * @param maxVersionNums The version numbers of the maximum version of each range, where no range overlaps with the next one.
+     * @return A new version selection with the given ranges.
+     * @throws IllegalArgumentException Exception thrown if the arrays have different lengths, or if the ranges are not sorted, or overlap.
+     */
+    public static VersionSelect fromRanges(long[] minVersionNums, long[] maxVersionNums) {
+        if (minVersionNums.length != maxVersionNums.length)
+            throw new IllegalArgumentException("Every range must have a minimum and a maximum");
+        for (int i = 0; i < minVersionNums.length; ++i) {
+            if (minVersionNums[i] > maxVersionNums[i] || (i > 0 && minVersionNums[i] <= maxVersionNums[i - 1]))
+                throw new IllegalArgumentException("Ranges must be sorted and must not overlap");
+        }
+        return new VersionSelect(minVersionNums.clone(), maxVersionNums.clone());
     }
 
     /**
@@ -159,36 +210,182 @@ public class VersionSelect implements Cloneable {
     public static VersionSelect intersection(VersionSelect[] selections) {
         if (selections.length == 0)
             throw new IllegalArgumentException("The length of ranges must be greater than zero");
-        else if (selections.length == 1)
-            return selections[0].clone();
 
-        // Clone and map all the selection ranges to a 2d array
-        VersionSelect[] selectionRanges = Arrays.stream(selections).map(VersionSelect::clone).toArray(VersionSelect[]::new);
-        VersionSelect newSelection = selectionRanges[0];
+        VersionSelect newSelection = selections[0];
+        for (int i = 1; i < selections.length && !newSelection.isEmpty(); ++i)
+            newSelection = newSelection.intersect(selections[i]);
 
-        for (int i = 1; i <= selectionRanges.length - 1; ++i) {
-            VersionSelect currentSelection = selectionRanges[i];
-            List<VersionRange> tempSelection = new ArrayList<>();
+        return newSelection.clone();
+    }
 
-            for (VersionRange currRange : currentSelection.ranges) {
-                for (VersionRange newRange : newSelection.ranges) {
-                    Version min = Version.max(currRange.getMinVersion(), newRange.getMinVersion());
-                    Version max = Version.min(currRange.getMaxVersion(), newRange.getMaxVersion());
+    /**
+     * Get the versions that are in both this selection and another selection. Runs in time linear to the number of ranges in both selections.
+     *
+     * @param other The selection to intersect with.
+     * @return A new version selection of all the versions in both selections.
+     */
+    public VersionSelect intersect(VersionSelect other) {
+        int maxCount = minVersionNums.length + other.minVersionNums.length;
+        long[] mins = new long[maxCount];
+        long[] maxes = new long[maxCount];
+        int count = 0;
+
+        int i = 0;
+        int j = 0;
+        while (i < minVersionNums.length && j < other.minVersionNums.length) {
+            long min = Math.max(minVersionNums[i], other.minVersionNums[j]);
+            long max = Math.min(maxVersionNums[i], other.maxVersionNums[j]);
+
+            if (min <= max) {
+                mins[count] = min;
+                maxes[count] = max;
+                ++count;
+            }
 
-                    if (min.compareTo(max) > 0)
-                        continue;
+            // Whichever range ends first can not overlap with any later range of the other selection
+            if (maxVersionNums[i] < other.maxVersionNums[j])
+                ++i;
+            else
+                ++j;
+        }
 
-                    tempSelection.add(new VersionRange(min, max));
-                    break;
-                }
+        return new VersionSelect(Arrays.copyOf(mins, count), Arrays.copyOf(maxes, count));
+    }
+
+    /**
+     * Get the versions that are in either this selection or another selection. Runs in time linear to the number of ranges in both selections.
+     *
+     * @param other The selection to combine with.
+     * @return A new version selection of all the versions in either selection, with ranges that overlap or touch merged.
+     */
+    public VersionSelect union(VersionSelect other) {
+        int maxCount = minVersionNums.length + other.minVersionNums.length;
+        long[] mins = new long[maxCount];
+        long[] maxes = new long[maxCount];
+        int count = 0;
+
+        int i = 0;
+        int j = 0;
+        while (i < minVersionNums.length || j < other.minVersionNums.length) {
+            long min;
+            long max;
+            if (j >= other.minVersionNums.length || (i < minVersionNums.length && minVersionNums[i] <= other.minVersionNums[j])) {
+                min = minVersionNums[i];
+                max = maxVersionNums[i];
+                ++i;
+            } else {
+                min = other.minVersionNums[j];
+                max = other.maxVersionNums[j];
+                ++j;
             }
 
-            newSelection = new VersionSelect(tempSelection);
-            if (tempSelection.size() == 0)
-                return newSelection;
+            if (count > 0 && min <= Version.nextVersionNum(maxes[count - 1])) {
+                maxes[count - 1] = Math.max(maxes[count - 1], max);
+            } else {
+                mins[count] = min;
+                maxes[count] = max;
+                ++count;
+            }
         }
 
-        return newSelection;
+        return new VersionSelect(Arrays.copyOf(mins, count), Arrays.copyOf(maxes, count));
+    }
+
+    /**
+     * Get all the versions that are not in this selection.
+     *
+     * @return A new version selection of all the versions from {@link Version#MIN_VERSION} to {@link Version#MAX_VERSION} that are not in this selection.
+     */
+    public VersionSelect complement() {
+        long[] mins = new long[minVersionNums.length + 1];
+        long[] maxes = new long[minVersionNums.length + 1];
+        int count = 0;
+
+        // The smallest version which has not been covered yet
+        long next = Version.MIN_VERSION.getVersionNum();
+        for (int i = 0; i < minVersionNums.length; ++i) {
+            if (minVersionNums[i] > next) {
+                mins[count] = next;
+                maxes[count] = Version.previousVersionNum(minVersionNums[i]);
+                ++count;
+            }
+            next = Version.nextVersionNum(maxVersionNums[i]);
+        }
+
+        long maxNum = Version.MAX_VERSION.getVersionNum();
+        if (next <= maxNum) {
+            mins[count] = next;
+            maxes[count] = maxNum;
+            ++count;
+        }
+
+        return new VersionSelect(Arrays.copyOf(mins, count), Arrays.copyOf(maxes, count));
+    }
+
+    /**
+     * Get the versions that are in this selection but not in another selection.
+     *
+     * @param other The selection of versions to remove.
+     * @return A new version selection of all the versions in this selection that are not in {@code other}.
+     */
+    public VersionSelect difference(VersionSelect other) {
+        return intersect(other.complement());
+    }
+
+    /**
+     * Check if this selection does not contain any versions.
+     *
+     * @return True if this selection does not contain any versions.
+     */
+    public boolean isEmpty() {
+        return minVersionNums.length == 0;
+    }
+
+    /**
+     * Sort and merge ranges, and set them as the ranges of this selection. Since the union of a set of ranges only depends on where ranges start and end, and not which start belongs to which end, the minimums and maximums can be sorted independently. A new merged range then ends wherever the next minimum is greater than the version after the current maximum, so ranges that touch are merged as well.
+     *
+     * @param mins       The version numbers of the minimum versions of the ranges. Modified.
+     * @param maxes      The version numbers of the maximum versions of the ranges. Modified.
+     * @param rangeCount The number of ranges in {@code mins} and {@code maxes} to use.
+     */
+    private void compile(long[] mins, long[] maxes, int rangeCount) {
+        if (rangeCount == 0) {
+            minVersionNums = NO_RANGES;
+            maxVersionNums = NO_RANGES;
+            return;
+        }
+
+        Arrays.sort(mins, 0, rangeCount);
+        Arrays.sort(maxes, 0, rangeCount);
+
+        int mergedCount = 0;
+        long rangeMin = mins[0];
+        for (int i = 0; i < rangeCount; ++i) {
+            if (i + 1 < rangeCount && mins[i + 1] <= Version.nextVersionNum(maxes[i]))
+                continue;
+
+            // Only indices that have already been read are overwritten
+            mins[mergedCount] = rangeMin;
+            maxes[mergedCount] = maxes[i];
+            ++mergedCount;
+
+            if (i + 1 < rangeCount)
+                rangeMin = mins[i + 1];
+        }
+
+        minVersionNums = Arrays.copyOf(mins, mergedCount);
+        maxVersionNums = Arrays.copyOf(maxes, mergedCount);
+    }
+
+    /**
+     * Find the range that may contain a version number.
+     *
+     * @param versionNum The version number to search for.
+     * @return The index of the range with the greatest minimum that is less than or equal to {@code versionNum}, or -1 if there is no such range.
+     */
+    private int findRange(long versionNum) {
+        int index = Arrays.binarySearch(minVersionNums, versionNum);
+        return index >= 0 ? index : -index - 2;
     }
 
     /**
@@ -198,13 +395,45 @@ public class VersionSelect implements Cloneable {
      * @return True if the number is within the selection.
      */
     public boolean containsVersion(Version version) {
-        for (VersionRange range : ranges) {
-            long versionNum = version.getVersionNum();
+        long versionNum = version.getVersionNum();
+        int index = findRange(versionNum);
+        return index >= 0 && versionNum <= maxVersionNums[index];
+    }
+
+    /**
+     * Get which of a sorted list of versions are within this selection.
+     *
+     * @param versionNums The version numbers of the versions to check, sorted from smallest to largest.
+     * @return A new mask where the bit at each index is set if the version number at the same index of {@code versionNums} is within this selection.
+     */
+    public BitSet getMask(long[] versionNums) {
+        BitSet mask = new BitSet(versionNums.length);
+        for (int i = 0; i < minVersionNums.length; ++i) {
+            int fromIndex = lowerBound(versionNums, minVersionNums[i]);
+            int toIndex = lowerBound(versionNums, maxVersionNums[i] + 1);
+            mask.set(fromIndex, toIndex);
+        }
+        return mask;
+    }
 
-            if (versionNum >= range.getMinVersionNum() && versionNum <= range.getMaxVersionNum())
-                return true;
+    /**
+     * Find the first index in a sorted array with a value that is greater than or equal to a number.
+     *
+     * @param sorted The sorted array to search.
+     * @param num    The number to search for.
+     * @return The first index of {@code sorted} with a value that is greater than or equal to {@code num}, or the length of {@code sorted} if there is no such value.
+     */
+    private static int lowerBound(long[] sorted, long num) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < num)
+                low = mid + 1;
+            else
+                high = mid;
         }
-        return false;
+        return low;
     }
 
     /**
@@ -214,11 +443,8 @@ public class VersionSelect implements Cloneable {
      * @return True if the given range is completely within one of the ranges of this version selection.
      */
     public boolean containsRange(VersionRange testRange) {
-        for (VersionRange range : ranges) {
-            if (range.containsRange(testRange))
-                return true;
-        }
-        return false;
+        int index = findRange(testRange.getMinVersionNum());
+        return index >= 0 && testRange.getMaxVersionNum() <= maxVersionNums[index];
     }
 
     /**
@@ -227,7 +453,10 @@ public class VersionSelect implements Cloneable {
      * @return A copy of the simplified ranges.
      */
     public VersionRange[] getRanges() {
-        return ranges.toArray(VersionRange[]::new);
+        VersionRange[] ranges = new VersionRange[minVersionNums.length];
+        for (int i = 0; i < ranges.length; ++i)
+            ranges[i] = new VersionRange(Version.fromVersionNum(minVersionNums[i]), Version.fromVersionNum(maxVersionNums[i]));
+        return ranges;
     }
 
     /**
@@ -237,42 +466,41 @@ public class VersionSelect implements Cloneable {
      */
     @Override
     public String toString() {
-        ArrayList<String> rangeStrings = new ArrayList<>(ranges.size());
-
-        if (ranges.isEmpty()) {
+        if (minVersionNums.length == 0) {
             return "<empty version select>";
         }
 
-        for (VersionRange range : ranges) {
-            if (range.getMinVersionNum() == range.getMaxVersionNum())
-                rangeStrings.add(range.getMinVersion().toString());
-            else if (range.getMinVersion().equals(Version.MIN_VERSION) && range.getMaxVersion().equals(Version.MAX_VERSION))
+        long minNum = Version.MIN_VERSION.getVersionNum();
+        long maxNum = Version.MAX_VERSION.getVersionNum();
+        ArrayList<String> rangeStrings = new ArrayList<>(minVersionNums.length);
+
+        for (int i = 0; i < minVersionNums.length; ++i) {
+            long min = minVersionNums[i];
+            long max = maxVersionNums[i];
+
+            if (min == max)
+                rangeStrings.add(Version.fromVersionNum(min).toString());
+            else if (min == minNum && max == maxNum)
                 return "*";
-            else if (range.getMinVersion().equals(Version.MIN_VERSION))
-                return "-%s".formatted(range.getMaxVersion());
-            else if (range.getMaxVersion().equals(Version.MAX_VERSION))
-                return "%s-".formatted(range.getMinVersion());
+            else if (min == minNum)
+                rangeStrings.add("-%s".formatted(Version.fromVersionNum(max)));
+            else if (max == maxNum)
+                rangeStrings.add("%s-".formatted(Version.fromVersionNum(min)));
             else
-                rangeStrings.add("%s-%s".formatted(range.getMinVersion(), range.getMaxVersion()));
+                rangeStrings.add("%s-%s".formatted(Version.fromVersionNum(min), Version.fromVersionNum(max)));
         }
 
         return String.join(",", rangeStrings);
     }
 
     /**
-     * Create a deep copy of this selection.
+     * Create a copy of this selection. The ranges of a selection never change after it is created, so they are shared with the copy.
      *
-     * @return A deep copy of this selection.
+     * @return A copy of this selection.
      */
     @Override
     @SneakyThrows(CloneNotSupportedException.class)
     public VersionSelect clone() {
-        VersionSelect clone = (VersionSelect) super.clone();
-        if (isValid) {
-            clone.isValid = true;
-            clone.ranges = VersionRange.deepCopy(ranges);
-        } else
-            clone.isValid = false;
-        return clone;
+        return (VersionSelect) super.clone();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.versioning;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of parsed version selections, indexed by their selection strings, so that each distinct selection string only needs to be parsed once. Safe to use from multiple threads. Since version selections never change after they are created, the same selection is returned for every lookup of a string.
+ */
+@UtilityClass
+public class VersionSelectCache {
+
+    /**
+     * The maximum number of selections to keep. The least recently used selection is removed when the cache is full.
+     */
+    public static final int MAX_ENTRIES = 4096;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    // Iterates in access order, so that the eldest entry is the least recently used one
+    private final Map<String, VersionSelect> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, VersionSelect> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Get the version selection for a selection string, and parse it if it is not cached.
+     *
+     * @param selectionStr The selection string, comma separated.
+     * @return The version selection of {@code selectionStr}.
+     */
+    public VersionSelect get(@NotNull String selectionStr) {
+        VersionSelect selection;
+        synchronized (cache) {
+            selection = cache.get(selectionStr);
+        }
+
+        if (selection != null) {
+            hitCount.incrementAndGet();
+            return selection;
+        }
+
+        // Parse outside the lock, at worst two threads parse the same string
+        missCount.incrementAndGet();
+        selection = new VersionSelect(selectionStr);
+        synchronized (cache) {
+            cache.put(selectionStr, selection);
+        }
+        return selection;
+    }
+
+    /**
+     * Cache a selection which has already been compiled, unless the selection string is already cached.
+     *
+     * @param selectionStr The selection string, comma separated.
+     * @param selection    The version selection of {@code selectionStr}.
+     */
+    public void putIfAbsent(@NotNull String selectionStr, @NotNull VersionSelect selection) {
+        synchronized (cache) {
+            cache.putIfAbsent(selectionStr, selection);
+        }
+    }
+
+    /**
+     * Get the number of lookups which found a cached selection.
+     *
+     * @return The number of cache hits since the program started, or since the cache was last cleared.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Get the number of lookups which had to parse the selection string.
+     *
+     * @return The number of cache misses since the program started, or since the cache was last cleared.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Get the number of selections currently cached.
+     *
+     * @return The number of selections currently cached.
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Remove all cached selections, and reset the hit and miss counts.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        hitCount.set(0);
+        missCount.set(0);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import net.xpkgclient.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests keeping downloaded archives in the archive store.
+ */
+public final class ArchiveStoreTests {
+
+    private File previousStorePath;
+    private long previousMaxSize;
+
+    @BeforeEach
+    void setUp(@TempDir File storePath) {
+        previousStorePath = Configuration.getArchiveStorePath();
+        previousMaxSize = Configuration.getArchiveStoreMaxSize();
+        Configuration.setArchiveStorePath(storePath);
+        Configuration.setArchiveStoreMaxSize(1024 * 1024);
+        ArchiveStore.resetCounters();
+    }
+
+    @AfterEach
+    void tearDown() {
+        Configuration.setArchiveStorePath(previousStorePath);
+        Configuration.setArchiveStoreMaxSize(previousMaxSize);
+    }
+
+    @Test
+    @SneakyThrows(IOException.class)
+    void testPutAndGet() {
+        String hash = "AB" + "0".repeat(62);
+        assertNull(ArchiveStore.get(hash));
+
+        Path download = ArchiveStore.newDownloadPath("test/package");
+        Files.createDirectories(download.getParent());
+        Files.writeString(download, "Archive");
+        File archive = ArchiveStore.put(hash, download);
+        assertFalse(Files.exists(download));
+        assertEquals(archive, ArchiveStore.get(hash.toLowerCase()));
+        assertEquals("Archive", Files.readString(archive.toPath()));
+        assertEquals(7, ArchiveStore.getSize());
+        assertEquals(1, ArchiveStore.getHitCount());
+        assertEquals(1, ArchiveStore.getMissCount());
+
+        assertNull(ArchiveStore.get("not a hash"));
+        assertThrows(IllegalArgumentException.class, () -> ArchiveStore.put("../" + "0".repeat(61), download));
+
+        ArchiveStore.remove(hash);
+        assertNull(ArchiveStore.get(hash));
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, ExecutionException.class, InterruptedException.class})
+    void testCompact() {
+        Instant now = Instant.now();
+        Path oldest = putArchive("1", 100, now.minus(Duration.ofDays(3)));
+        Path older = putArchive("2", 100, now.minus(Duration.ofDays(2)));
+        Path recent = putArchive("3", 100, now.minusSeconds(5));
+
+        // Keeping an archive starts a compaction, which has to finish before the maximum size is changed
+        ArchiveStore.compact().get();
+        Path stale = putDownload(now.minus(ArchiveStore.STALE_DOWNLOAD_AGE).minusSeconds(60));
+        Path unfinished = putDownload(now);
+        Path unknown = recent.resolveSibling("unknown.txt");
+        Files.writeString(unknown, "Unknown");
+        Path unknownDir = Files.createDirectories(recent.resolveSibling("unknown"));
+        Files.writeString(unknownDir.resolve("unknown.txt"), "Unknown");
+        Path staleUnknown = stale.resolveSibling("unknown.txt");
+        Files.writeString(staleUnknown, "Unknown");
+        Files.setLastModifiedTime(staleUnknown, Files.getLastModifiedTime(stale));
+
+        // Only the least recently used archive needs to be removed to fit
+        Configuration.setArchiveStoreMaxSize(250);
+        ArchiveStore.compact().get();
+        assertFalse(Files.exists(oldest));
+        assertTrue(Files.exists(older));
+        assertTrue(Files.exists(recent));
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(unfinished));
+
+        // Files the store did not create are never removed, since the store may share a directory with the user's own files
+        assertTrue(Files.exists(unknown));
+        assertTrue(Files.exists(unknownDir.resolve("unknown.txt")));
+        assertTrue(Files.exists(staleUnknown));
+
+        // Archives used within the grace period are kept even if the store is still too large
+        Configuration.setArchiveStoreMaxSize(50);
+        ArchiveStore.compact().get();
+        assertFalse(Files.exists(older));
+        assertTrue(Files.exists(recent));
+        assertEquals(100, ArchiveStore.getSize());
+    }
+
+    /**
+     * Add an archive to the store directly.
+     *
+     * @param hashDigit The digit the hash of the archive is made of.
+     * @param size      The size of the archive.
+     * @param lastUsed  The time the archive was last used.
+     * @return The location of the archive.
+     */
+    @SneakyThrows(IOException.class)
+    private static Path putArchive(String hashDigit, int size, Instant lastUsed) {
+        Path download = ArchiveStore.newDownloadPath("test");
+        Files.createDirectories(download.getParent());
+        Files.write(download, new byte[size]);
+        Path archive = ArchiveStore.put(hashDigit.repeat(64), download).toPath();
+        Files.setLastModifiedTime(archive, FileTime.from(lastUsed));
+        return archive;
+    }
+
+    /**
+     * Add an unfinished download to the store.
+     *
+     * @param lastModified The time the download was last written.
+     * @return The location of the download.
+     */
+    @SneakyThrows(IOException.class)
+    private static Path putDownload(Instant lastModified) {
+        Path download = ArchiveStore.newDownloadPath("test");
+        Files.createDirectories(download.getParent());
+        Files.write(download, new byte[10]);
+        Files.setLastModifiedTime(download, FileTime.from(lastModified));
+        return download;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import net.xpkgclient.Configuration;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests keeping the package index up to date with deltas from the registry.
+ */
+public final class IndexSyncTests {
+
+    /**
+     * Create the JSON of a single package in the index.
+     *
+     * @param packageId The id of the package.
+     * @param versions  The versions of the package.
+     * @return The JSON object of the package.
+     */
+    static JSONObject packageJson(String packageId, String... versions) {
+        return new JSONObject()
+                .put("packageId", packageId)
+                .put("packageName", "Name of " + packageId)
+                .put("packageType", "other")
+                .put("authorName", "Author")
+                .put("authorId", "author")
+                .put("description", "")
+                .put("versions", versions);
+    }
+
+    @Test
+    @SneakyThrows(IOException.class)
+    void testDeltaSync() {
+        String previousRegistryUrl = Configuration.getRegistryUrl();
+        try (StubRegistryServer server = new StubRegistryServer()) {
+            Configuration.setRegistryUrl(server.getUrl());
+            for (int i = 0; i < 100; ++i)
+                server.put(packageJson("test.package" + i, "1.0"));
+
+            // The client's token (if any) is from another server, so the full index is sent
+            assertEquals(100, Remote.fetchAllPackages().join().size());
+            assertEquals(1, server.getFullRequestCount());
+
+            server.put(packageJson("test.package5", "1.0", "1.1"));
+            server.put(packageJson("test.new", "0.1"));
+            server.remove("test.package7");
+
+            List<Package> packages = Remote.fetchAllPackages().join();
+            assertEquals(1, server.getFullRequestCount());
+            assertEquals(1, server.getDeltaRequestCount());
+            assertEquals(100, packages.size());
+            assertEquals("1.1.0", Remote.getPackage("test.package5").getLatestVersionStr());
+            assertSame(packages.get(5), Remote.getPackage("test.package5"));
+            assertNotNull(Remote.getPackage("test.new"));
+            assertNull(Remote.getPackage("test.package7"));
+
+            // A delta with no changes keeps everything
+            assertEquals(100, Remote.fetchAllPackages().join().size());
+            assertEquals(2, server.getDeltaRequestCount());
+
+            server.remove("test.package0");
+            server.expireTokens();
+            packages = Remote.fetchAllPackages().join();
+            assertEquals(2, server.getFullRequestCount());
+            assertEquals(99, packages.size());
+            assertNull(Remote.getPackage("test.package0"));
+        } finally {
+            Configuration.setRegistryUrl(previousRegistryUrl);
+        }
+    }
+}
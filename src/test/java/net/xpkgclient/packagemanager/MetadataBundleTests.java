@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import net.xpkgclient.Configuration;
+import net.xpkgclient.packagemanager.actions.InstallerAction;
+import net.xpkgclient.versioning.InvalidVersionException;
+import net.xpkgclient.versioning.Version;
+import net.xpkgclient.versioning.VersionSelectCache;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests writing and reading metadata bundles, and resolving dependencies from them.
+ */
+public final class MetadataBundleTests {
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class})
+    void testRoundTrip() {
+        Remote.VersionData first = new Remote.VersionData("https://example.com/caf\u00e9.xpkg", "abc123",
+                new String[][]{{"test.dep", "1.2-2.0"}, {"test.other", "*"}},
+                new String[][]{{"test.incompatible", "3.0-"}});
+        Remote.VersionData second = new Remote.VersionData("https://example.com/second.xpkg", "def456",
+                new String[][]{{"test.dep", "1.2-2.0"}, {"test.invalid", "not a selection"}},
+                new String[0][]);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MetadataBundleWriter()
+                .add("test.package", Version.parse("1.0.0"), first)
+                .add("test.package", Version.parse("1.0.0b2"), second)
+                .add("test.dep", Version.parse("1.5"), second)
+                .write(out);
+        MetadataBundle bundle = MetadataBundle.wrap(ByteBuffer.wrap(out.toByteArray()));
+
+        assertEquals(3, bundle.getVersionCount());
+        assertEquals(5, bundle.getPackageCount());
+        assertEquals(out.size(), bundle.getSize());
+        assertVersionDataEquals(first, bundle.getVersionData("test.package", Version.parse("1.0")));
+        assertVersionDataEquals(second, bundle.getVersionData("test.package", Version.parse("1.0.0b2")));
+        assertVersionDataEquals(second, bundle.getVersionData("test.dep", Version.parse("1.5.0")));
+        assertNull(bundle.getVersionData("test.package", Version.parse("1.0.1")));
+        assertNull(bundle.getVersionData("test.other", Version.parse("1.0.0")));
+        assertNull(bundle.getVersionData("test.missing", Version.parse("1.0.0")));
+
+        // The compiled selections are cached, so the resolver does not parse them
+        VersionSelectCache.clear();
+        bundle.getVersionData("test.package", Version.parse("1.0"));
+        assertTrue(VersionSelectCache.get("1.2-2.0").containsVersion(Version.parse("1.9.9")));
+        assertFalse(VersionSelectCache.get("3.0-").containsVersion(Version.parse("2.9")));
+        assertEquals(2, VersionSelectCache.getHitCount());
+        assertEquals(0, VersionSelectCache.getMissCount());
+        VersionSelectCache.clear();
+    }
+
+    @Test
+    void testInvalidBundle() {
+        assertThrows(IOException.class, () -> MetadataBundle.wrap(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8})));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertDoesNotThrow(() -> new MetadataBundleWriter().write(out));
+        byte[] truncated = new byte[out.size() - 1];
+        System.arraycopy(out.toByteArray(), 0, truncated, 0, truncated.length);
+        assertThrows(IOException.class, () -> MetadataBundle.wrap(ByteBuffer.wrap(truncated)));
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class})
+    void testResolveWithoutRequests(@TempDir File dir) {
+        String previousRegistryUrl = Configuration.getRegistryUrl();
+        try (StubRegistryServer server = VersionDataBatchTests.createTreeRegistry()) {
+            Configuration.setRegistryUrl(server.getUrl());
+            VersionDataCache.clear();
+            Remote.fetchAllPackages().join();
+
+            MetadataBundle bundle = Remote.fetchMetadataBundle().join();
+            assertSame(bundle, Remote.getMetadataBundle());
+            assertEquals(400, bundle.getVersionCount());
+            assertEquals(1, server.getBundleRequestCount());
+
+            DependencyTree tree = new DependencyTree(new File(dir, "dependencies.xpkg.json"));
+            Optional<List<InstallerAction>> actions = tree.getActions("test.tree0", Version.parse("1.1"));
+            assertTrue(actions.isPresent());
+            assertEquals(0, server.getVersionDataRequestCount());
+        } finally {
+            Remote.clearMetadataBundle();
+            VersionDataCache.clear();
+            Configuration.setRegistryUrl(previousRegistryUrl);
+        }
+    }
+
+    @Test
+    @SneakyThrows(IOException.class)
+    void testReplaceBundle(@TempDir File xpPath) {
+        String previousRegistryUrl = Configuration.getRegistryUrl();
+        File previousXpPath = Configuration.getXpPath();
+        Configuration.setXpPath(xpPath);
+        try (StubRegistryServer server = VersionDataBatchTests.createTreeRegistry()) {
+            Configuration.setRegistryUrl(server.getUrl());
+            File bundleDir = MetadataBundle.getBundleDir();
+
+            MetadataBundle first = Remote.fetchMetadataBundle().join();
+            File firstFile = MetadataBundle.findLatestBundleFile(bundleDir);
+            assertNotNull(firstFile);
+            assertTrue(MetadataBundle.getEtagFile(firstFile).exists());
+
+            // The server reports that the bundle has not changed, so the mapped bundle is kept
+            assertSame(first, Remote.fetchMetadataBundle().join());
+            assertEquals(2, server.getBundleRequestCount());
+            assertEquals(firstFile, MetadataBundle.findLatestBundleFile(bundleDir));
+
+            server.putVersionData("test.extra", "1.0.0", new JSONObject()
+                    .put("loc", "http://127.0.0.1/test.extra-1.0.0.xpkg")
+                    .put("hash", "")
+                    .put("dependencies", new JSONArray())
+                    .put("incompatibilities", new JSONArray()));
+            MetadataBundle second = Remote.fetchMetadataBundle().join();
+            assertNotSame(first, second);
+            assertSame(second, Remote.getMetadataBundle());
+            assertEquals(401, second.getVersionCount());
+
+            // The old bundle is still readable, since only the reference to it was replaced
+            assertEquals(400, first.getVersionCount());
+            File secondFile = MetadataBundle.findLatestBundleFile(bundleDir);
+            assertNotEquals(firstFile, secondFile);
+            String[] remaining = bundleDir.list((parent, name) -> !name.endsWith(".tmp"));
+            assertNotNull(remaining);
+            assertEquals(2, remaining.length);
+
+            Remote.clearMetadataBundle();
+            assertTrue(Remote.loadSavedMetadataBundle());
+            assertEquals(401, Remote.getMetadataBundle().getVersionCount());
+            assertSame(Remote.getMetadataBundle(), Remote.fetchMetadataBundle().join());
+            assertEquals(4, server.getBundleRequestCount());
+        } finally {
+            Remote.clearMetadataBundle();
+            Configuration.setRegistryUrl(previousRegistryUrl);
+            Configuration.setXpPath(previousXpPath);
+        }
+    }
+
+    /**
+     * Assert that version data read from a bundle is the same as the data written.
+     *
+     * @param expected The data written.
+     * @param actual   The data read.
+     */
+    private static void assertVersionDataEquals(Remote.VersionData expected, Remote.VersionData actual) {
+        assertNotNull(actual);
+        assertEquals(expected.loc(), actual.loc());
+        assertEquals(expected.hash(), actual.hash());
+        assertArrayEquals(expected.dependencies(), actual.dependencies());
+        assertArrayEquals(expected.incompatibilities(), actual.incompatibilities());
+    }
+}
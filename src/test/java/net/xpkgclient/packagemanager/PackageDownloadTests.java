@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import net.xpkgclient.Configuration;
+import net.xpkgclient.versioning.InvalidVersionException;
+import net.xpkgclient.versioning.Version;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests downloading and extracting packages without the GUI.
+ */
+public final class PackageDownloadTests {
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class, NoSuchAlgorithmException.class, ExecutionException.class, InterruptedException.class, TimeoutException.class})
+    void testFetchPackage(@TempDir File xpPath) {
+        File previousXpPath = Configuration.getXpPath();
+        Configuration.setXpPath(xpPath);
+        try (StubRegistryServer server = new StubRegistryServer()) {
+            byte[] zip = createZip("test.download/readme.txt", "Hello");
+            String url = server.putFile("test.download.xpkg", zip);
+            String hash = Hex.encodeHexString(MessageDigest.getInstance("SHA-256").digest(zip));
+            Package pkg = new Package("test.download", "Download", PackageType.OTHER, new String[]{"1.0"}, "", "", "");
+            Version version = Version.parse("1.0");
+
+            // The future completes without a JavaFX application thread
+            File dest = Remote.fetchPackage(pkg, version, new Remote.VersionData(url, hash, new String[0][], new String[0][])).get(10, TimeUnit.SECONDS);
+            assertEquals("Hello", Files.readString(new File(dest, "test.download/readme.txt").toPath()));
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> Remote.fetchPackage(pkg, version, new Remote.VersionData(url, "0".repeat(64), new String[0][], new String[0][])).get(10, TimeUnit.SECONDS));
+            assertInstanceOf(SecurityException.class, e.getCause().getCause());
+            assertFalse(new File(xpPath, "xpkg/tmp/downloads/test.download@1.0.0.xpkg").exists());
+            assertArrayEquals(new String[]{"test.download"}, new File(xpPath, "xpkg/tmp/downloads").list());
+
+            // A download of the same version which is already running keeps its file, and the other download is written to a file of its own
+            Path lockedFile = xpPath.toPath().resolve("xpkg/tmp/downloads/test.download@1.0.0.xpkg");
+            try (FileChannel channel = FileChannel.open(lockedFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+                FileLock lock = channel.tryLock(Long.MAX_VALUE - 1, 1, false);
+                dest = Remote.fetchPackage(pkg, version, new Remote.VersionData(url, hash, new String[0][], new String[0][])).get(10, TimeUnit.SECONDS);
+                assertEquals("Hello", Files.readString(new File(dest, "test.download/readme.txt").toPath()));
+                assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(lockedFile));
+                lock.release();
+            }
+            Files.delete(lockedFile);
+            assertArrayEquals(new String[]{"test.download"}, new File(xpPath, "xpkg/tmp/downloads").list());
+        } finally {
+            Configuration.setXpPath(previousXpPath);
+        }
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class, NoSuchAlgorithmException.class})
+    void testVersionDataInvalidation(@TempDir File xpPath) {
+        File previousXpPath = Configuration.getXpPath();
+        Configuration.setXpPath(xpPath);
+        VersionDataCache.clear();
+        try (StubRegistryServer server = new StubRegistryServer()) {
+            Package pkg = new Package("test.invalidate", "Invalidate", PackageType.OTHER, new String[]{"1.0"}, "", "", "");
+            Version version = Version.parse("1.0");
+            String hash = Hex.encodeHexString(MessageDigest.getInstance("SHA-256").digest(new byte[0]));
+
+            // A server which can not be reached says nothing about whether the data is still correct
+            String unreachableUrl;
+            try (StubRegistryServer closed = new StubRegistryServer()) {
+                unreachableUrl = closed.getUrl() + "/files/test.invalidate.xpkg";
+            }
+            VersionDataCache.put(pkg.getPackageId(), version, new Remote.VersionData(unreachableUrl, hash, new String[0][], new String[0][]));
+            assertThrows(ExecutionException.class, () -> Remote.fetchPackage(pkg, version, null).get(10, TimeUnit.SECONDS));
+            assertNotNull(VersionDataCache.get(pkg.getPackageId(), version));
+
+            // A file which is no longer at its location means the version was changed
+            VersionDataCache.put(pkg.getPackageId(), version, new Remote.VersionData(server.getUrl() + "/files/missing.xpkg", hash, new String[0][], new String[0][]));
+            assertThrows(ExecutionException.class, () -> Remote.fetchPackage(pkg, version, null).get(10, TimeUnit.SECONDS));
+            assertNull(VersionDataCache.get(pkg.getPackageId(), version));
+        } finally {
+            VersionDataCache.clear();
+            Configuration.setXpPath(previousXpPath);
+        }
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class, NoSuchAlgorithmException.class, ExecutionException.class, InterruptedException.class, TimeoutException.class})
+    void testArchiveStore(@TempDir File xpPath, @TempDir File otherXpPath, @TempDir File storePath) {
+        File previousXpPath = Configuration.getXpPath();
+        File previousStorePath = Configuration.getArchiveStorePath();
+        Configuration.setXpPath(xpPath);
+        Configuration.setArchiveStorePath(storePath);
+        try (StubRegistryServer server = new StubRegistryServer()) {
+            Package pkg = new Package("test.store", "Store", PackageType.OTHER, new String[]{"1.0"}, "", "", "");
+            Version version = Version.parse("1.0");
+            Remote.VersionData versionData = serve(server, "store.xpkg", createZip("test.store/readme.txt", "Stored"));
+
+            Remote.fetchPackage(pkg, version, versionData).get(10, TimeUnit.SECONDS);
+            assertEquals(1, server.getFileRequestCount());
+            assertNotNull(ArchiveStore.get(versionData.hash()));
+
+            // Installing again, or into another X-Plane installation, uses the kept archive
+            File dest = Remote.fetchPackage(pkg, version, versionData).get(10, TimeUnit.SECONDS);
+            assertEquals("Stored", Files.readString(new File(dest, "test.store/readme.txt").toPath()));
+            Configuration.setXpPath(otherXpPath);
+            dest = Remote.fetchPackage(pkg, version, versionData).get(10, TimeUnit.SECONDS);
+            assertEquals("Stored", Files.readString(new File(dest, "test.store/readme.txt").toPath()));
+            assertEquals(1, server.getFileRequestCount());
+
+            // A damaged archive is downloaded again
+            Files.write(ArchiveStore.get(versionData.hash()).toPath(), new byte[]{1, 2, 3});
+            dest = Remote.fetchPackage(pkg, version, versionData).get(10, TimeUnit.SECONDS);
+            assertEquals("Stored", Files.readString(new File(dest, "test.store/readme.txt").toPath()));
+            assertEquals(2, server.getFileRequestCount());
+            assertArrayEquals(new String[]{"test.store"}, new File(otherXpPath, "xpkg/tmp/downloads").list());
+        } finally {
+            Configuration.setArchiveStorePath(previousStorePath);
+            Configuration.setXpPath(previousXpPath);
+        }
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class, NoSuchAlgorithmException.class, ExecutionException.class, InterruptedException.class, TimeoutException.class})
+    void testLinkedInstalls(@TempDir File xpPath, @TempDir File otherXpPath, @TempDir File storePath) {
+        File previousXpPath = Configuration.getXpPath();
+        File previousStorePath = Configuration.getArchiveStorePath();
+        boolean previousLinkedInstalls = Configuration.isLinkedInstalls();
+        Configuration.setXpPath(xpPath);
+        Configuration.setArchiveStorePath(storePath);
+        Configuration.setLinkedInstalls(true);
+        try (StubRegistryServer server = new StubRegistryServer()) {
+            Package pkg = new Package("test.linked", "Linked", PackageType.OTHER, new String[]{"1.0"}, "", "", "");
+            Version version = Version.parse("1.0");
+            Remote.VersionData versionData = serve(server, "linked.xpkg", createZip("test.linked/readme.txt", "Linked"));
+
+            Remote.fetchPackage(pkg, version, versionData).get(10, TimeUnit.SECONDS);
+            Path extracted = ArchiveStore.getExtracted(versionData.hash());
+            assertNotNull(extracted);
+
+            // The second installation shares its files with the store, and neither downloads nor extracts the archive
+            PackageLinker.LinkStats before = PackageLinker.getTotals();
+            Configuration.setXpPath(otherXpPath);
+            File dest = Remote.fetchPackage(pkg, version, versionData).get(10, TimeUnit.SECONDS);
+            Path readme = dest.toPath().resolve("test.linked/readme.txt");
+            assertEquals("Linked", Files.readString(readme));
+            assertEquals(Files.readAttributes(extracted.resolve("test.linked/readme.txt"), BasicFileAttributes.class).fileKey(), Files.readAttributes(readme, BasicFileAttributes.class).fileKey());
+            assertEquals(before.linkedFiles() + 1, PackageLinker.getTotals().linkedFiles());
+            assertEquals(1, server.getFileRequestCount());
+
+            // Installed files stay writable, and a file changed in place is noticed, so the archive is extracted again instead of linking the changed file
+            if (Files.getFileStore(readme).supportsFileAttributeView(PosixFileAttributeView.class))
+                assertTrue(Files.getPosixFilePermissions(readme).contains(PosixFilePermission.OWNER_WRITE));
+            Files.writeString(readme, "Changed");
+            assertEquals("Changed", Files.readString(extracted.resolve("test.linked/readme.txt")));
+            dest = Remote.fetchPackage(pkg, version, versionData).get(10, TimeUnit.SECONDS);
+            readme = dest.toPath().resolve("test.linked/readme.txt");
+            assertEquals("Linked", Files.readString(readme));
+            assertEquals("Linked", Files.readString(ArchiveStore.getExtracted(versionData.hash()).resolve("test.linked/readme.txt")));
+            assertEquals(1, server.getFileRequestCount());
+
+            // Removing the archive removes its extracted contents, but not the installed files
+            ArchiveStore.remove(versionData.hash());
+            assertFalse(Files.exists(extracted));
+            assertEquals("Linked", Files.readString(readme));
+        } finally {
+            Configuration.setLinkedInstalls(previousLinkedInstalls);
+            Configuration.setArchiveStorePath(previousStorePath);
+            Configuration.setXpPath(previousXpPath);
+        }
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class, NoSuchAlgorithmException.class, ExecutionException.class, InterruptedException.class, TimeoutException.class})
+    void testResume(@TempDir File xpPath) {
+        File previousXpPath = Configuration.getXpPath();
+        Configuration.setXpPath(xpPath);
+        try (StubRegistryServer server = new StubRegistryServer()) {
+            Package pkg = new Package("test.resume", "Resume", PackageType.OTHER, new String[]{"1.0"}, "", "", "");
+            Version version = Version.parse("1.0");
+            byte[] random = new byte[3 * 1024 * 1024];
+            new Random(7).nextBytes(random);
+            String content = Hex.encodeHexString(random);
+            byte[] zip = createZip("test.resume/data.txt", content);
+            Remote.VersionData versionData = serve(server, "resume.xpkg", zip);
+            server.dropConnections(new Random(42), 4);
+
+            // Each interrupted attempt keeps what it received, and the next attempt only asks for the rest
+            File dest = null;
+            int attempts = 0;
+            while (dest == null && attempts < 10) {
+                ++attempts;
+                try {
+                    dest = Remote.fetchPackage(pkg, version, versionData).get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException ignored) {
+                }
+            }
+            assertEquals(5, attempts);
+            assertEquals(content, Files.readString(new File(dest, "test.resume/data.txt").toPath()));
+            assertTrue(server.getPartialResponseCount() > 0);
+            assertEquals(zip.length, server.getBytesSent());
+            assertArrayEquals(new String[]{"test.resume"}, new File(xpPath, "xpkg/tmp/downloads").list());
+
+            // The whole file is downloaded again if it changed since it was interrupted, which the server shows with a new ETag
+            server.dropConnections(new Random(1), 1);
+            assertThrows(ExecutionException.class, () -> Remote.fetchPackage(pkg, version, versionData).get(10, TimeUnit.SECONDS));
+            assertTrue(new File(xpPath, "xpkg/tmp/downloads/test.resume@1.0.0.xpkg").length() > 0);
+            int partialResponseCount = server.getPartialResponseCount();
+            serve(server, "resume.xpkg", zip);
+            dest = Remote.fetchPackage(pkg, version, versionData).get(10, TimeUnit.SECONDS);
+            assertEquals(content, Files.readString(new File(dest, "test.resume/data.txt").toPath()));
+            assertEquals(partialResponseCount, server.getPartialResponseCount());
+        } finally {
+            Configuration.setXpPath(previousXpPath);
+        }
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class, NoSuchAlgorithmException.class, ExecutionException.class, InterruptedException.class, TimeoutException.class})
+    void testExtractionModes(@TempDir File xpPath) {
+        File previousXpPath = Configuration.getXpPath();
+        boolean previousStreamingExtraction = Configuration.isStreamingExtraction();
+        Configuration.setXpPath(xpPath);
+        try (StubRegistryServer server = new StubRegistryServer()) {
+            Package pkg = new Package("test.modes", "Modes", PackageType.OTHER, new String[]{"1.0"}, "", "", "");
+            Version version = Version.parse("1.0");
+            byte[] deflated = createZip("test.modes/readme.txt", "Deflated");
+
+            // Stored entries with data descriptors can not be extracted as a stream, so they are extracted once the download completes
+            byte[] stored = createStoredZipWithDescriptor("test.modes/readme.txt", "Stored");
+            byte[] escaping = createZip("../escaped.txt", "Escaped");
+
+            for (boolean streamingExtraction : new boolean[]{true, false}) {
+                Configuration.setStreamingExtraction(streamingExtraction);
+                File dest = Remote.fetchPackage(pkg, version, serve(server, "deflated.xpkg", deflated)).get(10, TimeUnit.SECONDS);
+                assertEquals("Deflated", Files.readString(new File(dest, "test.modes/readme.txt").toPath()));
+                dest = Remote.fetchPackage(pkg, version, serve(server, "stored.xpkg", stored)).get(10, TimeUnit.SECONDS);
+                assertEquals("Stored", Files.readString(new File(dest, "test.modes/readme.txt").toPath()));
+
+                assertThrows(ExecutionException.class, () -> Remote.fetchPackage(pkg, version, serve(server, "escaping.xpkg", escaping)).get(10, TimeUnit.SECONDS));
+                assertFalse(new File(xpPath, "xpkg/tmp/escaped.txt").exists());
+                assertArrayEquals(new String[]{"test.modes"}, new File(xpPath, "xpkg/tmp/downloads").list());
+            }
+        } finally {
+            Configuration.setStreamingExtraction(previousStreamingExtraction);
+            Configuration.setXpPath(previousXpPath);
+        }
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, NoSuchAlgorithmException.class})
+    void testHashingBodySubscriber(@TempDir File dir) {
+        byte[] content = new byte[HashingBodySubscriber.BUFFER_SIZE * 3 + 17];
+        new Random(1).nextBytes(content);
+        String expectedHash = Hex.encodeHexString(MessageDigest.getInstance("SHA-256").digest(content));
+        Path file = dir.toPath().resolve("download");
+
+        assertEquals(expectedHash, subscribe(file, content, content.length).join());
+        assertArrayEquals(content, Files.readAllBytes(file));
+        assertEquals(expectedHash, subscribe(file, content, -1).join());
+
+        CompletionException e = assertThrows(CompletionException.class, () -> subscribe(file, content, content.length + 1).join());
+        assertInstanceOf(IOException.class, e.getCause());
+        e = assertThrows(CompletionException.class, () -> subscribe(file, content, content.length - 1).join());
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class, InterruptedException.class})
+    void testCancel(@TempDir File xpPath) {
+        File previousXpPath = Configuration.getXpPath();
+        Configuration.setXpPath(xpPath);
+        try (StubRegistryServer server = new StubRegistryServer()) {
+            byte[] zip = new byte[8 * 1024 * 1024];
+            String url = server.putFile("test.slow.xpkg", zip);
+            server.setFileBytesPerSecond(1024 * 1024);
+            Package pkg = new Package("test.slow", "Slow", PackageType.OTHER, new String[]{"1.0"}, "", "", "");
+
+            File downloadFile = new File(xpPath, "xpkg/tmp/downloads/test.slow@1.0.0.xpkg");
+            CompletableFuture<File> future = Remote.fetchPackage(pkg, Version.parse("1.0"), new Remote.VersionData(url, "", new String[0][], new String[0][]));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (downloadFile.length() == 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            assertTrue(downloadFile.length() > 0);
+
+            // The download stops as soon as it is cancelled, rather than after all of the file has been sent
+            assertTrue(future.cancel(true));
+            deadline = System.currentTimeMillis() + 3000;
+            while (downloadFile.exists() && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            assertFalse(downloadFile.exists());
+            assertTrue(server.getBytesSent() < zip.length);
+        } finally {
+            Configuration.setXpPath(previousXpPath);
+        }
+    }
+
+    /**
+     * Send content to a new subscriber in small buffers, as the client does.
+     *
+     * @param file          The file to download to.
+     * @param content       The content to send.
+     * @param contentLength The length to send in the {@code Content-Length} header, or -1 to not send the header.
+     * @return The hash computed by the subscriber.
+     */
+    private static CompletableFuture<String> subscribe(Path file, byte[] content, long contentLength) {
+        HttpResponse.BodySubscriber<String> subscriber = new HashingBodySubscriber(file).handler().apply(new HttpResponse.ResponseInfo() {
+            @Override
+            public int statusCode() {
+                return 200;
+            }
+
+            @Override
+            public HttpHeaders headers() {
+                return HttpHeaders.of(contentLength < 0 ? Map.of() : Map.of("Content-Length", List.of(Long.toString(contentLength))), (name, value) -> true);
+            }
+
+            @Override
+            public HttpClient.Version version() {
+                return HttpClient.Version.HTTP_1_1;
+            }
+        });
+
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        for (int offset = 0; offset < content.length; offset += 16 * 1024)
+            subscriber.onNext(List.of(ByteBuffer.wrap(content, offset, Math.min(16 * 1024, content.length - offset))));
+        subscriber.onComplete();
+        return subscriber.getBody().toCompletableFuture();
+    }
+
+    /**
+     * Serve a package file, and get the version data which points to it.
+     *
+     * @param server  The server to serve the file from.
+     * @param name    The name of the file.
+     * @param content The content of the file.
+     * @return The version data of a version whose package is the file.
+     * @throws NoSuchAlgorithmException Exception thrown if SHA-256 is not supported.
+     */
+    private static Remote.VersionData serve(StubRegistryServer server, String name, byte[] content) throws NoSuchAlgorithmException {
+        String hash = Hex.encodeHexString(MessageDigest.getInstance("SHA-256").digest(content));
+        return new Remote.VersionData(server.putFile(name, content), hash, new String[0][], new String[0][]);
+    }
+
+    /**
+     * Create a zip file with a single stored file in it, whose checksum and sizes are only written after its data, which {@link java.util.zip.ZipOutputStream} never writes.
+     *
+     * @param name    The path of the file in the zip file.
+     * @param content The content of the file.
+     * @return The bytes of the zip file.
+     */
+    private static byte[] createStoredZipWithDescriptor(String name, String content) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ByteBuffer zip = ByteBuffer.allocate(30 + nameBytes.length + data.length + 16 + 46 + nameBytes.length + 22).order(ByteOrder.LITTLE_ENDIAN);
+        zip.putInt(0x04034b50).putShort((short) 20).putShort((short) 8).putShort((short) 0).putInt(0).putInt(0).putInt(0).putInt(0)
+                .putShort((short) nameBytes.length).putShort((short) 0).put(nameBytes).put(data);
+        zip.putInt(0x08074b50).putInt((int) crc.getValue()).putInt(data.length).putInt(data.length);
+
+        int centralDirectoryOffset = zip.position();
+        zip.putInt(0x02014b50).putShort((short) 20).putShort((short) 20).putShort((short) 8).putShort((short) 0).putInt(0)
+                .putInt((int) crc.getValue()).putInt(data.length).putInt(data.length).putShort((short) nameBytes.length)
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0).putInt(0).put(nameBytes);
+        int centralDirectorySize = zip.position() - centralDirectoryOffset;
+        zip.putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort((short) 1).putShort((short) 1)
+                .putInt(centralDirectorySize).putInt(centralDirectoryOffset).putShort((short) 0);
+        return zip.array();
+    }
+
+    /**
+     * Create a zip file with a single file in it.
+     *
+     * @param name    The path of the file in the zip file.
+     * @param content The content of the file.
+     * @return The bytes of the zip file.
+     * @throws IOException Exception thrown if the zip file could not be written.
+     */
+    static byte[] createZip(String name, String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.putNextEntry(new ZipEntry(name));
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+}
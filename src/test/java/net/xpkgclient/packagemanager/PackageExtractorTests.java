@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests extracting complete zip files in parallel.
+ */
+public final class PackageExtractorTests {
+
+    @Test
+    @SneakyThrows(IOException.class)
+    void testExtract(@TempDir Path dir) {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 200; ++i) {
+            byte[] content = new byte[i % 10 == 0 ? 300_000 + i : i * 37];
+            random.nextBytes(content);
+            files.put("pkg/dir%d/file%d.bin".formatted(i % 7, i), content);
+        }
+        files.put("pkg/empty.txt", new byte[0]);
+        File zipFile = dir.resolve("package.zip").toFile();
+        FileTime modified = FileTime.fromMillis(1_600_000_000_000L);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipFile.toPath()))) {
+            out.putNextEntry(new ZipEntry("pkg/emptydir/"));
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                ZipEntry entry = new ZipEntry(file.getKey());
+                entry.setLastModifiedTime(modified);
+                out.putNextEntry(entry);
+                out.write(file.getValue());
+            }
+        }
+
+        ExecutorService pool = TaskExecutors.newPool("xpkg-test", 4);
+        try {
+            Path extracted = dir.resolve("extracted");
+            PackageExtractor.extract(zipFile, extracted, pool, 4);
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                assertArrayEquals(file.getValue(), Files.readAllBytes(extracted.resolve(file.getKey())), file.getKey());
+                assertEquals(modified.toMillis() / 1000, Files.getLastModifiedTime(extracted.resolve(file.getKey())).toMillis() / 1000);
+            }
+            assertTrue(Files.isDirectory(extracted.resolve("pkg/emptydir")));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @SneakyThrows(IOException.class)
+    void testChecksumMismatch(@TempDir Path dir) {
+        byte[] content = "The original content".getBytes();
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        // Stored entries are not checked by the zip file itself, only by the extractor
+        File zipFile = dir.resolve("corrupt.zip").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipFile.toPath()))) {
+            ZipEntry entry = new ZipEntry("file.txt");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(content);
+        }
+        byte[] zip = Files.readAllBytes(zipFile.toPath());
+        for (int i = 0; i < zip.length - content.length; ++i) {
+            if (Arrays.equals(zip, i, i + content.length, content, 0, content.length)) {
+                zip[i] ^= 1;
+                break;
+            }
+        }
+        Files.write(zipFile.toPath(), zip);
+
+        assertThrows(ZipException.class, () -> PackageExtractor.extract(zipFile, dir.resolve("extracted")));
+    }
+
+    @Test
+    @SneakyThrows(IOException.class)
+    void testEscapingEntry(@TempDir Path dir) {
+        File zipFile = dir.resolve("escaping.zip").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipFile.toPath()))) {
+            out.putNextEntry(new ZipEntry("safe.txt"));
+            out.putNextEntry(new ZipEntry("../escaped.txt"));
+        }
+
+        assertThrows(SecurityException.class, () -> PackageExtractor.extract(zipFile, dir.resolve("extracted")));
+        assertFalse(Files.exists(dir.resolve("extracted")));
+        assertFalse(Files.exists(dir.resolve("escaped.txt")));
+    }
+
+    @Test
+    void testPartition() {
+        List<ZipEntry> entries = new ArrayList<>();
+        for (long size : new long[]{1_000_000, 600_000, 500_000, 400_000, 300_000, 200_000}) {
+            ZipEntry entry = new ZipEntry("file" + size);
+            entry.setCompressedSize(size);
+            entries.add(entry);
+        }
+
+        List<List<ZipEntry>> groups = PackageExtractor.partition(entries, 2);
+        assertEquals(2, groups.size());
+        assertEquals(entries.size(), groups.stream().mapToInt(List::size).sum());
+        long first = groups.get(0).stream().mapToLong(ZipEntry::getCompressedSize).sum();
+        long second = groups.get(1).stream().mapToLong(ZipEntry::getCompressedSize).sum();
+        assertEquals(3_000_000, first + second);
+        assertTrue(Math.abs(first - second) <= 200_000, () -> first + " and " + second + " are not balanced");
+
+        assertEquals(entries.size(), PackageExtractor.partition(entries, 16).size());
+        assertEquals(1, PackageExtractor.partition(entries, 1).size());
+        assertTrue(PackageExtractor.partition(List.of(), 4).isEmpty());
+    }
+}
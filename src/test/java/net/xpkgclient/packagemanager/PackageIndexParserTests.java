@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests reading the package index returned from the registry.
+ */
+public final class PackageIndexParserTests {
+
+    /**
+     * Create the JSON of a single package in the index.
+     *
+     * @param packageId The id of the package.
+     * @param versions  The version strings of the package, already quoted.
+     * @return The JSON object of the package.
+     */
+    private static String packageJson(String packageId, String versions) {
+        return """
+                {"packageId": "%s", "packageName": "Name of %s", "packageType": "other", "authorName": "Author", "authorId": "author", "description": "A package, with \\"quotes\\".", "versions": [%s]}
+                """.formatted(packageId, packageId, versions);
+    }
+
+    @Test
+    void testParseIndex() {
+        StringBuilder json = new StringBuilder("{\"status\": {\"code\": 200}, \"data\": [");
+        for (int i = 0; i < 1000; ++i) {
+            if (i > 0)
+                json.append(',');
+            json.append(packageJson("test.package" + i, "\"1.0.%d\", \"0.1\"".formatted(i)));
+        }
+        json.append("], \"trailing\": [1, 2, 3]}");
+
+        List<Package> packages = PackageIndexParser.parse(new StringReader(json.toString()), ForkJoinPool.commonPool());
+        assertEquals(1000, packages.size());
+        for (int i = 0; i < packages.size(); ++i) {
+            Package pkg = packages.get(i);
+            assertEquals("test.package" + i, pkg.getPackageId());
+            assertEquals("1.0." + i, pkg.getLatestVersionStr());
+            assertEquals("A package, with \"quotes\".", pkg.getDescription());
+        }
+    }
+
+    @Test
+    void testPendingPackagesLimit() {
+        StringBuilder json = new StringBuilder("{\"data\": [");
+        for (int i = 0; i < 200; ++i) {
+            if (i > 0)
+                json.append(',');
+            json.append(packageJson("test.package" + i, "\"1.0\""));
+        }
+        json.append("]}");
+
+        // Packages are constructed slowly on one thread, so reading has to wait for them
+        ExecutorService slowExecutor = Executors.newSingleThreadExecutor();
+        AtomicInteger pending = new AtomicInteger();
+        AtomicInteger maxPending = new AtomicInteger();
+        Executor executor = task -> {
+            maxPending.accumulateAndGet(pending.incrementAndGet(), Math::max);
+            slowExecutor.execute(() -> {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                pending.decrementAndGet();
+                task.run();
+            });
+        };
+        try {
+            assertEquals(200, PackageIndexParser.parse(new StringReader(json.toString()), executor).size());
+            assertTrue(maxPending.get() <= PackageIndexParser.MAX_PENDING_PACKAGES, () -> maxPending.get() + " packages were pending at once");
+        } finally {
+            slowExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testParseEmptyIndex() {
+        assertTrue(PackageIndexParser.parse(new StringReader(" { \"data\" : [ ] } "), Runnable::run).isEmpty());
+    }
+
+    @Test
+    void testParseInvalidIndex() {
+        assertThrows(JSONException.class, () -> PackageIndexParser.parse(new StringReader("{\"status\": 200}"), Runnable::run));
+        assertThrows(JSONException.class, () -> PackageIndexParser.parse(new StringReader("{\"data\": [" + packageJson("a", "\"1\"") + "}"), Runnable::run));
+        String badType = packageJson("a", "\"1\"").replace("\"other\"", "\"unknown\"");
+        assertThrows(JSONException.class, () -> PackageIndexParser.parse(new StringReader("{\"data\": [" + badType + "]}"), Runnable::run));
+    }
+}
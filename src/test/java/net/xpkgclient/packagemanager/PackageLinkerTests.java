@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests linking extracted packages into place.
+ */
+public final class PackageLinkerTests {
+
+    @Test
+    @SneakyThrows(IOException.class)
+    void testLink(@TempDir Path dir) {
+        Path source = createPackage(dir.resolve("source"));
+        Path dest = dir.resolve("dest");
+        Files.createDirectories(dest.resolve("pkg"));
+        Files.writeString(dest.resolve("pkg/readme.txt"), "Old");
+
+        PackageLinker.LinkStats stats = PackageLinker.link(source, dest);
+        assertEquals(new PackageLinker.LinkStats(2, 0, 1005, 0), stats);
+        assertEquals("Hello", Files.readString(dest.resolve("pkg/readme.txt")));
+        assertTrue(Files.isDirectory(dest.resolve("pkg/empty")));
+        assertEquals(fileKey(source.resolve("pkg/data/model.obj")), fileKey(dest.resolve("pkg/data/model.obj")));
+    }
+
+    @Test
+    @SneakyThrows(IOException.class)
+    void testCopyFallback(@TempDir Path dir) {
+        Path source = createPackage(dir.resolve("source"));
+
+        // Zip file systems do not support links, so every file is copied
+        try (FileSystem zip = FileSystems.newFileSystem(URI.create("jar:" + dir.resolve("dest.zip").toUri()), Map.of("create", "true"))) {
+            Path dest = zip.getPath("/dest");
+            PackageLinker.LinkStats stats = PackageLinker.link(source, dest);
+            assertEquals(new PackageLinker.LinkStats(0, 2, 0, 1005), stats);
+            assertEquals("Hello", Files.readString(dest.resolve("pkg/readme.txt")));
+            assertEquals(1000, Files.size(dest.resolve("pkg/data/model.obj")));
+        }
+    }
+
+    /**
+     * Create an extracted package with two files and an empty directory.
+     *
+     * @param dir The directory to create the package in.
+     * @return The directory the package was created in.
+     */
+    @SneakyThrows(IOException.class)
+    private static Path createPackage(Path dir) {
+        Files.createDirectories(dir.resolve("pkg/data"));
+        Files.createDirectories(dir.resolve("pkg/empty"));
+        Files.writeString(dir.resolve("pkg/readme.txt"), "Hello");
+        Files.write(dir.resolve("pkg/data/model.obj"), new byte[1000]);
+        return dir;
+    }
+
+    /**
+     * Get the key which identifies the contents of a file, which is the same for every link to the same contents.
+     *
+     * @param file The file.
+     * @return The key of the file.
+     */
+    @SneakyThrows(IOException.class)
+    private static Object fileKey(Path file) {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import net.xpkgclient.Configuration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests saving registry snapshots to disk and loading them back.
+ */
+public final class RegistrySnapshotStoreTests {
+
+    @Test
+    @SneakyThrows(IOException.class)
+    void testSnapshotRoundTrip(@TempDir File dir) {
+        RegistrySnapshot snapshot = new RegistrySnapshot(List.of(
+                new Package("test.aircraft", "Aircraft", PackageType.AIRCRAFT, new String[]{"1.0", "2.0.1r3"}, "x".repeat(70_000), "Author \u00e9", "author"),
+                new Package("test.other", "Other", PackageType.OTHER, new String[]{"0.1a1"}, "", "Author \u00e9", "author")
+        ), "\"abc\"", null, "token");
+
+        File file = new File(dir, "cache/index.bin");
+        RegistrySnapshotStore.save(snapshot, file);
+        RegistrySnapshot loaded = RegistrySnapshotStore.load(file);
+
+        assertEquals("\"abc\"", loaded.getEtag());
+        assertNull(loaded.getLastModified());
+        assertEquals("token", loaded.getSyncToken());
+        assertEquals(2, loaded.size());
+        for (Package expected : snapshot.getPackages()) {
+            Package actual = loaded.getPackage(expected.getPackageId());
+            assertNotNull(actual);
+            assertEquals(expected.getPackageName(), actual.getPackageName());
+            assertEquals(expected.getPackageType(), actual.getPackageType());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getAuthorName(), actual.getAuthorName());
+            assertArrayEquals(expected.getVersions(), actual.getVersions());
+        }
+        assertEquals(2, loaded.getPackagesByAuthor("author").size());
+        assertEquals(1, loaded.getPackagesByType(PackageType.AIRCRAFT).size());
+    }
+
+    @Test
+    @SneakyThrows(IOException.class)
+    void testInvalidSnapshot(@TempDir File dir) {
+        File file = new File(dir, "index.bin");
+        Files.writeString(file.toPath(), "{\"data\": []}");
+        assertThrows(IOException.class, () -> RegistrySnapshotStore.load(file));
+
+        // A length larger than the rest of the file is rejected instead of being allocated
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x58504b49);
+            out.writeInt(3);
+            out.writeInt(Integer.MAX_VALUE);
+        }
+        assertThrows(IOException.class, () -> RegistrySnapshotStore.load(file));
+
+        // So is a truncated snapshot
+        RegistrySnapshotStore.save(new RegistrySnapshot(List.of(new Package("test.other", "Other", PackageType.OTHER, new String[]{"0.1a1"}, "", "", "")), null, null, null), file);
+        byte[] saved = Files.readAllBytes(file.toPath());
+        for (int length = 0; length < saved.length; ++length) {
+            Files.write(file.toPath(), Arrays.copyOf(saved, length));
+            assertThrows(IOException.class, () -> RegistrySnapshotStore.load(file));
+        }
+    }
+
+    @Test
+    @SneakyThrows(IOException.class)
+    void testSnapshotOfAnotherRegistry(@TempDir File dir) {
+        String previousRegistryUrl = Configuration.getRegistryUrl();
+        try {
+            File file = new File(dir, "index.bin");
+            Configuration.setRegistryUrl("http://registry-a.example.com");
+            RegistrySnapshotStore.save(new RegistrySnapshot(List.of(), "\"abc\"", null, "token"), file);
+            assertNotNull(RegistrySnapshotStore.load(file));
+
+            // The sync token of one registry must never be sent to another
+            Configuration.setRegistryUrl("http://registry-b.example.com");
+            assertThrows(IOException.class, () -> RegistrySnapshotStore.load(file));
+        } finally {
+            Configuration.setRegistryUrl(previousRegistryUrl);
+        }
+    }
+}
@@ -0,0 +1,529 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.xpkgclient.versioning.InvalidVersionException;
+import net.xpkgclient.versioning.Version;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local stand-in for the registry which serves the package index, deltas of the index, and the data for package versions, singly, in batches, or as a metadata bundle of all of them, as well as package files, which can be requested in ranges, and whose connections can be dropped part of the way through. The sync token is the revision of the index that the client has, prefixed with an id of the server so that tokens from other servers are never accepted. Tokens from other servers, and tokens older than the last call to {@link StubRegistryServer#expireTokens()}, are rejected with 410 Gone.
+ */
+public final class StubRegistryServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final String tokenPrefix = Long.toHexString(System.nanoTime()) + ":";
+
+    // All packages ever added, with the revision they last changed in, removed packages are kept so that deltas can report them
+    private final Map<String, JSONObject> packages = new LinkedHashMap<>();
+    private final Map<String, Integer> changedRevision = new LinkedHashMap<>();
+    private final Map<String, Boolean> removed = new LinkedHashMap<>();
+
+    // The data for package versions, indexed by "packageId@version"
+    private final Map<String, JSONObject> versionData = new LinkedHashMap<>();
+    private final Map<String, byte[]> files = new LinkedHashMap<>();
+    private final Map<String, String> fileEtags = new LinkedHashMap<>();
+    private int fileVersion = 0;
+
+    private volatile boolean batchEnabled = true;
+    private volatile long latencyMillis = 0;
+    private volatile long fileBytesPerSecond = 0;
+    private Random dropRandom;
+    private int dropCount = 0;
+
+    private int revision = 0;
+    private int oldestValidRevision = 0;
+
+    private final AtomicInteger fullRequestCount = new AtomicInteger();
+    private final AtomicInteger deltaRequestCount = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicInteger versionDataRequestCount = new AtomicInteger();
+    private final AtomicInteger bundleRequestCount = new AtomicInteger();
+    private final AtomicInteger fileRequestCount = new AtomicInteger();
+    private final AtomicInteger partialResponseCount = new AtomicInteger();
+
+    /**
+     * Start a new server on a random local port.
+     *
+     * @throws IOException Exception thrown if the server could not be started.
+     */
+    public StubRegistryServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/packages/", this::handle);
+        server.createContext("/files/", this::handleFile);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Get the base URL of the server.
+     *
+     * @return The base URL of the server, without a trailing slash.
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Add a package, or replace a package with the same id.
+     *
+     * @param pkg The JSON of the package, as it appears in the index.
+     */
+    public synchronized void put(JSONObject pkg) {
+        String packageId = pkg.getString("packageId");
+        packages.put(packageId, pkg);
+        changedRevision.put(packageId, ++revision);
+        removed.put(packageId, false);
+    }
+
+    /**
+     * Remove a package.
+     *
+     * @param packageId The id of the package to remove.
+     */
+    public synchronized void remove(String packageId) {
+        changedRevision.put(packageId, ++revision);
+        removed.put(packageId, true);
+    }
+
+    /**
+     * Set the data for a version of a package.
+     *
+     * @param packageId The id of the package.
+     * @param version   The version of the package, as it appears in the request URL.
+     * @param data      The data of the version, as the registry returns it.
+     */
+    public synchronized void putVersionData(String packageId, String version, JSONObject data) {
+        versionData.put(packageId + '@' + version, data);
+    }
+
+    /**
+     * Serve a file, such as a package zip file.
+     *
+     * @param name    The name of the file.
+     * @param content The content of the file.
+     * @return The URL of the file.
+     */
+    public synchronized String putFile(String name, byte[] content) {
+        files.put(name, content);
+        fileEtags.put(name, "\"%d-%d\"".formatted(++fileVersion, Arrays.hashCode(content)));
+        return getUrl() + "/files/" + name;
+    }
+
+    /**
+     * Set if batch requests for version data are supported. If they are not, batch requests are rejected with 404 Not Found.
+     *
+     * @param batchEnabled True if batch requests should be supported.
+     */
+    public void setBatchEnabled(boolean batchEnabled) {
+        this.batchEnabled = batchEnabled;
+    }
+
+    /**
+     * Set how long to wait before responding to each request, to simulate the time a request takes to reach a remote registry and back.
+     *
+     * @param latencyMillis The time to wait before responding, in milliseconds.
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Limit how fast files are sent, to simulate a slow connection.
+     *
+     * @param fileBytesPerSecond The maximum number of bytes of a file to send each second, or 0 to send files as fast as possible.
+     */
+    public void setFileBytesPerSecond(long fileBytesPerSecond) {
+        this.fileBytesPerSecond = fileBytesPerSecond;
+    }
+
+    /**
+     * Drop the connections of the next file responses part of the way through, to simulate an unreliable connection.
+     *
+     * @param random The source of the offsets to drop the connections at, each of which is somewhere in the part of the file the response would send.
+     * @param count  The number of responses to drop.
+     */
+    public synchronized void dropConnections(Random random, int count) {
+        dropRandom = random;
+        dropCount = count;
+    }
+
+    /**
+     * Get the number of responses for files which only sent part of a file because a range was requested.
+     *
+     * @return The number of partial file responses.
+     */
+    public int getPartialResponseCount() {
+        return partialResponseCount.get();
+    }
+
+    /**
+     * Get the number of requests for version data, where a batch request counts once.
+     *
+     * @return The number of requests for version data.
+     */
+    public int getVersionDataRequestCount() {
+        return versionDataRequestCount.get();
+    }
+
+    /**
+     * Get the number of times the metadata bundle has been sent.
+     *
+     * @return The number of metadata bundle responses.
+     */
+    public int getBundleRequestCount() {
+        return bundleRequestCount.get();
+    }
+
+    /**
+     * Get the number of requests for files, including files which do not exist.
+     *
+     * @return The number of file requests.
+     */
+    public int getFileRequestCount() {
+        return fileRequestCount.get();
+    }
+
+    /**
+     * Reject all sync tokens which have been sent so far.
+     */
+    public synchronized void expireTokens() {
+        oldestValidRevision = revision + 1;
+    }
+
+    /**
+     * Get the number of times the full index has been sent.
+     *
+     * @return The number of full index responses.
+     */
+    public int getFullRequestCount() {
+        return fullRequestCount.get();
+    }
+
+    /**
+     * Get the number of times a delta has been sent.
+     *
+     * @return The number of delta responses.
+     */
+    public int getDeltaRequestCount() {
+        return deltaRequestCount.get();
+    }
+
+    /**
+     * Get the total size of all the response bodies sent.
+     *
+     * @return The number of bytes sent in response bodies.
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Respond to any request.
+     *
+     * @param exchange The request and response.
+     * @throws IOException Exception thrown if the response could not be sent.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/packages/"))
+            handleIndex(exchange);
+        else if (path.equals("/packages/batch"))
+            handleBatch(exchange);
+        else if (path.equals("/packages/bundle"))
+            handleBundle(exchange);
+        else
+            handleVersionData(exchange, path.substring("/packages/".length()));
+    }
+
+    /**
+     * Respond to a request for the data of a single package version.
+     *
+     * @param exchange The request and response.
+     * @param path     The path after {@code /packages/}, which is the package id and version separated by a slash.
+     * @throws IOException Exception thrown if the response could not be sent.
+     */
+    private void handleVersionData(HttpExchange exchange, String path) throws IOException {
+        versionDataRequestCount.incrementAndGet();
+        JSONObject data;
+        synchronized (this) {
+            data = versionData.get(path.replace('/', '@'));
+        }
+        send(exchange, data == null ? 404 : 200, data);
+    }
+
+    /**
+     * Respond to a batch request for the data of package versions.
+     *
+     * @param exchange The request and response.
+     * @throws IOException Exception thrown if the response could not be sent.
+     */
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        if (!batchEnabled || !exchange.getRequestMethod().equals("POST")) {
+            send(exchange, 404, null);
+            return;
+        }
+
+        versionDataRequestCount.incrementAndGet();
+        JSONArray requested;
+        try (InputStream in = exchange.getRequestBody()) {
+            requested = new JSONObject(new String(in.readAllBytes(), StandardCharsets.UTF_8)).getJSONArray("versions");
+        }
+
+        JSONArray data = new JSONArray();
+        synchronized (this) {
+            for (int i = 0; i < requested.length(); ++i) {
+                JSONObject version = requested.getJSONObject(i);
+                JSONObject versionDataObj = versionData.get(version.getString("packageId") + '@' + version.getString("packageVersion"));
+                if (versionDataObj == null) {
+                    send(exchange, 404, null);
+                    return;
+                }
+                data.put(versionDataObj);
+            }
+        }
+        send(exchange, 200, new JSONObject().put("data", data));
+    }
+
+    /**
+     * Respond with a metadata bundle of the data of all package versions, generated from the current version data and compressed with gzip, or with 304 if the bundle matches the {@code If-None-Match} header of the request.
+     *
+     * @param exchange The request and response.
+     * @throws IOException Exception thrown if the response could not be sent.
+     */
+    private void handleBundle(HttpExchange exchange) throws IOException {
+        bundleRequestCount.incrementAndGet();
+        MetadataBundleWriter writer = new MetadataBundleWriter();
+        synchronized (this) {
+            for (Map.Entry<String, JSONObject> entry : versionData.entrySet()) {
+                String key = entry.getKey();
+                int separator = key.lastIndexOf('@');
+                try {
+                    writer.add(key.substring(0, separator), Version.parse(key.substring(separator + 1)), Remote.toVersionData(entry.getValue()));
+                } catch (InvalidVersionException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        writer.write(content);
+        String etag = "\"bundle-%d\"".formatted(Arrays.hashCode(content.toByteArray()));
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            content.writeTo(out);
+        }
+        bytesSent.addAndGet(bytes.size());
+        exchange.getResponseHeaders().set("Content-Type", "application/gzip");
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.sendResponseHeaders(200, bytes.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            bytes.writeTo(out);
+        }
+    }
+
+    /**
+     * Respond to a request for a file.
+     *
+     * @param exchange The request and response.
+     * @throws IOException Exception thrown if the response could not be sent.
+     */
+    private void handleFile(HttpExchange exchange) throws IOException {
+        fileRequestCount.incrementAndGet();
+        String name = exchange.getRequestURI().getPath().substring("/files/".length());
+        byte[] content;
+        String etag;
+        long dropAt = -1;
+        synchronized (this) {
+            content = files.get(name);
+            etag = fileEtags.get(name);
+            if (content != null && dropCount > 0) {
+                --dropCount;
+                dropAt = dropRandom.nextLong(Long.MAX_VALUE);
+            }
+        }
+        if (content == null) {
+            send(exchange, 404, null);
+            return;
+        }
+
+        // Only a range from a byte to the end of the file is supported, which is all the client asks for
+        int start = 0;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (range != null && range.startsWith("bytes=") && range.endsWith("-") && (ifRange == null || ifRange.equals(etag))) {
+            start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            if (start >= content.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */%d".formatted(content.length));
+                send(exchange, 416, null);
+                return;
+            }
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/zip");
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        if (start > 0) {
+            partialResponseCount.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Range", "bytes %d-%d/%d".formatted(start, content.length - 1, content.length));
+            exchange.sendResponseHeaders(206, content.length - start);
+        } else {
+            exchange.sendResponseHeaders(200, content.length);
+        }
+        int end = dropAt < 0 ? content.length : start + (int) (dropAt % (content.length - start));
+        try (OutputStream out = exchange.getResponseBody()) {
+            long startTime = System.nanoTime();
+            for (int offset = start; offset < end; offset += 64 * 1024) {
+                int length = Math.min(64 * 1024, end - offset);
+                out.write(content, offset, length);
+                bytesSent.addAndGet(length);
+
+                long bytesPerSecond = fileBytesPerSecond;
+                if (bytesPerSecond > 0) {
+                    long sleepMillis = (offset - start + length) * 1000L / bytesPerSecond - (System.nanoTime() - startTime) / 1_000_000;
+                    if (sleepMillis > 0) {
+                        try {
+                            Thread.sleep(sleepMillis);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                }
+            }
+
+            // Closing the stream before all of the bytes it promised were written closes the connection
+            out.flush();
+        }
+    }
+
+    /**
+     * Send a JSON response.
+     *
+     * @param exchange The request and response.
+     * @param status   The status code of the response.
+     * @param body     The body of the response, or null to send no body.
+     * @throws IOException Exception thrown if the response could not be sent.
+     */
+    private void send(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        byte[] bytes = body == null ? new byte[0] : body.toString().getBytes(StandardCharsets.UTF_8);
+        bytesSent.addAndGet(bytes.length);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Respond to a request for the index, or for a delta if the request has a {@code since} parameter.
+     *
+     * @param exchange The request and response.
+     * @throws IOException Exception thrown if the response could not be sent.
+     */
+    private void handleIndex(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        JSONObject response = new JSONObject();
+        int status = 200;
+
+        synchronized (this) {
+            if (query != null && query.startsWith("since=")) {
+                String token = URLDecoder.decode(query.substring(6), StandardCharsets.UTF_8);
+                int since = -1;
+                if (token.startsWith(tokenPrefix)) {
+                    try {
+                        since = Integer.parseInt(token.substring(tokenPrefix.length()));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+
+                if (since < oldestValidRevision || since > revision) {
+                    status = 410;
+                } else {
+                    JSONArray updated = new JSONArray();
+                    JSONArray removedIds = new JSONArray();
+                    for (Map.Entry<String, Integer> entry : changedRevision.entrySet()) {
+                        if (entry.getValue() <= since)
+                            continue;
+                        if (removed.get(entry.getKey()))
+                            removedIds.put(entry.getKey());
+                        else
+                            updated.put(packages.get(entry.getKey()));
+                    }
+                    response.put("updated", updated);
+                    response.put("removed", removedIds);
+                    deltaRequestCount.incrementAndGet();
+                }
+            } else {
+                JSONArray data = new JSONArray();
+                for (Map.Entry<String, JSONObject> entry : packages.entrySet()) {
+                    if (!removed.get(entry.getKey()))
+                        data.put(entry.getValue());
+                }
+                response.put("data", data);
+                fullRequestCount.incrementAndGet();
+            }
+            response.put("syncToken", tokenPrefix + revision);
+        }
+
+        send(exchange, status, status == 200 ? response : null);
+    }
+
+    /**
+     * Stop the server.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests running work on the shared executors.
+ */
+public final class TaskExecutorsTests {
+
+    @Test
+    void testExceptionPropagation() {
+        CompletableFuture<Object> future = TaskExecutors.submit(() -> {
+            throw new IOException("Expected failure");
+        }, TaskExecutors.IO);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertEquals("Expected failure", e.getCause().getMessage());
+    }
+
+    @Test
+    @SneakyThrows(InterruptedException.class)
+    void testCancelInterrupts() {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<Void> future = TaskExecutors.run(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        }, TaskExecutors.IO);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(future.cancel(false));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertThrows(CancellationException.class, future::join);
+    }
+
+    @Test
+    @SneakyThrows(InterruptedException.class)
+    void testBoundedPool() {
+        ExecutorService pool = TaskExecutors.newPool("xpkg-test", 2);
+        try {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; ++i) {
+                futures.add(TaskExecutors.run(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                }, pool));
+            }
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            assertTrue(maxRunning.get() <= 2, () -> maxRunning.get() + " tasks ran at once");
+
+            // A queued task which is cancelled never starts
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicBoolean queuedRan = new AtomicBoolean();
+            CompletableFuture<Void> blocker1 = TaskExecutors.run(() -> awaitQuietly(release), pool);
+            CompletableFuture<Void> blocker2 = TaskExecutors.run(() -> awaitQuietly(release), pool);
+            CompletableFuture<Void> queued = TaskExecutors.run(() -> queuedRan.set(true), pool);
+            queued.cancel(true);
+            release.countDown();
+            CompletableFuture.allOf(blocker1, blocker2).join();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+            assertFalse(queuedRan.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Wait for a latch, and ignore interruptions.
+     *
+     * @param latch The latch to wait for.
+     */
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
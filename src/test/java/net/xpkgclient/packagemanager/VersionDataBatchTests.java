@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import net.xpkgclient.Configuration;
+import net.xpkgclient.packagemanager.actions.InstallerAction;
+import net.xpkgclient.versioning.InvalidVersionException;
+import net.xpkgclient.versioning.Version;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests getting the data for many package versions at once, and resolving dependencies with it.
+ */
+public final class VersionDataBatchTests {
+
+    private static final int PACKAGE_COUNT = 200;
+
+    /**
+     * Create a server with a binary tree of packages, where package {@code i} depends on packages {@code 2i + 1} and {@code 2i + 2}.
+     *
+     * @return The new server.
+     * @throws IOException Exception thrown if the server could not be started.
+     */
+    static StubRegistryServer createTreeRegistry() throws IOException {
+        StubRegistryServer server = new StubRegistryServer();
+        for (int i = 0; i < PACKAGE_COUNT; ++i) {
+            server.put(IndexSyncTests.packageJson("test.tree" + i, "1.0", "1.1"));
+
+            JSONArray dependencies = new JSONArray();
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < PACKAGE_COUNT; ++child)
+                dependencies.put(new JSONArray().put("test.tree" + child).put("1"));
+            for (String version : new String[]{"1.0.0", "1.1.0"}) {
+                server.putVersionData("test.tree" + i, version, new JSONObject()
+                        .put("loc", "http://127.0.0.1/test.tree%d-%s.xpkg".formatted(i, version))
+                        .put("hash", "")
+                        .put("dependencies", dependencies)
+                        .put("incompatibilities", new JSONArray()));
+            }
+        }
+        return server;
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class})
+    void testBatchAndFallback() {
+        String previousRegistryUrl = Configuration.getRegistryUrl();
+        try (StubRegistryServer server = createTreeRegistry()) {
+            Configuration.setRegistryUrl(server.getUrl());
+            VersionDataCache.clear();
+
+            List<PackageNode> nodes = List.of(
+                    new PackageNode("test.tree3", Version.parse("1.0")),
+                    new PackageNode("test.tree1", Version.parse("1.1")),
+                    new PackageNode("test.tree2", Version.parse("1.0"))
+            );
+            List<Remote.VersionData> data = Remote.getVersionData(nodes);
+            assertEquals(1, server.getVersionDataRequestCount());
+            assertEquals("http://127.0.0.1/test.tree3-1.0.0.xpkg", data.get(0).loc());
+            assertEquals("http://127.0.0.1/test.tree1-1.1.0.xpkg", data.get(1).loc());
+            assertEquals("http://127.0.0.1/test.tree2-1.0.0.xpkg", data.get(2).loc());
+
+            // Cached versions are not requested again
+            Remote.getVersionData(nodes);
+            assertEquals(1, server.getVersionDataRequestCount());
+
+            server.setBatchEnabled(false);
+            data = Remote.getVersionData(List.of(
+                    new PackageNode("test.tree4", Version.parse("1.0")),
+                    new PackageNode("test.tree5", Version.parse("1.0"))
+            ));
+            assertEquals("http://127.0.0.1/test.tree4-1.0.0.xpkg", data.get(0).loc());
+            assertEquals("http://127.0.0.1/test.tree5-1.0.0.xpkg", data.get(1).loc());
+
+            // One rejected batch, then two single requests
+            assertEquals(3, server.getVersionDataRequestCount());
+        } finally {
+            VersionDataCache.clear();
+            Configuration.setRegistryUrl(previousRegistryUrl);
+        }
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class})
+    void testResolveWithFewRequests(@TempDir File dir) {
+        String previousRegistryUrl = Configuration.getRegistryUrl();
+        try (StubRegistryServer server = createTreeRegistry()) {
+            Configuration.setRegistryUrl(server.getUrl());
+            VersionDataCache.clear();
+            Remote.fetchAllPackages().join();
+
+            DependencyTree tree = new DependencyTree(new File(dir, "dependencies.xpkg.json"));
+            Optional<List<InstallerAction>> actions = tree.getActions("test.tree0", Version.parse("1.1"));
+            assertTrue(actions.isPresent());
+
+            // One request for each level of the tree, rather than one for each package
+            assertTrue(server.getVersionDataRequestCount() <= 10, () -> server.getVersionDataRequestCount() + " requests");
+        } finally {
+            VersionDataCache.clear();
+            Configuration.setRegistryUrl(previousRegistryUrl);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import net.xpkgclient.Configuration;
+import net.xpkgclient.versioning.InvalidVersionException;
+import net.xpkgclient.versioning.Version;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests caching the data for package versions in memory and on disk.
+ */
+public final class VersionDataCacheTests {
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testDataIsReadBackFromDisk(@TempDir File xpPath) {
+        File previousXpPath = Configuration.getXpPath();
+        Configuration.setXpPath(xpPath);
+        try {
+            Version version = Version.parse("1.2.3b4");
+            Remote.VersionData data = new Remote.VersionData("https://example.com/pkg.xpkg", "abc123",
+                    new String[][]{{"test.dependency", "1-2"}}, new String[0][]);
+
+            VersionDataCache.clear();
+            assertNull(VersionDataCache.get("test.package", version));
+            VersionDataCache.put("test.package", version, data);
+            assertEquals(1, findCacheFiles(xpPath).size());
+            assertTrue(findCacheFiles(xpPath).get(0).endsWith(Path.of("test.package", "1.2.3b4.json")));
+
+            // Drop the memory level, so that the next lookup has to read from disk
+            VersionDataCache.clear();
+            Remote.VersionData cached = VersionDataCache.get("test.package", version);
+            assertNotNull(cached);
+            assertEquals(1, VersionDataCache.getDiskHitCount());
+            assertEquals(data.loc(), cached.loc());
+            assertEquals(data.hash(), cached.hash());
+            assertArrayEquals(data.dependencies(), cached.dependencies());
+            assertEquals(0, cached.incompatibilities().length);
+
+            assertSame(cached, VersionDataCache.get("test.package", version));
+            assertEquals(1, VersionDataCache.getMemoryHitCount());
+
+            VersionDataCache.invalidate("test.package", version);
+            assertNull(VersionDataCache.get("test.package", version));
+        } finally {
+            VersionDataCache.clear();
+            Configuration.setXpPath(previousXpPath);
+        }
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testDataIsKeptApartForEachRegistry(@TempDir File xpPath) {
+        File previousXpPath = Configuration.getXpPath();
+        String previousRegistryUrl = Configuration.getRegistryUrl();
+        Configuration.setXpPath(xpPath);
+        try {
+            Version version = Version.parse("1.0");
+            VersionDataCache.clear();
+            Configuration.setRegistryUrl("http://registry-a.example.com");
+            VersionDataCache.put("test.package", version, new Remote.VersionData("https://registry-a.example.com/pkg.xpkg", "abc123", new String[0][], new String[0][]));
+
+            // Neither the memory nor the disk level returns the data of another registry
+            Configuration.setRegistryUrl("http://registry-b.example.com");
+            assertNull(VersionDataCache.get("test.package", version));
+            VersionDataCache.clear();
+            assertNull(VersionDataCache.get("test.package", version));
+
+            Configuration.setRegistryUrl("http://registry-a.example.com");
+            assertNotNull(VersionDataCache.get("test.package", version));
+        } finally {
+            VersionDataCache.clear();
+            Configuration.setRegistryUrl(previousRegistryUrl);
+            Configuration.setXpPath(previousXpPath);
+        }
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testUnsafePackageIdsAreNotWrittenToDisk(@TempDir File xpPath) {
+        File previousXpPath = Configuration.getXpPath();
+        Configuration.setXpPath(new File(xpPath, "xp"));
+        try {
+            Version version = Version.parse("1.0");
+            VersionDataCache.clear();
+            for (String packageId : new String[]{".", "..", ".hidden"})
+                VersionDataCache.put(packageId, version, new Remote.VersionData("https://example.com/pkg.xpkg", "abc123", new String[0][], new String[0][]));
+            assertArrayEquals(new String[0], xpPath.list((dir, name) -> !name.equals("xp")));
+            assertTrue(findCacheFiles(new File(xpPath, "xp")).isEmpty());
+        } finally {
+            VersionDataCache.clear();
+            Configuration.setXpPath(previousXpPath);
+        }
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testUnpublishedDataIsNotCached() {
+        Version version = Version.parse("1.0");
+        VersionDataCache.put("test.unpublished", version, new Remote.VersionData("NOT_PUBLISHED", "", new String[0][], new String[0][]));
+        assertNull(VersionDataCache.get("test.unpublished", version));
+    }
+
+    /**
+     * Find every file the cache has written to disk.
+     *
+     * @param xpPath The X-Plane installation the cache writes to.
+     * @return The files written by the cache, or an empty list if it has not written any.
+     */
+    @SneakyThrows(IOException.class)
+    private static List<Path> findCacheFiles(File xpPath) {
+        Path metaDir = xpPath.toPath().resolve("xpkg/cache/meta");
+        if (!Files.isDirectory(metaDir))
+            return List.of();
+        try (Stream<Path> files = Files.walk(metaDir)) {
+            return files.filter(Files::isRegularFile).toList();
+        }
+    }
+}
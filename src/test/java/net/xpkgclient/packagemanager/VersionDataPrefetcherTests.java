@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import net.xpkgclient.Configuration;
+import net.xpkgclient.versioning.InvalidVersionException;
+import net.xpkgclient.versioning.Version;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests fetching the data of dependencies ahead of time.
+ */
+public final class VersionDataPrefetcherTests {
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class, InterruptedException.class})
+    void testDepthLimitAndCounters() {
+        String previousRegistryUrl = Configuration.getRegistryUrl();
+        try (StubRegistryServer server = VersionDataBatchTests.createTreeRegistry()) {
+            Configuration.setRegistryUrl(server.getUrl());
+            VersionDataCache.clear();
+            Remote.fetchAllPackages().join();
+            server.setBatchEnabled(false);
+
+            // Package 2 is excluded, so only package 0, package 1, and the children of package 1 are fetched
+            VersionDataPrefetcher prefetcher = new VersionDataPrefetcher(2, 2, Set.of("test.tree2"));
+            prefetcher.start("test.tree0", Version.parse("1.1"));
+            waitFor(prefetcher::getFetchCount, 4);
+            Thread.sleep(100);
+            assertEquals(4, prefetcher.getFetchCount());
+
+            // The newest version matching the selection of each dependency is prefetched
+            assertEquals("http://127.0.0.1/test.tree1-1.1.0.xpkg", prefetcher.getVersionData("test.tree1", Version.parse("1.1")).loc());
+            prefetcher.getVersionData("test.tree0", Version.parse("1.1"));
+            prefetcher.getVersionData("test.tree0", Version.parse("1.1"));
+            assertEquals(2, prefetcher.getHitCount());
+
+            // Not prefetched, so requested separately
+            int requestCount = server.getVersionDataRequestCount();
+            prefetcher.getVersionData("test.tree5", Version.parse("1.0"));
+            assertEquals(requestCount + 1, server.getVersionDataRequestCount());
+            assertEquals(2, prefetcher.getHitCount());
+
+            prefetcher.cancel();
+            assertEquals(2, prefetcher.getWastedCount());
+        } finally {
+            VersionDataCache.clear();
+            Configuration.setRegistryUrl(previousRegistryUrl);
+        }
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class, InterruptedException.class})
+    void testCancel() {
+        String previousRegistryUrl = Configuration.getRegistryUrl();
+        try (StubRegistryServer server = VersionDataBatchTests.createTreeRegistry()) {
+            Configuration.setRegistryUrl(server.getUrl());
+            VersionDataCache.clear();
+            Remote.fetchAllPackages().join();
+            server.setLatencyMillis(50);
+
+            VersionDataPrefetcher prefetcher = new VersionDataPrefetcher(Integer.MAX_VALUE, 4, Set.of());
+            prefetcher.start("test.tree0", Version.parse("1.0"));
+            prefetcher.cancel();
+            Thread.sleep(300);
+
+            // The request already sent finishes, but nothing after it is requested, and its result is ignored
+            assertEquals(1, server.getVersionDataRequestCount());
+            assertEquals(0, prefetcher.getFetchCount());
+            assertEquals(0, prefetcher.getWastedCount());
+
+            // The resolver still gets its data after cancelling
+            assertEquals("http://127.0.0.1/test.tree0-1.0.0.xpkg", prefetcher.getVersionData("test.tree0", Version.parse("1.0")).loc());
+        } finally {
+            VersionDataCache.clear();
+            Configuration.setRegistryUrl(previousRegistryUrl);
+        }
+    }
+
+    @Test
+    @SneakyThrows({IOException.class, InvalidVersionException.class})
+    void testInvalidDependencySelection(@TempDir File dir) {
+        String previousRegistryUrl = Configuration.getRegistryUrl();
+        try (StubRegistryServer server = new StubRegistryServer()) {
+            server.put(IndexSyncTests.packageJson("test.invalid", "1.0"));
+            server.put(IndexSyncTests.packageJson("test.dependency", "1.0"));
+            server.putVersionData("test.invalid", "1.0.0", versionData(new JSONArray().put(new JSONArray().put("test.dependency").put("not a selection"))));
+            server.putVersionData("test.dependency", "1.0.0", versionData(new JSONArray()));
+            Configuration.setRegistryUrl(server.getUrl());
+            VersionDataCache.clear();
+            Remote.fetchAllPackages().join();
+
+            // The resolver fails on the selection, rather than waiting forever for the prefetch of the package which has it
+            DependencyTree tree = new DependencyTree(new File(dir, "dependencies.xpkg.json"));
+            Version version = Version.parse("1.0");
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(RuntimeException.class, () -> tree.getActions("test.invalid", version)));
+        } finally {
+            VersionDataCache.clear();
+            Configuration.setRegistryUrl(previousRegistryUrl);
+        }
+    }
+
+    /**
+     * Create the data of a package version with no incompatibilities.
+     *
+     * @param dependencies The dependencies of the version.
+     * @return The JSON of the version data.
+     */
+    private static JSONObject versionData(JSONArray dependencies) {
+        return new JSONObject()
+                .put("loc", "http://127.0.0.1/package.xpkg")
+                .put("hash", "")
+                .put("dependencies", dependencies)
+                .put("incompatibilities", new JSONArray());
+    }
+
+    /**
+     * Wait until a counter reaches a value, or fail after five seconds.
+     *
+     * @param counter  The counter to wait for.
+     * @param expected The value to wait for the counter to reach.
+     * @throws InterruptedException Exception thrown if the thread is interrupted while waiting.
+     */
+    private static void waitFor(LongSupplier counter, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (counter.getAsLong() < expected) {
+            if (System.nanoTime() > deadline)
+                fail("Counter only reached %d, expected %d".formatted(counter.getAsLong(), expected));
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import net.xpkgclient.versioning.InvalidVersionException;
+import net.xpkgclient.versioning.Version;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests the single-pass version parser against the original split-based parser.
+ */
+public final class VersionParseTests {
+
+    private static final int ITERATIONS = 2_000_000;
+    private static final String ALPHABET = "0123456789012345678901234567890123456789....abrABRx ";
+
+    /**
+     * The original version string parser, which splits the string on the pre-release character and the dots.
+     *
+     * @param versionStr The string to parse.
+     * @return The parsed version, or null if the string is not a valid version.
+     */
+    private static Version legacyParse(String versionStr) {
+        versionStr = versionStr.toLowerCase();
+        if (versionStr.length() < 1 || versionStr.length() > 15)
+            return null;
+
+        String semanticPart = versionStr;
+        Character preReleaseType = null;
+        int preReleaseVersion = 0;
+
+        final boolean containsA = versionStr.contains("a");
+        final boolean containsB = versionStr.contains("b");
+        final boolean containsR = versionStr.contains("r");
+        if (containsA || containsB || containsR) {
+            if (containsA)
+                preReleaseType = 'a';
+            else if (containsB)
+                preReleaseType = 'b';
+            else
+                preReleaseType = 'r';
+
+            String[] parts = versionStr.split(String.valueOf(preReleaseType), -1);
+            if (parts.length != 2)
+                return null;
+
+            semanticPart = parts[0];
+            try {
+                preReleaseVersion = Integer.parseInt(parts[1], 10);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        String[] partsStr = semanticPart.split("\\.", -1);
+        if (partsStr.length > 3)
+            return null;
+
+        for (final String part : partsStr) {
+            if (part.isBlank())
+                return null;
+        }
+
+        try {
+            int major = Integer.parseInt(partsStr[0], 10);
+            int minor = partsStr.length > 1 ? Integer.parseInt(partsStr[1], 10) : 0;
+            int patch = partsStr.length > 2 ? Integer.parseInt(partsStr[2], 10) : 0;
+
+            if (preReleaseType == null)
+                return Version.of(major, minor, patch);
+            return Version.of(major, minor, patch, preReleaseType, preReleaseVersion);
+        } catch (NumberFormatException | InvalidVersionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Generate a random string that is likely to be close to a version string.
+     *
+     * @param random The random number generator to use.
+     * @return A random string.
+     */
+    private static String randomVersionString(Random random) {
+        int len = random.nextInt(18);
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; ++i)
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        return sb.toString();
+    }
+
+    @Test
+    void testParserMatchesLegacyParser() {
+        Random random = new Random(0x5eed);
+        StringBuilder buffer = new StringBuilder();
+
+        for (int i = 0; i < ITERATIONS; ++i) {
+            String versionStr = randomVersionString(random);
+            Version expected = legacyParse(versionStr);
+            Version actual = Version.fromString(versionStr);
+
+            // Also parse the string out of the middle of a larger buffer
+            buffer.setLength(0);
+            buffer.append("\"1.0\",\"").append(versionStr).append("\"]");
+            Version actualBuffered;
+            try {
+                actualBuffered = Version.parse(buffer, 7, 7 + versionStr.length());
+            } catch (InvalidVersionException e) {
+                actualBuffered = null;
+            }
+
+            if (expected == null) {
+                assertNull(actual, versionStr);
+                assertNull(actualBuffered, versionStr);
+            } else {
+                assertNotNull(actual, versionStr);
+                assertEquals(expected.toString(), actual.toString(), versionStr);
+                assertEquals(expected.toString(), actualBuffered.toString(), versionStr);
+            }
+        }
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testParseSection() {
+        String json = "[\"2.10.4b3\"]";
+        assertEquals(Version.of(2, 10, 4, 'b', 3), Version.parse(json, 2, 10));
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testParseUppercasePreRelease() {
+        assertEquals(Version.of(1, 0, 0, 'r', 2), Version.parse("1R2"));
+    }
+
+    @Test
+    void testParseSectionOutOfBounds() {
+        assertThrows(IndexOutOfBoundsException.class, () -> Version.parse("1.2.3", 2, 6));
+    }
+
+    @Test
+    void testParseSignedPart() {
+        assertThrows(InvalidVersionException.class, () -> Version.parse("+1.2"));
+    }
+}
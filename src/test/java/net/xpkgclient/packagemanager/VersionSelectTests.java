@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2023. Arkin Solomon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied limitations under the License.
+ */
+
+package net.xpkgclient.packagemanager;
+
+import lombok.SneakyThrows;
+import net.xpkgclient.versioning.InvalidVersionException;
+import net.xpkgclient.versioning.Version;
+import net.xpkgclient.versioning.VersionRange;
+import net.xpkgclient.versioning.VersionSelect;
+import net.xpkgclient.versioning.VersionSelectCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class tests creating version selections and checking which versions they contain.
+ */
+public final class VersionSelectTests {
+
+    /**
+     * Create a random version.
+     *
+     * @param random The random number generator to use.
+     * @return A random version with small numbers, which is a pre-release about half the time.
+     */
+    @SneakyThrows(InvalidVersionException.class)
+    private static Version randomVersion(Random random) {
+        int major = 1 + random.nextInt(5);
+        int minor = random.nextInt(5);
+        int patch = random.nextInt(5);
+        if (random.nextBoolean())
+            return Version.of(major, minor, patch);
+        return Version.of(major, minor, patch, "abr".charAt(random.nextInt(3)), 1 + random.nextInt(3));
+    }
+
+    /**
+     * Create a random list of ranges, which are unsorted and may overlap.
+     *
+     * @param random The random number generator to use.
+     * @param count  The number of ranges to create.
+     * @return The list of random ranges.
+     */
+    private static List<VersionRange> randomRanges(Random random, int count) {
+        List<VersionRange> ranges = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            Version v1 = randomVersion(random);
+            Version v2 = randomVersion(random);
+            ranges.add(new VersionRange(Version.min(v1, v2), Version.max(v1, v2)));
+        }
+        return ranges;
+    }
+
+    /**
+     * Check if any range in a list contains a version.
+     *
+     * @param ranges  The ranges to check.
+     * @param version The version to look for.
+     * @return True if any of the ranges contains {@code version}.
+     */
+    private static boolean anyContains(List<VersionRange> ranges, Version version) {
+        return ranges.stream().anyMatch(r -> r.getMinVersionNum() <= version.getVersionNum() && version.getVersionNum() <= r.getMaxVersionNum());
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testSingleVersionSelection() {
+        VersionSelect select = new VersionSelect("1.2");
+        assertTrue(select.containsVersion(Version.of(1, 2, 0, 'a', 1)));
+        assertTrue(select.containsVersion(Version.of(1, 2, 999)));
+        assertFalse(select.containsVersion(Version.of(1, 3)));
+        assertFalse(select.containsVersion(Version.of(1, 1, 999)));
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testMultipleRangeSelection() {
+        VersionSelect select = new VersionSelect("5-6, 1.1-1.4, 3");
+        assertTrue(select.containsVersion(Version.of(1, 3, 7)));
+        assertTrue(select.containsVersion(Version.of(3, 5)));
+        assertTrue(select.containsVersion(Version.of(6, 999, 999)));
+        assertFalse(select.containsVersion(Version.of(2)));
+        assertFalse(select.containsVersion(Version.of(4, 0, 1)));
+        assertEquals(3, select.getRanges().length);
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testOverlappingRangesMerge() {
+        VersionSelect select = new VersionSelect("2-4,1-3");
+        VersionRange[] ranges = select.getRanges();
+        assertEquals(1, ranges.length);
+        assertEquals(Version.of(1, 0, 0, 'a', 1), ranges[0].getMinVersion());
+        assertEquals(Version.of(4, 999, 999), ranges[0].getMaxVersion());
+    }
+
+    @Test
+    void testInvalidSelection() {
+        VersionSelect select = new VersionSelect("1-2-3");
+        assertFalse(select.isValid());
+        assertEquals(0, select.getRanges().length);
+    }
+
+    @Test
+    void testContainsVersionMatchesRanges() {
+        Random random = new Random(42);
+        for (int i = 0; i < 2_000; ++i) {
+            List<VersionRange> ranges = randomRanges(random, 1 + random.nextInt(8));
+            VersionSelect select = new VersionSelect(ranges);
+            for (int j = 0; j < 50; ++j) {
+                Version version = randomVersion(random);
+                assertEquals(anyContains(ranges, version), select.containsVersion(version), () -> ranges + " " + version);
+            }
+        }
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testIntersectionKeepsEveryOverlap() {
+        VersionSelect select = VersionSelect.intersection(new VersionSelect[]{
+                new VersionSelect("1-5"),
+                new VersionSelect("2,4")
+        });
+        assertTrue(select.containsVersion(Version.of(2, 5)));
+        assertTrue(select.containsVersion(Version.of(4, 1)));
+        assertFalse(select.containsVersion(Version.of(3)));
+    }
+
+    @Test
+    void testComplementOfEverythingIsEmpty() {
+        assertTrue(new VersionSelect("*").complement().isEmpty());
+        assertTrue(new VersionSelect("*").difference(new VersionSelect("-1.2, 1.2.1-999")).isEmpty());
+        assertEquals("*", new VersionSelect(List.of()).complement().toString());
+    }
+
+    @Test
+    void testSetOperationsMatchMembership() {
+        Random random = new Random(7);
+        for (int i = 0; i < 2_000; ++i) {
+            VersionSelect a = new VersionSelect(randomRanges(random, random.nextInt(6)));
+            VersionSelect b = new VersionSelect(randomRanges(random, random.nextInt(6)));
+            VersionSelect intersection = a.intersect(b);
+            VersionSelect union = a.union(b);
+            VersionSelect difference = a.difference(b);
+            VersionSelect complement = a.complement();
+
+            for (int j = 0; j < 50; ++j) {
+                Version version = randomVersion(random);
+                boolean inA = a.containsVersion(version);
+                boolean inB = b.containsVersion(version);
+                assertEquals(inA && inB, intersection.containsVersion(version));
+                assertEquals(inA || inB, union.containsVersion(version));
+                assertEquals(inA && !inB, difference.containsVersion(version));
+                assertEquals(!inA, complement.containsVersion(version));
+            }
+        }
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testTouchingRangesMerge() {
+        VersionRange[] ranges = new VersionSelect("1.6-2, 1-1.5").getRanges();
+        assertEquals(1, ranges.length);
+        assertEquals(Version.of(1, 0, 0, 'a', 1), ranges[0].getMinVersion());
+        assertEquals(Version.of(2, 999, 999), ranges[0].getMaxVersion());
+    }
+
+    @Test
+    void testSimplifyUnsortedRanges() {
+        Random random = new Random(11);
+        for (int i = 0; i < 500; ++i) {
+            List<VersionRange> ranges = randomRanges(random, random.nextInt(40));
+            List<VersionRange> simplified = VersionRange.simplify(ranges);
+
+            for (int j = 1; j < simplified.size(); ++j)
+                assertTrue(simplified.get(j - 1).getMaxVersionNum() < simplified.get(j).getMinVersionNum());
+
+            for (int j = 0; j < 50; ++j) {
+                Version version = randomVersion(random);
+                assertEquals(anyContains(ranges, version), anyContains(simplified, version));
+            }
+        }
+    }
+
+    @Test
+    void testCachedSelectionsAreShared() {
+        VersionSelectCache.clear();
+        VersionSelect select = VersionSelectCache.get("1.2-2");
+        assertSame(select, VersionSelectCache.get("1.2-2"));
+        assertEquals(1, VersionSelectCache.getHitCount());
+        assertEquals(1, VersionSelectCache.getMissCount());
+    }
+
+    @Test
+    void testVersionMaskMatchesMembership() {
+        Random random = new Random(23);
+        for (int i = 0; i < 500; ++i) {
+            String[] versionStrings = new String[1 + random.nextInt(30)];
+            for (int j = 0; j < versionStrings.length; ++j)
+                versionStrings[j] = randomVersion(random).toString();
+            Package pkg = new Package("test.package", "Test", PackageType.OTHER, versionStrings, "", "", "");
+
+            VersionSelect select = new VersionSelect(randomRanges(random, random.nextInt(6)));
+            BitSet mask = pkg.getVersionMask(select);
+            Version[] versions = pkg.getVersions();
+            for (int j = 0; j < versions.length; ++j) {
+                if (j > 0)
+                    assertTrue(versions[j - 1].compareTo(versions[j]) <= 0);
+                assertEquals(select.containsVersion(versions[j]), mask.get(j), select + " " + versions[j]);
+            }
+        }
+    }
+}
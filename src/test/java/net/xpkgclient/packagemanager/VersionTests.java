@@ -22,7 +22,9 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * This class tests creating versions from strings or constructors and comparing them.
@@ -32,142 +34,193 @@ public final class VersionTests {
     @Test
     @SneakyThrows(InvalidVersionException.class)
     void testVersionEquality() {
-        Version v = new Version(1, 2, 5);
-        assertEquals(v, new Version(1, 2, 5));
+        Version v = Version.of(1, 2, 5);
+        assertEquals(v, Version.of(1, 2, 5));
     }
 
     @Test
     @SneakyThrows(InvalidVersionException.class)
     void testPreReleaseVersionEquality() {
-        Version v = new Version(4, 5, 2, 'a', 75);
-        assertEquals(v, new Version(4, 5, 2, 'a', 75));
+        Version v = Version.of(4, 5, 2, 'a', 75);
+        assertEquals(v, Version.of(4, 5, 2, 'a', 75));
     }
 
     @Test
     @SneakyThrows(InvalidVersionException.class)
     void testVersionInequality() {
-        Version v = new Version(6, 3, 5);
-        assertNotEquals(v, new Version(1, 1, 1));
+        Version v = Version.of(6, 3, 5);
+        assertNotEquals(v, Version.of(1, 1, 1));
     }
 
     @Test
     @SneakyThrows(InvalidVersionException.class)
     void testVersionInequalityVsNonPreRelease() {
-        Version v = new Version(6, 3, 5);
-        assertNotEquals(v, new Version(1, 1, 1, 'a', 9));
+        Version v = Version.of(6, 3, 5);
+        assertNotEquals(v, Version.of(1, 1, 1, 'a', 9));
     }
 
     @Test
     @SneakyThrows(InvalidVersionException.class)
     void testVersionCreationTwoNumbers() {
-        Version v = new Version(1, 2, 0);
-        assertEquals(v, new Version(1, 2));
+        Version v = Version.of(1, 2, 0);
+        assertEquals(v, Version.of(1, 2));
     }
 
     @Test
     @SneakyThrows(InvalidVersionException.class)
     void testVersionCreationOneNumber() {
-        Version v = new Version(1, 0, 0);
-        assertEquals(v, new Version(1));
+        Version v = Version.of(1, 0, 0);
+        assertEquals(v, Version.of(1));
     }
 
     @Test
     @SneakyThrows(InvalidVersionException.class)
     void testVersionStringCreationAllNumbers() {
-        Version v = new Version(1, 2, 7);
-        assertEquals(v, new Version("1.2.7"));
+        Version v = Version.of(1, 2, 7);
+        assertEquals(v, Version.parse("1.2.7"));
     }
 
     @Test
     @SneakyThrows(InvalidVersionException.class)
     void testVersionStringCreationTwoNumbers() {
-        Version v = new Version(1, 2, 0);
-        assertEquals(v, new Version("1.2"));
+        Version v = Version.of(1, 2, 0);
+        assertEquals(v, Version.parse("1.2"));
     }
 
     @Test
     @SneakyThrows(InvalidVersionException.class)
     void testVersionStringCreationOneNumber() {
-        Version v = new Version(1, 0, 0);
-        assertEquals(v, new Version("1"));
+        Version v = Version.of(1, 0, 0);
+        assertEquals(v, Version.parse("1"));
     }
 
     @Test
     void testVersionCreationZeros() {
-        assertThrows(InvalidVersionException.class, () -> new Version(0, 0, 0));
+        assertThrows(InvalidVersionException.class, () -> Version.of(0, 0, 0));
     }
 
     @Test
     void testVersionStringCreationZeros() {
-        assertThrows(InvalidVersionException.class, () -> new Version("0.0.0"));
+        assertThrows(InvalidVersionException.class, () -> Version.parse("0.0.0"));
     }
 
     @Test
     void testVersionCreationStringNoNumbers() {
-        assertThrows(InvalidVersionException.class, () -> new Version(""));
+        assertThrows(InvalidVersionException.class, () -> Version.parse(""));
     }
 
     @Test
     void testVersionCreationStringLeadingDot() {
-        assertThrows(InvalidVersionException.class, () -> new Version(".1.19.2"));
+        assertThrows(InvalidVersionException.class, () -> Version.parse(".1.19.2"));
     }
 
     @Test
     void testVersionCreationStringTrailingDot() {
-        assertThrows(InvalidVersionException.class, () -> new Version("1.19.32."));
+        assertThrows(InvalidVersionException.class, () -> Version.parse("1.19.32."));
     }
 
     @Test
     void testVersionCreationStringLeadingAndTrailingDot() {
-        assertThrows(InvalidVersionException.class, () -> new Version(".15.19.32."));
+        assertThrows(InvalidVersionException.class, () -> Version.parse(".15.19.32."));
     }
 
     @Test
     void testVersionCreationStringDoubleDot() {
-        assertThrows(InvalidVersionException.class, () -> new Version("15..."));
+        assertThrows(InvalidVersionException.class, () -> Version.parse("15..."));
     }
 
     @Test
     void testVersionCreationStringFourParts() {
-        assertThrows(InvalidVersionException.class, () -> new Version("15.51.51.35"));
+        assertThrows(InvalidVersionException.class, () -> Version.parse("15.51.51.35"));
     }
 
     @Test
     void testVersionCreationStringOnlyDot() {
-        assertThrows(InvalidVersionException.class, () -> new Version("."));
+        assertThrows(InvalidVersionException.class, () -> Version.parse("."));
     }
 
     @Test
     @SneakyThrows(InvalidVersionException.class)
     void testPreReleaseCreationStringAlpha() {
-        Version v = new Version(5, 8, 10, 'a', 78);
-        assertEquals(v, new Version("5.8.10a78"));
+        Version v = Version.of(5, 8, 10, 'a', 78);
+        assertEquals(v, Version.parse("5.8.10a78"));
     }
 
     @Test
     @SneakyThrows(InvalidVersionException.class)
     void testPreReleaseCreationStringBeta() {
-        Version v = new Version(5, 8, 10, 'b', 78);
-        assertEquals(v, new Version("5.8.10b78"));
+        Version v = Version.of(5, 8, 10, 'b', 78);
+        assertEquals(v, Version.parse("5.8.10b78"));
     }
 
     @Test
     void testPreReleaseZeroThrows() {
-        assertThrows(InvalidVersionException.class, () -> new Version(4,2,3,'a',0));
+        assertThrows(InvalidVersionException.class, () -> Version.of(4,2,3,'a',0));
     }
 
     @Test
     void testPreReleaseCreationStringZero() {
-        assertThrows(InvalidVersionException.class, () -> new Version("1.3.45b0"));
+        assertThrows(InvalidVersionException.class, () -> Version.parse("1.3.45b0"));
     }
 
     @Test
     void testPreReleaseHasOnlyNonZeroStringCreation(){
-        assertThrows(InvalidVersionException.class, () -> new Version("1.4.32b0"));
+        assertThrows(InvalidVersionException.class, () -> Version.parse("1.4.32b0"));
     }
 
     @Test
     void testPreReleaseCreationStringAllZeros(){
-        assertThrows(InvalidVersionException.class, () -> new Version("0.0.02a0"));
+        assertThrows(InvalidVersionException.class, () -> Version.parse("0.0.02a0"));
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testPreReleaseOrdering() {
+        Version alpha = Version.of(2, 1, 0, 'a', 999);
+        Version beta = Version.of(2, 1, 0, 'b', 1);
+        Version releaseCandidate = Version.of(2, 1, 0, 'r', 1);
+        Version release = Version.of(2, 1, 0);
+
+        assertTrue(Version.of(2, 0, 999).compareTo(alpha) < 0);
+        assertTrue(alpha.compareTo(beta) < 0);
+        assertTrue(beta.compareTo(releaseCandidate) < 0);
+        assertTrue(releaseCandidate.compareTo(release) < 0);
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testVersionNumMatchesFormattedNum() {
+        for (char preReleaseType : new char[]{'a', 'b', 'r'}) {
+            for (int preReleaseNum = 1; preReleaseNum <= 999; ++preReleaseNum) {
+                Version v = Version.of(12, 7, 998, preReleaseType, preReleaseNum);
+                String preReleaseNumStr = "%03d".formatted(999 - preReleaseNum);
+                String preReleaseFloatStr = switch (preReleaseType) {
+                    case 'a' -> "999999" + preReleaseNumStr;
+                    case 'b' -> "999" + preReleaseNumStr + "999";
+                    default -> preReleaseNumStr + "999999";
+                };
+                assertEquals(12007998000000000L - Long.parseLong(preReleaseFloatStr), v.getVersionNum());
+            }
+        }
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testReleaseNotEqualToPreRelease() {
+        assertNotEquals(Version.of(3, 1, 4), Version.of(3, 1, 4, 'r', 1));
+    }
+
+    @Test
+    @SneakyThrows(InvalidVersionException.class)
+    void testVersionsAreShared() {
+        Version v = Version.of(1, 999, 999);
+        assertSame(v, Version.parse("1.999.999"));
+        assertSame(v, v.clone());
+        assertSame(Version.of(7, 0, 0, 'b', 2), Version.parse("7B2"));
+    }
+
+    @Test
+    void testInvalidPreReleaseType() {
+        assertThrows(InvalidVersionException.class, () -> Version.of(1, 2, 3, 'x', 1));
     }
 }